@@ -0,0 +1,29 @@
+package brickbreaker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of the benchmarks jar. Runs JMH with the GC profiler enabled, so every run
+ * reports the allocation rate (gc.alloc.rate.norm is the bytes allocated per operation).
+ * All the usual JMH command line options are accepted, e.g. a benchmark name regex.
+ * Usage: java -jar target/benchmarks.jar [JMH options]
+ */
+public class BenchmarkMain {
+
+    /**
+     * Runs JMH with the given options plus the GC profiler.
+     *
+     * @param args JMH command line options
+     * @throws Exception if JMH fails
+     */
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-prof")) {
+            options.add("-prof");
+            options.add("gc");
+        }
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,105 @@
+package brickbreaker;
+
+import java.awt.Color;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of GameEnvironment.getClosestCollision on brick fields of different sizes.
+ * Every call queries the next of a fixed set of random ball steps, about a third of which hit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollisionBenchmark {
+
+    private static final int QUERIES = 4096;
+    private static final double SPEED = 8;
+    private static final double RADIUS = 7;
+
+    @Param({"56", "10000"})
+    private int blocks;
+
+    private GameEnvironment environment;
+    private double[] starts;
+    private Line[] trajectories;
+    private SweepHit hit;
+    private int next;
+
+    /**
+     * Fills the game area with a lattice of the requested number of blocks, and prepares
+     * random ball steps inside it.
+     */
+    @Setup
+    public void setUp() {
+        environment = new GameEnvironment();
+        int columns = (int) Math.ceil(Math.sqrt(blocks * Game.WIDTH / Game.HEIGHT));
+        int rows = (int) Math.ceil((double) blocks / columns);
+        double width = Game.WIDTH / columns;
+        double height = Game.HEIGHT / rows;
+        int added = 0;
+        for (int r = 0; r < rows && added < blocks; r++) {
+            for (int c = 0; c < columns && added < blocks; c++) {
+                // leave gaps between the blocks so some steps miss
+                Point upperLeft = new Point(c * width + width / 4, (r + 1) * height - height / 4);
+                environment.addCollidable(new Block(new Rectangle(upperLeft, width / 2, height / 2), Color.BLUE));
+                added++;
+            }
+        }
+        environment.build();
+
+        Random random = new Random(42);
+        starts = new double[QUERIES * 4];
+        trajectories = new Line[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            double x = random.nextDouble() * Game.WIDTH;
+            double y = random.nextDouble() * Game.HEIGHT;
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double dx = SPEED * Math.cos(angle);
+            double dy = SPEED * Math.sin(angle);
+            starts[4 * i] = x;
+            starts[4 * i + 1] = y;
+            starts[4 * i + 2] = dx;
+            starts[4 * i + 3] = dy;
+            trajectories[i] = new Line(x, y, x + dx, y + dy);
+        }
+        hit = new SweepHit();
+    }
+
+    /**
+     * Measures the segment query used before the swept-circle kernel.
+     *
+     * @return the collision information, or null
+     */
+    @Benchmark
+    public CollisionInfo lineQuery() {
+        next = (next + 1) & (QUERIES - 1);
+        return environment.getClosestCollision(trajectories[next]);
+    }
+
+    /**
+     * Measures the swept-circle query the balls use.
+     *
+     * @return whether something was hit
+     */
+    @Benchmark
+    public boolean sweptCircleQuery() {
+        next = (next + 1) & (QUERIES - 1);
+        int i = 4 * next;
+        return environment.getClosestCollision(starts[i], starts[i + 1], starts[i + 2], starts[i + 3], RADIUS, hit);
+    }
+}
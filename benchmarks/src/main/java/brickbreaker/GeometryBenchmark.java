@@ -0,0 +1,105 @@
+package brickbreaker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the Line and Rectangle intersection primitives.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeometryBenchmark {
+
+    @Param
+    private Workload workload;
+
+    private Line first;
+    private Line second;
+    private Line trajectory;
+    private Rectangle rectangle;
+    private Point[] duplicates;
+
+    /**
+     * Prepares the inputs of the selected workload.
+     */
+    @Setup
+    public void setUp() {
+        first = workload.first();
+        second = workload.second();
+        trajectory = workload.trajectory();
+        rectangle = Workload.RECTANGLE;
+        // a corner hit reports the corner twice, which is what removeDuplicates gets in the game
+        duplicates = new Point[] {new Point(10, 20), new Point(10, 20), new Point(30, 15), new Point(10, 20)};
+    }
+
+    /**
+     * Measures Line.isIntersecting.
+     *
+     * @return whether the segments intersect
+     */
+    @Benchmark
+    public boolean isIntersecting() {
+        return first.isIntersecting(second);
+    }
+
+    /**
+     * Measures Line.intersectionWith.
+     *
+     * @return the intersection point, or null
+     */
+    @Benchmark
+    public Point intersectionWith() {
+        return first.intersectionWith(second);
+    }
+
+    /**
+     * Measures Rectangle.intersectionPoints.
+     *
+     * @return the intersection points
+     */
+    @Benchmark
+    public List<Point> intersectionPoints() {
+        return rectangle.intersectionPoints(trajectory);
+    }
+
+    /**
+     * Measures Line.closestIntersectionToStartOfLine.
+     *
+     * @return the closest intersection point, or null
+     */
+    @Benchmark
+    public Point closestIntersectionToStartOfLine() {
+        return trajectory.closestIntersectionToStartOfLine(rectangle);
+    }
+
+    /**
+     * Measures Rectangle.removeDuplicates. The list is rebuilt every call since the method
+     * removes from it in place; the copy is part of the measured time.
+     *
+     * @return the list without duplicates
+     */
+    @Benchmark
+    public List<Point> removeDuplicates() {
+        List<Point> points = new ArrayList<>(duplicates.length);
+        for (Point p : duplicates) {
+            points.add(p);
+        }
+        return Rectangle.removeDuplicates(points);
+    }
+}
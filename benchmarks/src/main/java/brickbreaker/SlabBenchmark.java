@@ -0,0 +1,131 @@
+package brickbreaker;
+
+import java.awt.Color;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the scalar and the vector slab kernels, on their own over batches of random boxes,
+ * and inside GameEnvironment's segment query over a field of 10000 blocks, where "none" is the
+ * query testing its candidates one at a time. The forked JVM loads the Vector API module; the
+ * setup fails if the vector kernel is asked for and cannot be loaded, rather than quietly
+ * measuring the scalar one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class SlabBenchmark {
+
+    private static final int QUERIES = 1024;
+    private static final int FIELD_BLOCKS = 10000;
+    private static final double LENGTH = 120;
+
+    @Param({"none", "scalar", "vector"})
+    private String kernel;
+
+    @Param({"16", "256"})
+    private int boxes;
+
+    private SlabKernel slabKernel;
+    private BoxBatch batch;
+    private double[] segments;
+    private Line[] trajectories;
+    private GameEnvironment environment;
+    private int next;
+
+    /**
+     * Creates the kernel, a batch of random boxes, random segments crossing it, and a field of
+     * blocks for the segment query.
+     */
+    @Setup
+    public void setUp() {
+        slabKernel = createKernel();
+        Random random = new Random(42);
+        batch = new BoxBatch();
+        for (int i = 0; i < boxes; i++) {
+            double x = random.nextDouble() * 200;
+            double y = random.nextDouble() * 200;
+            batch.add(null, i, x, y, x + 1 + random.nextDouble() * 20, y + 1 + random.nextDouble() * 20);
+        }
+        segments = new double[4 * QUERIES];
+        trajectories = new Line[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            double angle = random.nextDouble() * 2 * Math.PI;
+            segments[4 * i] = random.nextDouble() * 200;
+            segments[4 * i + 1] = random.nextDouble() * 200;
+            segments[4 * i + 2] = LENGTH * Math.cos(angle);
+            segments[4 * i + 3] = LENGTH * Math.sin(angle);
+            double x = random.nextDouble() * Game.WIDTH;
+            double y = random.nextDouble() * Game.HEIGHT;
+            trajectories[i] = new Line(x, y, x + LENGTH * Math.cos(angle), y + LENGTH * Math.sin(angle));
+        }
+
+        environment = new GameEnvironment();
+        environment.setSlabKernel("none".equals(kernel) ? null : slabKernel);
+        int columns = (int) Math.ceil(Math.sqrt(FIELD_BLOCKS * Game.WIDTH / Game.HEIGHT));
+        int rows = (int) Math.ceil((double) FIELD_BLOCKS / columns);
+        double width = Game.WIDTH / columns;
+        double height = Game.HEIGHT / rows;
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                Point upperLeft = new Point(c * width + width / 4, (r + 1) * height - height / 4);
+                environment.addCollidable(new Block(new Rectangle(upperLeft, width / 2, height / 2), Color.BLUE));
+            }
+        }
+        environment.build();
+    }
+
+    /**
+     * Measures one kernel pass over the batch; "none" runs the scalar kernel.
+     *
+     * @return the smallest time
+     */
+    @Benchmark
+    public double kernel() {
+        next = (next + 1) & (QUERIES - 1);
+        int i = 4 * next;
+        return slabKernel.computeTimes(batch, segments[i], segments[i + 1], segments[i + 2], segments[i + 3], 0);
+    }
+
+    /**
+     * Measures GameEnvironment's segment query on the field of blocks; the number of boxes plays
+     * no part in it.
+     *
+     * @return the collision information, or null
+     */
+    @Benchmark
+    public CollisionInfo lineQuery() {
+        next = (next + 1) & (QUERIES - 1);
+        return environment.getClosestCollision(trajectories[next]);
+    }
+
+    /**
+     * Creates the kernel named by the kernel parameter.
+     *
+     * @return the kernel
+     */
+    private SlabKernel createKernel() {
+        if (!"vector".equals(kernel)) {
+            return new ScalarSlabKernel();
+        }
+        SlabKernel vector = SlabKernels.vector();
+        if (vector == null) {
+            throw new IllegalStateException("the vector slab kernel is not available");
+        }
+        return vector;
+    }
+}
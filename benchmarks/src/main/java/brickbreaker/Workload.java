@@ -0,0 +1,64 @@
+package brickbreaker;
+
+/**
+ * The geometric situations the benchmarks are run on.
+ * Each workload provides a pair of segments and a trajectory against a fixed rectangle,
+ * either crossing (HIT) or not (MISS).
+ */
+public enum Workload {
+    AXIS_PARALLEL_HIT(new Line(0, 5, 10, 5), new Line(5, 0, 5, 10), new Line(0, 15, 40, 15)),
+    AXIS_PARALLEL_MISS(new Line(0, 5, 10, 5), new Line(5, 6, 5, 10), new Line(0, 25, 40, 25)),
+    DIAGONAL_HIT(new Line(0, 0, 10, 10), new Line(0, 10, 10, 0), new Line(0, 5, 40, 25)),
+    DIAGONAL_MISS(new Line(0, 0, 10, 10), new Line(0, 10, 4, 6), new Line(0, 30, 10, 40)),
+    DOT_HIT(new Line(5, 5, 5, 5), new Line(0, 0, 10, 10), new Line(10, 15, 10, 15)),
+    DOT_MISS(new Line(5, 6, 5, 6), new Line(0, 0, 10, 10), new Line(0, 0, 0, 0));
+
+    /**
+     * The rectangle the trajectories are tested against, covering x in [10, 30] and y in [10, 20].
+     */
+    public static final Rectangle RECTANGLE = new Rectangle(new Point(10, 20), 20, 10);
+
+    private final Line first;
+    private final Line second;
+    private final Line trajectory;
+
+    /**
+     * Constructs a workload.
+     *
+     * @param first      the first segment of the segment pair
+     * @param second     the second segment of the segment pair
+     * @param trajectory the trajectory tested against RECTANGLE
+     */
+    Workload(Line first, Line second, Line trajectory) {
+        this.first = first;
+        this.second = second;
+        this.trajectory = trajectory;
+    }
+
+    /**
+     * Returns the first segment of the segment pair.
+     *
+     * @return the first segment
+     */
+    public Line first() {
+        return first;
+    }
+
+    /**
+     * Returns the second segment of the segment pair.
+     *
+     * @return the second segment
+     */
+    public Line second() {
+        return second;
+    }
+
+    /**
+     * Returns the trajectory tested against RECTANGLE.
+     *
+     * @return the trajectory
+     */
+    public Line trajectory() {
+        return trajectory;
+    }
+}
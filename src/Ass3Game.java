@@ -1,17 +1,33 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+
 /**
  * Main class for running the game.
  */
 public class Ass3Game {
 
+    // five seconds of play can be rewound, holding the r key
+    private static final int REWIND_STEPS = 300;
+
     /**
      * The main method to start the game.
-     * It initializes and runs the game.
+     * It initializes and runs the game, keeping the last few seconds for rewinding.
      *
-     * @param args Command line arguments.
+     * @param args Command line arguments: --record file to record the game's input in an input
+     *             log, which HeadlessGame --replay plays back.
+     * @throws IOException if the input log cannot be written
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         Game game = new Game();
         game.initialize();
-        game.run();
+        game.setRewind(new SnapshotRing(REWIND_STEPS));
+        if (args.length == 2 && args[0].equals("--record")) {
+            InputLog recording = new InputLog();
+            game.run(recording);
+            recording.write(Paths.get(args[1]));
+            System.out.printf("recorded %d steps to %s%n", recording.size(), args[1]);
+        } else {
+            game.run();
+        }
     }
 }
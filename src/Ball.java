@@ -9,21 +9,20 @@
 import biuoop.DrawSurface;
 
 import java.awt.Color;
-import java.util.Random;
 
 /**
  * The Ball class represents a ball object with a center point, radius, color, and velocity.
  * It provides methods to draw the ball, set and get its properties, and handle its movement.
+ * The ball's state is stored in a slot of a BallSystem; a Ball is a lightweight handle to that slot.
+ * A ball created on its own gets a private system, and moves to the game's system when added to a game.
  */
 public class Ball implements Sprite {
 
-    private Point center;
-    private int radius;
-    private java.awt.Color color;
-    private Velocity velocity;
     protected static final int WIDTH = 700;
     protected static final int HEIGHT = 700;
-    private GameEnvironment game;
+    private static final Color[] COLORS = {Color.BLUE, Color.RED, Color.ORANGE, Color.YELLOW, Color.GREEN, Color.PINK};
+    private BallSystem system;
+    private int index;
 
     /**
      * Constructs a Ball object with the given center point, radius, and color.
@@ -33,9 +32,7 @@ public class Ball implements Sprite {
      * @param color  the color of the ball
      */
     public Ball(Point center, int r, java.awt.Color color) {
-        this.center = center;
-        this.radius = r;
-        this.color = color;
+        this(center.getX(), center.getY(), r, color);
     }
 
     /**
@@ -47,18 +44,69 @@ public class Ball implements Sprite {
      * @param color the color of the ball
      */
     public Ball(int x, int y, int r, java.awt.Color color) {
-        this.center = new Point(x, y);
-        this.radius = r;
-        this.color = color;
+        this((double) x, (double) y, r, color);
+    }
+
+    /**
+     * Constructs a ball in a private system of its own.
+     *
+     * @param x     the x-coordinate of the center point
+     * @param y     the y-coordinate of the center point
+     * @param r     the radius of the ball
+     * @param color the color of the ball
+     */
+    private Ball(double x, double y, int r, java.awt.Color color) {
+        new BallSystem(1).attach(this, x, y, r, color);
+    }
+
+    /**
+     * Constructs a handle to a slot of a ball system. Used by BallSystem.
+     *
+     * @param system the system holding the ball
+     * @param index  the slot of the ball
+     */
+    Ball(BallSystem system, int index) {
+        this.system = system;
+        this.index = index;
+    }
+
+    /**
+     * Points this handle at a slot of a ball system. Used by BallSystem when balls move between slots.
+     *
+     * @param s the system holding the ball
+     * @param i the slot of the ball
+     */
+    void moveTo(BallSystem s, int i) {
+        this.system = s;
+        this.index = i;
+    }
+
+    /**
+     * Returns the system holding the ball.
+     *
+     * @return the ball system
+     */
+    BallSystem system() {
+        return this.system;
+    }
+
+    /**
+     * Returns the slot of the ball in its system.
+     *
+     * @return the slot index
+     */
+    int index() {
+        return this.index;
     }
 
     /**
      * Sets the game environment for the ball.
+     * The environment is shared by all the balls of the ball's system.
      *
      * @param game the game environment
      */
     public void setGame(GameEnvironment game) {
-        this.game = game;
+        this.system.setEnvironment(game);
     }
 
     /**
@@ -67,7 +115,7 @@ public class Ball implements Sprite {
      * @return the x-coordinate of the center point
      */
     public int getX() {
-        return (int) this.center.getX();
+        return (int) this.system.x(index);
     }
 
     /**
@@ -76,7 +124,7 @@ public class Ball implements Sprite {
      * @return the y-coordinate of the center point
      */
     public int getY() {
-        return (int) this.center.getY();
+        return (int) this.system.y(index);
     }
 
     /**
@@ -85,7 +133,7 @@ public class Ball implements Sprite {
      * @return the radius of the ball
      */
     public double getSize() {
-        return this.radius;
+        return this.system.radius(index);
     }
 
     /**
@@ -94,7 +142,7 @@ public class Ball implements Sprite {
      * @return the color of the ball
      */
     public java.awt.Color getColor() {
-        return this.color;
+        return this.system.color(index);
     }
 
     /**
@@ -103,8 +151,7 @@ public class Ball implements Sprite {
      * @param surface the DrawSurface to draw the ball on
      */
     public void drawOn(DrawSurface surface) {
-        surface.setColor(color);
-        surface.fillCircle(getX(), getY(), this.radius);
+        this.system.draw(index, surface);
     }
 
     /**
@@ -113,7 +160,7 @@ public class Ball implements Sprite {
      * @param v the new velocity of the ball
      */
     public void setVelocity(Velocity v) {
-        this.velocity = v;
+        setVelocity(v.getX(), v.getY());
     }
 
     /**
@@ -123,7 +170,7 @@ public class Ball implements Sprite {
      * @param dy the y-component of the new velocity
      */
     public void setVelocity(double dx, double dy) {
-        setVelocity(new Velocity(dx, dy));
+        this.system.setVelocity(index, dx, dy);
     }
 
     /**
@@ -132,7 +179,7 @@ public class Ball implements Sprite {
      * @param color the new color of the ball
      */
     public void setColor(java.awt.Color color) {
-        this.color = color;
+        this.system.setColor(index, color);
     }
 
     /**
@@ -141,7 +188,59 @@ public class Ball implements Sprite {
      * @return the current velocity of the ball
      */
     public Velocity getVelocity() {
-        return velocity;
+        return new Velocity(this.system.dx(index), this.system.dy(index));
+    }
+
+    /**
+     * Returns the x-coordinate of the center point, without rounding.
+     *
+     * @return the x-coordinate of the center point
+     */
+    private double centerX() {
+        return this.system.x(index);
+    }
+
+    /**
+     * Returns the y-coordinate of the center point, without rounding.
+     *
+     * @return the y-coordinate of the center point
+     */
+    private double centerY() {
+        return this.system.y(index);
+    }
+
+    /**
+     * Returns the x-component of the velocity.
+     *
+     * @return the x-component of the velocity
+     */
+    private double velocityX() {
+        return this.system.dx(index);
+    }
+
+    /**
+     * Returns the y-component of the velocity.
+     *
+     * @return the y-component of the velocity
+     */
+    private double velocityY() {
+        return this.system.dy(index);
+    }
+
+    /**
+     * Returns the radius of the ball.
+     *
+     * @return the radius
+     */
+    private int radius() {
+        return this.system.radius(index);
+    }
+
+    /**
+     * Moves the center of the ball by its velocity.
+     */
+    private void applyVelocity() {
+        this.system.setCenter(index, centerX() + this.system.dx(index), centerY() + this.system.dy(index));
     }
 
     /**
@@ -152,47 +251,28 @@ public class Ball implements Sprite {
      * @param height the height of the boundaries
      */
     public void moveOneStep(int width, int height) {
-        if (this.center.getX() - radius < 0) {
-            setVelocity(-velocity.getX(), velocity.getY());
+        if (centerX() - radius() < 0) {
+            setVelocity(-velocityX(), velocityY());
         }
-        if (this.center.getX() + radius > width) {
-            setVelocity(-velocity.getX(), velocity.getY());
+        if (centerX() + radius() > width) {
+            setVelocity(-velocityX(), velocityY());
         }
-        if (this.center.getY() - radius < 0) {
-            setVelocity(velocity.getX(), -velocity.getY());
+        if (centerY() - radius() < 0) {
+            setVelocity(velocityX(), -velocityY());
         }
-        if (this.center.getY() + radius > height) {
-            setVelocity(velocity.getX(), -velocity.getY());
+        if (centerY() + radius() > height) {
+            setVelocity(velocityX(), -velocityY());
         }
-        this.center = this.getVelocity().applyToPoint(this.center);
+        applyVelocity();
     }
 
     /**
      * Moves the ball one step according to its velocity and the game environment.
      * The ball bounces off the collidable objects in the game environment.
+     * The whole circle is swept along the step, so the ball cannot clip the corners of a block.
      */
     public void moveOneStep() {
-        double radiousMimicX = this.radius;
-        if (this.velocity.getX() < 0) {
-            radiousMimicX = -radiousMimicX;
-        }
-        double radiousMimicY = this.radius;
-        if (this.velocity.getY() < 0) {
-            radiousMimicY = -radiousMimicY;
-        }
-
-        Point p2 = new Point(this.center.getX() + this.velocity.getX() + radiousMimicX,
-                this.center.getY() + this.velocity.getY() + radiousMimicY);
-
-        Line trajectory = new Line(this.center, p2);
-        CollisionInfo info = game.getClosestCollision(trajectory);
-        if (info == null) {
-            this.center = this.getVelocity().applyToPoint(this.center);
-        } else {
-            Velocity vv = info.collisionObject().hit(this, info.collisionPoint(), this.velocity);
-            this.center = vv.applyToPoint(this.center);
-            this.velocity = vv;
-        }
+        this.system.step(index);
     }
 
     /**
@@ -203,19 +283,19 @@ public class Ball implements Sprite {
      * @param height the height of the boundaries
      */
     public void moveOneStepGray(int width, int height) {
-        if (this.center.getX() - radius < 50) {
-            setVelocity(-velocity.getX(), velocity.getY());
+        if (centerX() - radius() < 50) {
+            setVelocity(-velocityX(), velocityY());
         }
-        if (this.center.getX() + radius > width) {
-            setVelocity(-velocity.getX(), velocity.getY());
+        if (centerX() + radius() > width) {
+            setVelocity(-velocityX(), velocityY());
         }
-        if (this.center.getY() - radius < 50) {
-            setVelocity(velocity.getX(), -velocity.getY());
+        if (centerY() - radius() < 50) {
+            setVelocity(velocityX(), -velocityY());
         }
-        if (this.center.getY() + radius > height) {
-            setVelocity(velocity.getX(), -velocity.getY());
+        if (centerY() + radius() > height) {
+            setVelocity(velocityX(), -velocityY());
         }
-        this.center = this.getVelocity().applyToPoint(this.center);
+        applyVelocity();
     }
 
     /**
@@ -225,76 +305,76 @@ public class Ball implements Sprite {
     public void oneStepParams() {
         boolean xFlag = false;
         boolean yFlag = false;
-        Velocity vFlag = this.velocity;
+        Velocity vFlag = getVelocity();
 
-        if (checkOverlap(this.radius, this.center.getX(), this.center.getY(), 50, 50, 500, 500)
-                && ((this.center.getX() - radius < 50 && this.center.getY() - radius < 50)
-                || (this.center.getX() + radius > 500 && this.center.getY() - radius < 50)
-                || (this.center.getX() - radius < 50 && this.center.getY() + radius > 500)
-                || (this.center.getX() + radius > 500 && this.center.getY() + radius > 500))) {
+        if (checkOverlap(radius(), centerX(), centerY(), 50, 50, 500, 500)
+                && ((centerX() - radius() < 50 && centerY() - radius() < 50)
+                || (centerX() + radius() > 500 && centerY() - radius() < 50)
+                || (centerX() - radius() < 50 && centerY() + radius() > 500)
+                || (centerX() + radius() > 500 && centerY() + radius() > 500))) {
 
-            setVelocity(-this.velocity.getX(), -this.velocity.getY());
-            this.center = this.getVelocity().applyToPoint(this.center);
+            setVelocity(-velocityX(), -velocityY());
+            applyVelocity();
             return;
         }
 
-        if (checkOverlap(this.radius, this.center.getX(), this.center.getY(), 450, 450, 600, 600)
-                && ((this.center.getX() - radius < 450 && this.center.getY() - radius < 450)
-                || (this.center.getX() + radius > 600 && this.center.getY() - radius < 450)
-                || (this.center.getX() - radius < 450 && this.center.getY() + radius > 600)
-                || (this.center.getX() + radius > 600 && this.center.getY() + radius > 600))) {
+        if (checkOverlap(radius(), centerX(), centerY(), 450, 450, 600, 600)
+                && ((centerX() - radius() < 450 && centerY() - radius() < 450)
+                || (centerX() + radius() > 600 && centerY() - radius() < 450)
+                || (centerX() - radius() < 450 && centerY() + radius() > 600)
+                || (centerX() + radius() > 600 && centerY() + radius() > 600))) {
 
-            setVelocity(-this.velocity.getX(), -this.velocity.getY());
-            this.center = this.getVelocity().applyToPoint(this.center);
+            setVelocity(-velocityX(), -velocityY());
+            applyVelocity();
             return;
         }
 
-        if (this.center.getX() + radius >= 50 && this.center.getX() + radius <= 50 + this.velocity.getX()
-                && this.center.getY() >= 50 && this.center.getY() <= 500) {
-            setVelocity(-this.velocity.getX(), this.velocity.getY());
+        if (centerX() + radius() >= 50 && centerX() + radius() <= 50 + velocityX()
+                && centerY() >= 50 && centerY() <= 500) {
+            setVelocity(-velocityX(), velocityY());
         }
 
-        if (this.center.getX() - radius >= 500 && this.center.getX() - radius <= 500 - this.velocity.getX()
-                && this.center.getY() >= 50 && this.center.getY() <= 450) {
-            setVelocity(-this.velocity.getX(), this.velocity.getY());
+        if (centerX() - radius() >= 500 && centerX() - radius() <= 500 - velocityX()
+                && centerY() >= 50 && centerY() <= 450) {
+            setVelocity(-velocityX(), velocityY());
         }
 
-        if (this.center.getX() - radius >= 600 && this.center.getX() - radius <= 600 - this.velocity.getX()
-                && this.center.getY() >= 450 && this.center.getY() <= 600) {
-            setVelocity(-this.velocity.getX(), this.velocity.getY());
+        if (centerX() - radius() >= 600 && centerX() - radius() <= 600 - velocityX()
+                && centerY() >= 450 && centerY() <= 600) {
+            setVelocity(-velocityX(), velocityY());
         }
 
-        if (this.center.getX() + radius >= 450 && this.center.getX() + radius <= 450 + this.velocity.getX()
-                && this.center.getY() >= 500 && this.center.getY() <= 600) {
-            setVelocity(-this.velocity.getX(), this.velocity.getY());
+        if (centerX() + radius() >= 450 && centerX() + radius() <= 450 + velocityX()
+                && centerY() >= 500 && centerY() <= 600) {
+            setVelocity(-velocityX(), velocityY());
         }
 
-        if (this.center.getY() + radius >= 50 && this.center.getY() + radius <= 50 + this.velocity.getY()
-                && this.center.getX() >= 50 && this.center.getX() <= 500) {
-            setVelocity(this.velocity.getX(), -this.velocity.getY());
+        if (centerY() + radius() >= 50 && centerY() + radius() <= 50 + velocityY()
+                && centerX() >= 50 && centerX() <= 500) {
+            setVelocity(velocityX(), -velocityY());
         }
 
-        if (this.center.getY() + radius >= 450 && this.center.getY() + radius <= 450 + this.velocity.getY()
-                && this.center.getX() >= 500 && this.center.getX() <= 600) {
-            setVelocity(this.velocity.getX(), -this.velocity.getY());
+        if (centerY() + radius() >= 450 && centerY() + radius() <= 450 + velocityY()
+                && centerX() >= 500 && centerX() <= 600) {
+            setVelocity(velocityX(), -velocityY());
         }
 
-        if (this.center.getY() - radius <= 500 && this.center.getY() - radius >= 500 + this.velocity.getY()
-                && this.center.getX() >= 50 && this.center.getX() <= 450) {
-            setVelocity(this.velocity.getX(), -this.velocity.getY());
+        if (centerY() - radius() <= 500 && centerY() - radius() >= 500 + velocityY()
+                && centerX() >= 50 && centerX() <= 450) {
+            setVelocity(velocityX(), -velocityY());
         }
 
-        if (this.center.getY() - radius <= 500 && this.center.getY() - radius >= 500 + this.velocity.getY()
-                && this.center.getX() >= 450 && this.center.getX() <= 600) {
-            setVelocity(this.velocity.getX(), -this.velocity.getY());
+        if (centerY() - radius() <= 500 && centerY() - radius() >= 500 + velocityY()
+                && centerX() >= 450 && centerX() <= 600) {
+            setVelocity(velocityX(), -velocityY());
         }
 
-        if (this.center.getY() - radius <= 600 && this.center.getY() - radius >= 600 + this.velocity.getY()
-                && this.center.getX() >= 450 && this.center.getX() <= 600) {
-            setVelocity(this.velocity.getX(), -this.velocity.getY());
+        if (centerY() - radius() <= 600 && centerY() - radius() >= 600 + velocityY()
+                && centerX() >= 450 && centerX() <= 600) {
+            setVelocity(velocityX(), -velocityY());
         }
 
-        if (vFlag.getX() == velocity.getX() && vFlag.getY() == velocity.getY()) {
+        if (vFlag.getX() == velocityX() && vFlag.getY() == velocityY()) {
             moveOneStep(WIDTH, HEIGHT);
         }
     }
@@ -338,7 +418,7 @@ public class Ball implements Sprite {
      * @param g the game to add the ball to
      */
     public void addToGame(Game g) {
-        g.addSprite(this);
+        g.addBall(this);
     }
 
     /**
@@ -347,19 +427,16 @@ public class Ball implements Sprite {
      * @param g the game to remove the ball from
      */
     public void removeFromGame(Game g) {
-        g.removeSprite(this);
+        g.removeBall(this);
     }
 
     /**
      * Generates a random color from a predefined set of colors.
      *
+     * @param random the generator to pick the color with
      * @return a randomly selected color
      */
-    public Color randColor() {
-        Color[] colors = {Color.BLUE, Color.RED, Color.ORANGE, Color.YELLOW, Color.GREEN, Color.PINK};
-        Random random = new Random();
-        int randomNumber = random.nextInt();
-        randomNumber = Math.abs(randomNumber % 6);
-        return colors[randomNumber];
+    public Color randColor(SeededRandom random) {
+        return COLORS[random.nextInt(COLORS.length)];
     }
 }
@@ -0,0 +1,178 @@
+import java.util.Arrays;
+
+/**
+ * Elastic collisions between the balls of a BallSystem, found with sweep and prune along the
+ * x-axis. The balls are kept sorted by the left edge of their bounding box, so two balls can only
+ * touch if the second one starts before the first one ends; sweeping the sorted list therefore
+ * tests only the pairs whose x-extents overlap. Balls move little between steps, so the order of
+ * the previous step is nearly sorted and an insertion sort restores it in close to linear time.
+ * <p>
+ * The order is a list of slots of the ball system. New slots are appended to it, and the system
+ * renumbers it (see remap) when it compacts its slots. Ties between equal edges are broken by
+ * slot, so the order, and with it the order the pairs are resolved in, only depends on the balls'
+ * state and not on the previous steps.
+ */
+public class BallCollisions {
+
+    private static final int INITIAL_CAPACITY = 16;
+    // more new slots than this at once are presorted, instead of being inserted one by one
+    private static final int INSERTION_LIMIT = 32;
+
+    private int[] order = new int[INITIAL_CAPACITY];
+    private double[] left = new double[INITIAL_CAPACITY];
+    private long[] packed = new long[INITIAL_CAPACITY];
+    private int count;
+
+    /**
+     * Forgets every slot, for when the system's slots were all replaced.
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Renumbers the slots after the ball system compacted them, keeping their order.
+     *
+     * @param newSlots the new slot of each old slot, or -1 for a slot that was dropped
+     */
+    public void remap(int[] newSlots) {
+        int j = 0;
+        for (int p = 0; p < count; p++) {
+            int slot = newSlots[order[p]];
+            if (slot >= 0) {
+                order[j] = slot;
+                left[j] = left[p];
+                j++;
+            }
+        }
+        count = j;
+    }
+
+    /**
+     * Finds the pairs of live balls that overlap while moving towards each other, and bounces
+     * them off each other. The velocities' components along the line between the centers are
+     * exchanged as in an elastic collision of masses proportional to the balls' areas. Positions
+     * are not changed, so a ball is never pushed into a block; overlapping balls simply move
+     * apart over the next steps.
+     *
+     * @param x      the x-coordinates of the centers
+     * @param y      the y-coordinates of the centers
+     * @param dx     the x-components of the velocities, updated in place
+     * @param dy     the y-components of the velocities, updated in place
+     * @param radius the radii
+     * @param alive  whether each slot holds a live ball
+     * @param n      the number of slots
+     * @return the number of pairs whose x-extents overlap, which were tested further
+     */
+    public int collide(double[] x, double[] y, double[] dx, double[] dy, int[] radius, boolean[] alive, int n) {
+        if (order.length < n) {
+            int capacity = Math.max(n, 2 * order.length);
+            order = Arrays.copyOf(order, capacity);
+            left = Arrays.copyOf(left, capacity);
+            packed = new long[capacity];
+        }
+        int known = count;
+        while (count < n) {
+            order[count] = count;
+            count++;
+        }
+        for (int p = 0; p < count; p++) {
+            left[p] = x[order[p]] - radius[order[p]];
+        }
+        if (count - known > INSERTION_LIMIT) {
+            presort();
+            for (int p = 0; p < count; p++) {
+                left[p] = x[order[p]] - radius[order[p]];
+            }
+        }
+        sort();
+
+        int tested = 0;
+        for (int p = 0; p < count; p++) {
+            int a = order[p];
+            if (!alive[a]) {
+                continue;
+            }
+            double right = x[a] + radius[a];
+            for (int q = p + 1; q < count && left[q] <= right; q++) {
+                int b = order[q];
+                if (alive[b]) {
+                    tested++;
+                    bounce(a, b, x, y, dx, dy, radius);
+                }
+            }
+        }
+        return tested;
+    }
+
+    /**
+     * Puts the slots roughly in order with a library sort, for when many slots are new and an
+     * insertion sort would take quadratic time. Each slot is packed with its edge rounded to a
+     * float, whose bits sort like the float itself after flipping the negative ones, into a long
+     * that sorts without boxing. The exact insertion sort that follows only has to fix the slots
+     * whose edges round to the same float.
+     */
+    private void presort() {
+        for (int p = 0; p < count; p++) {
+            int bits = Float.floatToIntBits((float) left[p]);
+            bits ^= (bits >> 31) & 0x7FFFFFFF;
+            packed[p] = ((long) bits << 32) | order[p];
+        }
+        Arrays.sort(packed, 0, count);
+        for (int p = 0; p < count; p++) {
+            order[p] = (int) packed[p];
+        }
+    }
+
+    /**
+     * Sorts the slots by left edge, then by slot. Each slot is moved back past the ones it
+     * overtook since the last step, which are few.
+     */
+    private void sort() {
+        for (int p = 1; p < count; p++) {
+            int slot = order[p];
+            double key = left[p];
+            int q = p - 1;
+            while (q >= 0 && (left[q] > key || (left[q] == key && order[q] > slot))) {
+                order[q + 1] = order[q];
+                left[q + 1] = left[q];
+                q--;
+            }
+            order[q + 1] = slot;
+            left[q + 1] = key;
+        }
+    }
+
+    /**
+     * Bounces two balls off each other if they overlap and are moving towards each other.
+     *
+     * @param a      the slot of the first ball
+     * @param b      the slot of the second ball
+     * @param x      the x-coordinates of the centers
+     * @param y      the y-coordinates of the centers
+     * @param dx     the x-components of the velocities
+     * @param dy     the y-components of the velocities
+     * @param radius the radii
+     */
+    private static void bounce(int a, int b, double[] x, double[] y, double[] dx, double[] dy, int[] radius) {
+        double nx = x[b] - x[a];
+        double ny = y[b] - y[a];
+        double reach = radius[a] + radius[b];
+        double distSq = nx * nx + ny * ny;
+        if (distSq >= reach * reach || distSq == 0) {
+            return;
+        }
+        // the speed at which b moves away from a, along the line from a to b, times the distance
+        double separating = (dx[b] - dx[a]) * nx + (dy[b] - dy[a]) * ny;
+        if (separating >= 0) {
+            return;
+        }
+        double massA = (double) radius[a] * radius[a];
+        double massB = (double) radius[b] * radius[b];
+        double impulse = 2 * separating / ((massA + massB) * distSq);
+        dx[a] += impulse * massB * nx;
+        dy[a] += impulse * massB * ny;
+        dx[b] -= impulse * massA * nx;
+        dy[b] -= impulse * massA * ny;
+    }
+}
@@ -0,0 +1,897 @@
+import biuoop.DrawSurface;
+import java.awt.Color;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Stores the state of many balls in parallel primitive arrays and moves them all in one pass.
+ * Each ball occupies a slot: its center, velocity, radius and color are kept at the same
+ * index of the arrays, and a Ball object serves as a lightweight
+ * handle to its slot. The whole system is a single sprite.
+ * <p>
+ * A step runs in two phases. First every ball's trajectory is checked against the environment,
+ * optionally in parallel on a fork-join pool since the environment is only read. Then, serially and
+ * in slot order, the hits are resolved: collidables update the velocities and report the hits (in a
+ * game they are buffered and delivered to the hit listeners after the step). A ball whose
+ * first-phase result may have been changed by an earlier hit (the collidable it found was removed,
+ * or something was added) is queried again. The outcome is therefore exactly the same as moving
+ * the balls one by one, whatever the number of threads.
+ */
+public class BallSystem implements InterpolatedSprite {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int PARALLEL_CHUNK = 1024;
+    private static final int SNAPSHOT_BALL_SIZE = 6 * 8 + 2 * 4;
+    private static final int MAX_CONTACTS = 8;
+
+    private double[] x;
+    private double[] y;
+    private double[] dx;
+    private double[] dy;
+    private double[] previousX;
+    private double[] previousY;
+    private int[] radius;
+    private Color[] color;
+    private boolean[] alive;
+    private Ball[] handles;
+    private Collidable[] hitObject;
+    private double[] hitX;
+    private double[] hitY;
+    private double[] hitTime;
+    private boolean[] bounced;
+    private int[] newSlots;
+    private int size;
+    private int dead;
+
+    private GameEnvironment environment;
+    private SweepHit hit;
+    private CollisionQuery query;
+    private Point contact;
+    private Velocity velocity;
+    private ForkJoinPool pool;
+    private FindCollisions[] chunks;
+    private FindAllCollisions findAll;
+    private double timeScale = 1;
+    private Counter queries;
+    private Counter skips;
+    private BallCollisions ballCollisions;
+    private Counter pairs;
+
+    /**
+     * Constructs an empty ball system.
+     */
+    public BallSystem() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty ball system with room for the given number of balls.
+     *
+     * @param capacity the number of balls to allocate room for
+     */
+    public BallSystem(int capacity) {
+        int n = Math.max(1, capacity);
+        this.x = new double[n];
+        this.y = new double[n];
+        this.dx = new double[n];
+        this.dy = new double[n];
+        this.previousX = new double[n];
+        this.previousY = new double[n];
+        this.radius = new int[n];
+        this.color = new Color[n];
+        this.alive = new boolean[n];
+        this.handles = new Ball[n];
+        this.hitObject = new Collidable[n];
+        this.hitX = new double[n];
+        this.hitY = new double[n];
+        this.hitTime = new double[n];
+        this.bounced = new boolean[n];
+        this.newSlots = new int[n];
+        this.hit = new SweepHit();
+        this.query = new CollisionQuery();
+        this.contact = new Point(0, 0);
+        this.velocity = new Velocity(0, 0);
+        this.chunks = new FindCollisions[0];
+        this.findAll = new FindAllCollisions();
+    }
+
+    /**
+     * Sets the game environment the balls of this system collide with.
+     *
+     * @param environment the game environment
+     */
+    public void setEnvironment(GameEnvironment environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * Sets the pool the trajectory queries run on. With no pool, everything runs on the calling thread.
+     * The pool stays the caller's to shut down. The tasks of the chunks of slots, each with its own
+     * scratch space, are made here and when the arrays grow, so a parallel step allocates nothing.
+     *
+     * @param pool the fork-join pool to use, or null to run serially
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+        if (pool != null) {
+            ensureChunks(x.length);
+        }
+    }
+
+    /**
+     * Sets the counter of trajectory queries. Each query made while moving the balls adds one.
+     *
+     * @param queries the counter, or null not to count the queries
+     */
+    public void setQueryCounter(Counter queries) {
+        this.queries = queries;
+    }
+
+    /**
+     * Sets the counter of trajectory queries that skipped the static collidables, because the
+     * environment's distance field showed the ball's step to be clear of them (see DistanceField).
+     * Together with the query counter it tells what fraction of the queries were skipped.
+     *
+     * @param skips the counter, or null not to count the skipped queries
+     */
+    public void setSkipCounter(Counter skips) {
+        this.skips = skips;
+    }
+
+    /**
+     * Sets whether the balls bounce off each other. They pass through each other by default.
+     *
+     * @param enabled true to make the balls collide with each other, false to let them pass
+     */
+    public void setBallCollisions(boolean enabled) {
+        this.ballCollisions = enabled ? new BallCollisions() : null;
+    }
+
+    /**
+     * Sets the counter of the pairs of balls tested for collisions with each other. Each step
+     * adds the number of pairs whose x-extents overlap (see BallCollisions).
+     *
+     * @param pairs the counter, or null not to count the pairs
+     */
+    public void setPairCounter(Counter pairs) {
+        this.pairs = pairs;
+    }
+
+    /**
+     * Sets the fraction of a 60 FPS frame that one step lasts.
+     * Velocities are measured per 60 FPS frame, so each step moves a ball by its velocity times this
+     * scale, and the balls' real speed doesn't depend on the step rate.
+     *
+     * @param timeScale the length of a step, in 60 FPS frames
+     */
+    public void setTimeScale(double timeScale) {
+        this.timeScale = timeScale;
+    }
+
+    /**
+     * Returns the number of balls in the system.
+     *
+     * @return the number of balls
+     */
+    public int size() {
+        return size - dead;
+    }
+
+    /**
+     * Adds a new ball to the system.
+     *
+     * @param cx the x-coordinate of the ball's center
+     * @param cy the y-coordinate of the ball's center
+     * @param r  the radius of the ball
+     * @param c  the color of the ball
+     * @return the handle of the new ball
+     */
+    public Ball add(double cx, double cy, int r, Color c) {
+        Ball ball = new Ball(this, size);
+        attach(ball, cx, cy, r, c);
+        return ball;
+    }
+
+    /**
+     * Stores a new ball with no velocity in this system and points its handle at it.
+     *
+     * @param ball the handle of the ball
+     * @param cx   the x-coordinate of the ball's center
+     * @param cy   the y-coordinate of the ball's center
+     * @param r    the radius of the ball
+     * @param c    the color of the ball
+     */
+    void attach(Ball ball, double cx, double cy, int r, Color c) {
+        add(ball, cx, cy, 0, 0, r, c);
+    }
+
+    /**
+     * Moves a ball from its current system into this one, keeping its state.
+     * Does nothing if the ball is already in this system.
+     *
+     * @param ball the ball to move
+     */
+    public void adopt(Ball ball) {
+        BallSystem from = ball.system();
+        if (from == this) {
+            // a ball removed since the last compaction still has its slot, and gets it back
+            if (!alive[ball.index()]) {
+                alive[ball.index()] = true;
+                dead--;
+            }
+            return;
+        }
+        int i = ball.index();
+        add(ball, from.x[i], from.y[i], from.dx[i], from.dy[i], from.radius[i], from.color[i]);
+        from.release(i);
+    }
+
+    /**
+     * Removes a ball from the system. The handle stays usable and keeps the ball's last state.
+     * The ball's slot is only marked dead, which takes constant time; the dead slots are dropped
+     * together by one compaction (see dropRemoved), so removing many balls at once does not
+     * shift the slots once per ball.
+     *
+     * @param ball the ball to remove
+     */
+    public void remove(Ball ball) {
+        if (ball.system() != this || !alive[ball.index()]) {
+            return;
+        }
+        alive[ball.index()] = false;
+        dead++;
+    }
+
+    /**
+     * Checks if a ball is in the system.
+     *
+     * @param ball the ball to check
+     * @return true if the ball is in the system and was not removed, false otherwise
+     */
+    public boolean contains(Ball ball) {
+        return ball.system() == this && alive[ball.index()];
+    }
+
+    /**
+     * Returns a checksum of the balls' state: the center, velocity, radius and color of every ball
+     * in slot order.
+     *
+     * @return the checksum
+     */
+    public long checksum() {
+        long h = 1;
+        for (int i = 0; i < size; i++) {
+            if (alive[i]) {
+                h = 31 * h + Double.doubleToLongBits(x[i]);
+                h = 31 * h + Double.doubleToLongBits(y[i]);
+                h = 31 * h + Double.doubleToLongBits(dx[i]);
+                h = 31 * h + Double.doubleToLongBits(dy[i]);
+                h = 31 * h + radius[i];
+                h = 31 * h + color[i].getRGB();
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Returns the number of bytes writeTo writes.
+     *
+     * @return the size of the balls' state
+     */
+    public int getSnapshotSize() {
+        return 4 + SNAPSHOT_BALL_SIZE * (size - dead);
+    }
+
+    /**
+     * Writes the state of every ball to a snapshot: the number of balls, then each ball's center,
+     * center before the last step, velocity, radius and color.
+     *
+     * @param out the buffer to write to
+     */
+    public void writeTo(ByteBuffer out) {
+        out.putInt(size - dead);
+        for (int i = 0; i < size; i++) {
+            if (alive[i]) {
+                out.putDouble(x[i]).putDouble(y[i]).putDouble(previousX[i]).putDouble(previousY[i])
+                        .putDouble(dx[i]).putDouble(dy[i]).putInt(radius[i]).putInt(color[i].getRGB());
+            }
+        }
+    }
+
+    /**
+     * Replaces the balls with the ones written by writeTo. The handles of the current balls are
+     * reused for the restored balls, slot by slot; the handles left over are removed like the
+     * handles of removed balls. Must not be called while the balls are moving.
+     *
+     * @param in the buffer to read from
+     */
+    public void readFrom(ByteBuffer in) {
+        if (dead > 0) {
+            // the handles of removed balls must not be reused
+            compact();
+        }
+        int n = in.getInt();
+        while (x.length < n) {
+            grow();
+        }
+        for (int i = n; i < size; i++) {
+            if (handles[i] != null) {
+                detach(i);
+            }
+            alive[i] = false;
+            handles[i] = null;
+        }
+        for (int i = 0; i < n; i++) {
+            x[i] = in.getDouble();
+            y[i] = in.getDouble();
+            previousX[i] = in.getDouble();
+            previousY[i] = in.getDouble();
+            dx[i] = in.getDouble();
+            dy[i] = in.getDouble();
+            radius[i] = in.getInt();
+            int rgb = in.getInt();
+            if (i >= size || color[i].getRGB() != rgb) {
+                color[i] = new Color(rgb, true);
+            }
+            alive[i] = true;
+            if (i >= size) {
+                handles[i] = new Ball(this, i);
+            }
+        }
+        size = n;
+        dead = 0;
+        if (ballCollisions != null) {
+            ballCollisions.clear();
+        }
+    }
+
+    /**
+     * Moves every ball in the system one step.
+     * First every ball's step is checked for collisions. A ball that hits something is moved
+     * along its path contact by contact (see bounce), and all the other centers are then advanced
+     * in one tight loop. Last, if enabled, the balls that touch bounce off each other.
+     */
+    @Override
+    public void timePassed() {
+        if (dead > 0) {
+            compact();
+        }
+        int n = size;
+        double scale = timeScale;
+        System.arraycopy(x, 0, previousX, 0, n);
+        System.arraycopy(y, 0, previousY, 0, n);
+        if (environment != null) {
+            int additions = environment.getAdditions();
+            if (pool != null && n > PARALLEL_CHUNK) {
+                findAll.prepare(n);
+                pool.invoke(findAll);
+            } else {
+                findCollisions(0, n, hit, query);
+            }
+            for (int i = 0; i < n; i++) {
+                Collidable c = hitObject[i];
+                hitObject[i] = null;
+                if (!alive[i]) {
+                    continue;
+                }
+                if (environment.getAdditions() != additions || (c != null && !environment.contains(c))) {
+                    if (queries != null) {
+                        queries.increase(1);
+                    }
+                    c = environment.getClosestCollision(x[i], y[i], dx[i] * scale, dy[i] * scale, radius[i], hit,
+                            query) ? hit.collidable() : null;
+                    hitX[i] = hit.pointX();
+                    hitY[i] = hit.pointY();
+                    hitTime[i] = hit.time();
+                }
+                if (c != null) {
+                    bounce(i, c, hitTime[i], hitX[i], hitY[i]);
+                    bounced[i] = true;
+                }
+            }
+            countSkipped(query);
+        }
+        for (int i = 0; i < n; i++) {
+            if (bounced[i]) {
+                bounced[i] = false;
+            } else {
+                x[i] += dx[i] * scale;
+                y[i] += dy[i] * scale;
+            }
+        }
+        if (ballCollisions != null) {
+            int tested = ballCollisions.collide(x, y, dx, dy, radius, alive, n);
+            if (pairs != null) {
+                pairs.increase(tested);
+            }
+        }
+        if (dead > 0) {
+            compact();
+        }
+    }
+
+    /**
+     * Draws every ball in the system.
+     *
+     * @param d the surface to draw on
+     */
+    @Override
+    public void drawOn(DrawSurface d) {
+        for (int i = 0; i < size; i++) {
+            if (alive[i]) {
+                draw(i, d);
+            }
+        }
+    }
+
+    /**
+     * Draws every ball between its position before the last step and its current position.
+     *
+     * @param d     the surface to draw on
+     * @param alpha how far between the previous position (0) and the current position (1) to draw
+     */
+    @Override
+    public void drawOn(DrawSurface d, double alpha) {
+        for (int i = 0; i < size; i++) {
+            if (alive[i]) {
+                d.setColor(color[i]);
+                d.fillCircle((int) (previousX[i] + (x[i] - previousX[i]) * alpha),
+                        (int) (previousY[i] + (y[i] - previousY[i]) * alpha), radius[i]);
+            }
+        }
+    }
+
+    /**
+     * Moves a single ball one step, checking it for collisions first.
+     *
+     * @param i the slot of the ball
+     */
+    void step(int i) {
+        previousX[i] = x[i];
+        previousY[i] = y[i];
+        if (environment != null) {
+            if (queries != null) {
+                queries.increase(1);
+            }
+            if (environment.getClosestCollision(x[i], y[i], dx[i] * timeScale, dy[i] * timeScale, radius[i], hit,
+                    query)) {
+                bounce(i, hit.collidable(), hit.time(), hit.pointX(), hit.pointY());
+                countSkipped(query);
+                return;
+            }
+            countSkipped(query);
+        }
+        x[i] += dx[i] * timeScale;
+        y[i] += dy[i] * timeScale;
+    }
+
+    /**
+     * Draws a single ball.
+     *
+     * @param i the slot of the ball
+     * @param d the surface to draw on
+     */
+    void draw(int i, DrawSurface d) {
+        d.setColor(color[i]);
+        d.fillCircle((int) x[i], (int) y[i], radius[i]);
+    }
+
+    /**
+     * Returns the x-coordinate of a ball's center.
+     *
+     * @param i the slot of the ball
+     * @return the x-coordinate
+     */
+    double x(int i) {
+        return x[i];
+    }
+
+    /**
+     * Returns the y-coordinate of a ball's center.
+     *
+     * @param i the slot of the ball
+     * @return the y-coordinate
+     */
+    double y(int i) {
+        return y[i];
+    }
+
+    /**
+     * Returns the x-component of a ball's velocity.
+     *
+     * @param i the slot of the ball
+     * @return the x-component of the velocity
+     */
+    double dx(int i) {
+        return dx[i];
+    }
+
+    /**
+     * Returns the y-component of a ball's velocity.
+     *
+     * @param i the slot of the ball
+     * @return the y-component of the velocity
+     */
+    double dy(int i) {
+        return dy[i];
+    }
+
+    /**
+     * Returns the radius of a ball.
+     *
+     * @param i the slot of the ball
+     * @return the radius
+     */
+    int radius(int i) {
+        return radius[i];
+    }
+
+    /**
+     * Returns the color of a ball.
+     *
+     * @param i the slot of the ball
+     * @return the color
+     */
+    Color color(int i) {
+        return color[i];
+    }
+
+    /**
+     * Sets the center of a ball.
+     *
+     * @param i  the slot of the ball
+     * @param cx the new x-coordinate
+     * @param cy the new y-coordinate
+     */
+    void setCenter(int i, double cx, double cy) {
+        x[i] = cx;
+        y[i] = cy;
+    }
+
+    /**
+     * Sets the velocity of a ball.
+     *
+     * @param i  the slot of the ball
+     * @param vx the new x-component
+     * @param vy the new y-component
+     */
+    void setVelocity(int i, double vx, double vy) {
+        dx[i] = vx;
+        dy[i] = vy;
+    }
+
+    /**
+     * Sets the color of a ball.
+     *
+     * @param i the slot of the ball
+     * @param c the new color
+     */
+    void setColor(int i, Color c) {
+        color[i] = c;
+    }
+
+    /**
+     * Moves a ball through a step in which it hits something. The ball moves up to the contact,
+     * the collidable updates its velocity, and the rest of the step's travel is swept again with
+     * the new velocity, so a fast ball can bounce several times in one step without ever passing
+     * through a block. The number of contacts per step grows with the ball's travel measured in
+     * radii, since a ball can only meet a few surfaces for each diameter it travels; a ball that
+     * uses them all up stays at its last contact until the next step.
+     *
+     * @param i  the slot of the ball
+     * @param c  the first collidable the ball hits during the step
+     * @param t  the time of the first contact, as a fraction of the step
+     * @param px the x-coordinate of the first collision point
+     * @param py the y-coordinate of the first collision point
+     */
+    private void bounce(int i, Collidable c, double t, double px, double py) {
+        double scale = timeScale;
+        double travel = Math.sqrt(dx[i] * dx[i] + dy[i] * dy[i]) * scale;
+        int contacts = Math.min(MAX_CONTACTS, 2 + (int) (travel / radius[i]));
+        double remaining = 1;
+        while (true) {
+            x[i] += dx[i] * scale * remaining * t;
+            y[i] += dy[i] * scale * remaining * t;
+            remaining *= 1 - t;
+            resolve(i, c, px, py);
+            if (--contacts == 0) {
+                // the rest of the travel is dropped rather than taken unchecked, so even a ball
+                // trapped in a gap narrower than itself never passes through a block
+                remaining = 0;
+            }
+            if (remaining <= 0 || !alive[i]) {
+                break;
+            }
+            if (queries != null) {
+                queries.increase(1);
+            }
+            if (!environment.getClosestCollision(x[i], y[i], dx[i] * scale * remaining, dy[i] * scale * remaining,
+                    radius[i], hit, query)) {
+                break;
+            }
+            c = hit.collidable();
+            t = hit.time();
+            px = hit.pointX();
+            py = hit.pointY();
+        }
+        x[i] += dx[i] * scale * remaining;
+        y[i] += dy[i] * scale * remaining;
+    }
+
+    /**
+     * Finds the first collidable hit by each live ball in a range of slots, without resolving the hits.
+     * Only reads the environment, so disjoint ranges may run on different threads.
+     *
+     * @param from    the first slot of the range
+     * @param to      the slot after the last slot of the range
+     * @param result  the result holder of the calling thread
+     * @param scratch the query scratch space of the calling thread
+     */
+    private void findCollisions(int from, int to, SweepHit result, CollisionQuery scratch) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (!alive[i]) {
+                continue;
+            }
+            count++;
+            if (environment.getClosestCollision(x[i], y[i], dx[i] * timeScale, dy[i] * timeScale,
+                    radius[i], result, scratch)) {
+                hitObject[i] = result.collidable();
+                hitX[i] = result.pointX();
+                hitY[i] = result.pointY();
+                hitTime[i] = result.time();
+            }
+        }
+        // added once per range, so parallel ranges touch the shared counter rarely
+        if (queries != null) {
+            queries.increase(count);
+        }
+        countSkipped(scratch);
+    }
+
+    /**
+     * Adds the queries a scratch space skipped to the counter of skipped queries.
+     *
+     * @param scratch the query scratch space
+     */
+    private void countSkipped(CollisionQuery scratch) {
+        int skipped = scratch.takeSkipped();
+        if (skips != null && skipped > 0) {
+            skips.increase(skipped);
+        }
+    }
+
+    /**
+     * Lets a collidable a ball hit update the ball's velocity.
+     * The collision point and the velocity passed to the collidable are reused for every hit.
+     *
+     * @param i  the slot of the ball
+     * @param c  the collidable that was hit
+     * @param px the x-coordinate of the collision point
+     * @param py the y-coordinate of the collision point
+     */
+    private void resolve(int i, Collidable c, double px, double py) {
+        contact.set(px, py);
+        velocity.set(dx[i], dy[i]);
+        Velocity v = c.hit(handles[i], contact, velocity);
+        dx[i] = v.getX();
+        dy[i] = v.getY();
+    }
+
+    /**
+     * Stores a ball in a new slot at the end of the arrays and points its handle at it.
+     *
+     * @param ball the handle of the ball
+     * @param cx   the x-coordinate of the center
+     * @param cy   the y-coordinate of the center
+     * @param vx   the x-component of the velocity
+     * @param vy   the y-component of the velocity
+     * @param r    the radius
+     * @param c    the color
+     */
+    private void add(Ball ball, double cx, double cy, double vx, double vy, int r, Color c) {
+        if (size == x.length) {
+            grow();
+        }
+        x[size] = cx;
+        y[size] = cy;
+        previousX[size] = cx;
+        previousY[size] = cy;
+        dx[size] = vx;
+        dy[size] = vy;
+        radius[size] = r;
+        color[size] = c;
+        alive[size] = true;
+        handles[size] = ball;
+        ball.moveTo(this, size);
+        size++;
+    }
+
+    /**
+     * Drops a slot whose ball was adopted by another system.
+     *
+     * @param i the slot to drop
+     */
+    private void release(int i) {
+        alive[i] = false;
+        handles[i] = null;
+        dead++;
+    }
+
+    /**
+     * Drops the slots of the balls removed since the last compaction. The game calls this once per
+     * step, after the hits were dispatched; the system also does it at the start and the end of
+     * every step. Must not be called while the balls are moving.
+     */
+    public void dropRemoved() {
+        if (dead > 0) {
+            compact();
+        }
+    }
+
+    /**
+     * Removes the dead slots, keeping the remaining balls in their order.
+     * The handles of removed balls are given a private system holding their last state.
+     */
+    private void compact() {
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            newSlots[i] = alive[i] ? j : -1;
+            if (alive[i]) {
+                if (i != j) {
+                    x[j] = x[i];
+                    y[j] = y[i];
+                    previousX[j] = previousX[i];
+                    previousY[j] = previousY[i];
+                    dx[j] = dx[i];
+                    dy[j] = dy[i];
+                    radius[j] = radius[i];
+                    color[j] = color[i];
+                    alive[j] = true;
+                    handles[j] = handles[i];
+                    handles[j].moveTo(this, j);
+                }
+                j++;
+            } else if (handles[i] != null) {
+                detach(i);
+            }
+        }
+        for (int i = j; i < size; i++) {
+            alive[i] = false;
+            handles[i] = null;
+        }
+        size = j;
+        dead = 0;
+        if (ballCollisions != null) {
+            ballCollisions.remap(newSlots);
+        }
+    }
+
+    /**
+     * Gives the handle of a removed ball a private system holding the ball's last state.
+     *
+     * @param i the slot of the removed ball
+     */
+    private void detach(int i) {
+        BallSystem own = new BallSystem(1);
+        own.add(handles[i], x[i], y[i], dx[i], dy[i], radius[i], color[i]);
+    }
+
+    /**
+     * Doubles the capacity of the arrays.
+     */
+    private void grow() {
+        int capacity = x.length * 2;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        dx = Arrays.copyOf(dx, capacity);
+        dy = Arrays.copyOf(dy, capacity);
+        previousX = Arrays.copyOf(previousX, capacity);
+        previousY = Arrays.copyOf(previousY, capacity);
+        radius = Arrays.copyOf(radius, capacity);
+        color = Arrays.copyOf(color, capacity);
+        alive = Arrays.copyOf(alive, capacity);
+        handles = Arrays.copyOf(handles, capacity);
+        hitObject = Arrays.copyOf(hitObject, capacity);
+        hitX = Arrays.copyOf(hitX, capacity);
+        hitY = Arrays.copyOf(hitY, capacity);
+        hitTime = Arrays.copyOf(hitTime, capacity);
+        bounced = Arrays.copyOf(bounced, capacity);
+        newSlots = Arrays.copyOf(newSlots, capacity);
+        if (pool != null) {
+            ensureChunks(capacity);
+        }
+    }
+
+    /**
+     * Makes a task for every chunk of PARALLEL_CHUNK slots up to the given number of slots.
+     *
+     * @param capacity the number of slots
+     */
+    private void ensureChunks(int capacity) {
+        int count = (capacity + PARALLEL_CHUNK - 1) / PARALLEL_CHUNK;
+        if (count <= chunks.length) {
+            return;
+        }
+        int old = chunks.length;
+        chunks = Arrays.copyOf(chunks, count);
+        for (int c = old; c < count; c++) {
+            chunks[c] = new FindCollisions(c * PARALLEL_CHUNK);
+        }
+    }
+
+    /**
+     * Runs findCollisions over one chunk of PARALLEL_CHUNK slots, with the chunk's own scratch
+     * space. The task is run again every step, so it is reinitialized before each run.
+     */
+    private final class FindCollisions extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final SweepHit result;
+        private final CollisionQuery scratch;
+        private int to;
+
+        /**
+         * Constructs the task of the chunk starting at a slot.
+         *
+         * @param from the first slot of the chunk
+         */
+        private FindCollisions(int from) {
+            this.from = from;
+            this.result = new SweepHit();
+            this.scratch = new CollisionQuery();
+        }
+
+        /**
+         * Queries the chunk's slots below the number of slots of this step.
+         */
+        @Override
+        protected void compute() {
+            findCollisions(from, to, result, scratch);
+        }
+    }
+
+    /**
+     * Runs the tasks of the chunks covering the slots of a step on the pool's threads, and waits
+     * for them all.
+     */
+    private final class FindAllCollisions extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private int count;
+
+        /**
+         * Readies the task and the tasks of the chunks for a step.
+         *
+         * @param n the number of slots to query
+         */
+        private void prepare(int n) {
+            reinitialize();
+            count = (n + PARALLEL_CHUNK - 1) / PARALLEL_CHUNK;
+            for (int c = 0; c < count; c++) {
+                chunks[c].reinitialize();
+                chunks[c].to = Math.min(n, chunks[c].from + PARALLEL_CHUNK);
+            }
+        }
+
+        /**
+         * Forks every chunk but the first, runs the first one here, then joins the others, in the
+         * reverse order of the forks so each join finds its task on top of this thread's queue.
+         */
+        @Override
+        protected void compute() {
+            for (int c = count - 1; c > 0; c--) {
+                chunks[c].fork();
+            }
+            chunks[0].invoke();
+            for (int c = 1; c < count; c++) {
+                chunks[c].join();
+            }
+        }
+    }
+}
@@ -1,45 +1,71 @@
 import biuoop.DrawSurface;
 import java.awt.Color;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Represents a block which can collide and be drawn as a sprite.
+ * A block is a view of a slot of a BlockStore, which holds its rectangle, color and hit
+ * listeners; the block itself only knows the store and the slot. A block constructed on its own
+ * gets a store of its own.
  */
 public class Block implements Collidable, Sprite, HitNotifier {
 
-    private Rectangle r;
-    private Color color;
-    private List<HitListener> hitListeners;
+    private final BlockStore store;
+    private final int index;
 
     /**
      * Constructs a block with specified rectangle and color.
      *
-     * @param r     the rectangle defining the block's shape and position
+     * @param r     the rectangle defining the block's shape and position, copied into the block's store
      * @param color the color of the block
      */
     public Block(Rectangle r, Color color) {
-        this.r = r;
-        this.color = color;
-        this.hitListeners = new ArrayList<>();
+        this(new BlockStore(1), r.getUpperLeft().getX(), r.getUpperLeft().getY(), r.getWidth(), r.getHeight(),
+                color);
     }
 
     /**
      * Default constructor, creates a default rectangle.
      */
     public Block() {
-        Rectangle a = new Rectangle(new Point(0, 0), 0, 0);
-        this.r = a;
-        this.hitListeners = new ArrayList<>();
+        this(new Rectangle(new Point(0, 0), 0, 0), null);
     }
 
     /**
-     * Gets the collision rectangle.
+     * Constructs a block in a slot added to the given store (see BlockStore.add).
+     *
+     * @param store      the store holding the block
+     * @param upperLeftX the x-coordinate of the block's upper-left corner
+     * @param upperLeftY the y-coordinate of the block's upper-left corner
+     * @param width      the width of the block
+     * @param height     the height of the block
+     * @param color      the color of the block
+     */
+    Block(BlockStore store, double upperLeftX, double upperLeftY, double width, double height, Color color) {
+        this.store = store;
+        this.index = store.addSlot(this, upperLeftX, upperLeftY, width, height, color);
+    }
+
+    /**
+     * Constructs the view of a slot the store already holds (see BlockStore.get).
+     *
+     * @param store the store holding the block
+     * @param index the index of the block's slot
+     */
+    Block(BlockStore store, int index) {
+        this.store = store;
+        this.index = index;
+    }
+
+    /**
+     * Gets the collision rectangle. The store keeps no rectangle per block, so every call
+     * returns a new rectangle; the balls' collision queries do not need it.
      *
      * @return the collision rectangle
      */
     public Rectangle getCollisionRectangle() {
-        return this.r;
+        return new Rectangle(new Point(store.getX(index), store.getY(index)), store.getWidth(index),
+                store.getHeight(index));
     }
 
     /**
@@ -48,28 +74,50 @@ public class Block implements Collidable, Sprite, HitNotifier {
      * @param hitter          the ball that hits the block
      * @param collisionPoint  the point at which the collision occurs
      * @param currentVelocity the current velocity which will be changed upon collision
-     * @return new velocity after the hit
+     * @return currentVelocity, updated to the velocity after the hit
      */
     public Velocity hit(Ball hitter, Point collisionPoint, Velocity currentVelocity) {
         double dx = currentVelocity.getX();
         double dy = currentVelocity.getY();
-        Line line = new Line(collisionPoint, collisionPoint);
+        double left = store.getX(index);
+        double top = store.getY(index);
 
-        if (line.isIntersecting(r.getTop()) || line.isIntersecting(r.getBottom())) {
+        // a point lies on an edge's line when its coordinate matches the edge's, within the threshold
+        if (Point.compareNumbers(collisionPoint.getY(), top)
+                || Point.compareNumbers(collisionPoint.getY(), top - store.getHeight(index))) {
             dy = -dy;
         }
-        if (line.isIntersecting(r.getRight()) || line.isIntersecting(r.getLeft())) {
+        if (Point.compareNumbers(collisionPoint.getX(), left + store.getWidth(index))
+                || Point.compareNumbers(collisionPoint.getX(), left)) {
             dx = -dx;
         }
 
-        if (!ballColorMatch(hitter)) {
-            this.notifyHit(hitter);
+        HitEventBuffer hitEvents = store.getHitEvents();
+        if (!ballColorMatch(hitter) && (store.getListeners(index).length > 0 || !getColor().equals(Color.GRAY))) {
+            if (hitEvents != null) {
+                hitEvents.add(this, hitter, collisionPoint.getX(), collisionPoint.getY());
+            } else {
+                deliverHit(hitter);
+            }
         }
-        if (!ballColorMatch(hitter) && color != Color.GRAY) {
+
+        currentVelocity.set(dx, dy);
+        return currentVelocity;
+    }
+
+    /**
+     * Delivers a hit by a ball of another color: the hit listeners are notified, and then the ball
+     * takes the block's color, unless the block is gray.
+     * In a game the hits are delivered together after the balls have moved (see HitEventBuffer).
+     *
+     * @param hitter the ball that hit the block
+     */
+    public void deliverHit(Ball hitter) {
+        this.notifyHit(hitter);
+        Color color = getColor();
+        if (!color.equals(Color.GRAY)) {
             hitter.setColor(color);
         }
-
-        return new Velocity(dx, dy);
     }
 
     /**
@@ -78,7 +126,7 @@ public class Block implements Collidable, Sprite, HitNotifier {
      * @param d the surface to draw on
      */
     public void drawOn(DrawSurface d) {
-        this.r.drawOn(d, this.color);
+        store.drawOn(d, index);
     }
 
     /**
@@ -88,13 +136,18 @@ public class Block implements Collidable, Sprite, HitNotifier {
     }
 
     /**
-     * Adds the block to the game, both as a sprite and a collidable object.
+     * Adds the block to the game, both as a static sprite and a collidable object.
      *
      * @param g the game to which the block will be added
      */
     public void addToGame(Game g) {
-        g.addSprite(this);
-        g.addCollidable(this);
+        double minX = store.getX(index);
+        double maxY = store.getY(index);
+        double maxX = minX + store.getWidth(index);
+        double minY = maxY - store.getHeight(index);
+        store.setSpriteHandle(index, g.addStaticSprite(this, minX, minY, maxX, maxY));
+        g.addCollidable(this, minX, minY, maxX, maxY);
+        store.setHitEvents(g.getHitEvents());
     }
 
     /**
@@ -103,8 +156,8 @@ public class Block implements Collidable, Sprite, HitNotifier {
      * @param ball the ball to check color match
      * @return true if the colors match, false otherwise
      */
-    public Boolean ballColorMatch(Ball ball) {
-        return this.color.equals(ball.getColor());
+    public boolean ballColorMatch(Ball ball) {
+        return getColor().equals(ball.getColor());
     }
 
     /**
@@ -113,17 +166,59 @@ public class Block implements Collidable, Sprite, HitNotifier {
      * @param game the game from which the block will be removed
      */
     public void removeFromGame(Game game) {
-        game.removeSprite(this);
+        game.removeStaticBlock(store, index);
         game.removeCollidable(this);
     }
 
     /**
      * Adds a hit listener to the block.
+     * The block then shares the store's array of its new listeners with the blocks that already
+     * had the same listeners (see BlockStore).
      *
      * @param hl the hit listener to add
      */
     public void addHitListener(HitListener hl) {
-        this.hitListeners.add(hl);
+        HitListener[] current = store.getListeners(index);
+        HitListener[] listeners = Arrays.copyOf(current, current.length + 1);
+        listeners[listeners.length - 1] = hl;
+        setHitListeners(listeners);
+    }
+
+    /**
+     * Replaces all of the block's hit listeners. The array may be shared by many blocks, since
+     * the listener arrays are never modified, only replaced.
+     *
+     * @param listeners the hit listeners, which must not be modified afterwards
+     */
+    void setHitListeners(HitListener[] listeners) {
+        store.setListeners(index, listeners);
+    }
+
+    /**
+     * Returns the block's hit listeners. The array must not be modified.
+     *
+     * @return the hit listeners
+     */
+    HitListener[] getHitListeners() {
+        return store.getListeners(index);
+    }
+
+    /**
+     * Returns the store holding the block.
+     *
+     * @return the block's store
+     */
+    BlockStore getStore() {
+        return this.store;
+    }
+
+    /**
+     * Returns the index of the block in its store.
+     *
+     * @return the index of the block
+     */
+    int getIndex() {
+        return this.index;
     }
 
     /**
@@ -132,16 +227,23 @@ public class Block implements Collidable, Sprite, HitNotifier {
      * @param hl the hit listener to remove
      */
     public void removeHitListener(HitListener hl) {
-        this.hitListeners.remove(hl);
+        HitListener[] current = store.getListeners(index);
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].equals(hl)) {
+                HitListener[] listeners = new HitListener[current.length - 1];
+                System.arraycopy(current, 0, listeners, 0, i);
+                System.arraycopy(current, i + 1, listeners, i, listeners.length - i);
+                setHitListeners(listeners);
+                return;
+            }
+        }
     }
 
     /**
      * Removes all hit listeners from the block.
      */
     public void removeHitListener() {
-        for (int i = 0; i < hitListeners.toArray().length; i++) {
-            hitListeners.remove(i);
-        }
+        setHitListeners(new HitListener[0]);
     }
 
     /**
@@ -150,9 +252,9 @@ public class Block implements Collidable, Sprite, HitNotifier {
      * @param hitter the ball that hits the block
      */
     private void notifyHit(Ball hitter) {
-        List<HitListener> listeners = new ArrayList<>(this.hitListeners);
-        for (int i = 0; i < listeners.size(); i++) {
-            listeners.get(i).hitEvent(this, hitter);
+        HitListener[] listeners = store.getListeners(index);
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].hitEvent(this, hitter);
         }
     }
 
@@ -162,6 +264,6 @@ public class Block implements Collidable, Sprite, HitNotifier {
      * @return the color of the block
      */
     public Color getColor() {
-        return this.color;
+        return store.getColor(index);
     }
 }
@@ -22,15 +22,14 @@ public class BlockRemover implements HitListener {
      * Blocks that are hit should be removed from the game.
      * This method removes the block from the game and updates the remaining blocks count.
      * Also removes this listener from the block that is being removed from the game.
+     * Blocks only report hits by balls of another color, so every reported hit removes the block.
      *
      * @param beingHit the block that is being hit
      * @param hitter   the ball that hits the block
      */
     public void hitEvent(Block beingHit, Ball hitter) {
-        if (!beingHit.ballColorMatch(hitter)) {
-            beingHit.removeHitListener(this);
-            beingHit.removeFromGame(this.game);
-            this.remainingBlocks.decrease(1);
-        }
+        beingHit.removeHitListener(this);
+        beingHit.removeFromGame(this.game);
+        this.remainingBlocks.decrease(1);
     }
 }
@@ -0,0 +1,442 @@
+import biuoop.DrawSurface;
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact storage for many blocks, such as the bricks of a huge level. A block is a slot of the
+ * store: its rectangle is kept in parallel arrays of floats, its color as an index into a
+ * palette of the distinct colors, and its hit listeners as an index into a table of the
+ * distinct listener arrays. Once the palette is full, a block of a new color keeps its color in
+ * an array of its own. Bricks mostly share a handful of colors and the very same listeners,
+ * so a block costs a few dozen bytes instead of a Block, a Rectangle and a Point object each.
+ * Floats hold whole pixels and the coordinates of level files exactly; other coordinates are
+ * rounded to the nearest float.
+ * <p>
+ * Each slot is served to the rest of the game through a Block that holds nothing but the store
+ * and the slot's index (see add), so blocks still take part in the game as collidables, sprites
+ * and hit notifiers. The blocks of a level file are added in bulk without their views (see
+ * addLevel); a view is only created the first time the block is asked for (see get).
+ * <p>
+ * Listener arrays are interned: changing a block's listeners looks up the array of its new
+ * listeners in the table, and only adds it if no block had those listeners before. Once the table
+ * is full, a block whose new listeners are not in it keeps them in an array of its own instead.
+ * The listener arrays are never modified, so notifying a block's listeners needs no copy even when
+ * a listener removes itself during the notification.
+ */
+public class BlockStore {
+
+    private static final int INITIAL_CAPACITY = 16;
+    // palette and listener indexes are kept as unsigned shorts
+    private static final int MAX_SHARED = 1 << 16;
+    // the indexes of a block whose color or listeners are kept for it alone, not in the palette or the table
+    private static final int OWN_COLOR = MAX_SHARED - 1;
+    private static final int OWN_LISTENERS = MAX_SHARED - 1;
+    private static final HitListener[] NO_LISTENERS = new HitListener[0];
+
+    private float[] x;
+    private float[] y;
+    private float[] width;
+    private float[] height;
+    private short[] color;
+    private Color[] ownColors;
+    private short[] group;
+    private HitListener[][] ownListeners;
+    private long[] spriteHandle;
+    private Block[] views;
+    private int size;
+    private Color[] palette = new Color[INITIAL_CAPACITY];
+    private int colors;
+    private Map<Color, Integer> colorIndexes = new HashMap<>();
+    private HitListener[][] groups = new HitListener[INITIAL_CAPACITY][];
+    private int groupCount;
+    private Map<List<HitListener>, Integer> groupIndexes = new HashMap<>();
+    private HitEventBuffer hitEvents;
+
+    /**
+     * Constructs an empty store.
+     */
+    public BlockStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty store with room for the given number of blocks.
+     *
+     * @param capacity the number of blocks to make room for
+     */
+    public BlockStore(int capacity) {
+        this.x = new float[capacity];
+        this.y = new float[capacity];
+        this.width = new float[capacity];
+        this.height = new float[capacity];
+        this.color = new short[capacity];
+        this.group = new short[capacity];
+        this.spriteHandle = new long[capacity];
+        this.views = new Block[capacity];
+        internListeners(NO_LISTENERS);
+    }
+
+    /**
+     * Adds a block with no hit listeners to the store.
+     *
+     * @param upperLeftX the x-coordinate of the block's upper-left corner
+     * @param upperLeftY the y-coordinate of the block's upper-left corner
+     * @param w          the width of the block
+     * @param h          the height of the block
+     * @param c          the color of the block
+     * @return the block
+     */
+    public Block add(double upperLeftX, double upperLeftY, double w, double h, Color c) {
+        return new Block(this, upperLeftX, upperLeftY, w, h, c);
+    }
+
+    /**
+     * Adds a block with the given rectangle and no hit listeners to the store.
+     *
+     * @param r the rectangle of the block, which is copied
+     * @param c the color of the block
+     * @return the block
+     */
+    public Block add(Rectangle r, Color c) {
+        return add(r.getUpperLeft().getX(), r.getUpperLeft().getY(), r.getWidth(), r.getHeight(), c);
+    }
+
+    /**
+     * Returns the number of blocks in the store, including the ones that were removed from a game.
+     *
+     * @return the number of blocks
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a block of the store, creating its view if the block was added without one.
+     * Any thread may ask for a block: its view is created once, under the store's lock.
+     *
+     * @param i the index of the block, in the order the blocks were added
+     * @return the block
+     */
+    public Block get(int i) {
+        // a view has only final fields, so one seen here without the lock is fully constructed
+        Block view = views[i];
+        return view != null ? view : createView(i);
+    }
+
+    /**
+     * Checks whether the view of a block was created, that is whether the block may be known to
+     * the rest of the game as a Block.
+     *
+     * @param i the index of the block
+     * @return true if the block has a view, false otherwise
+     */
+    boolean hasView(int i) {
+        return views[i] != null;
+    }
+
+    /**
+     * Adds the blocks of a level file, copying the records straight from the file's mapped
+     * buffer into the store's arrays, without creating the blocks' views. The level's palette is
+     * looked up in the store's once, and each block gets the listeners of the table picked by its
+     * flags.
+     *
+     * @param level     the level
+     * @param listeners the index of the listeners of a block (as returned by internListeners),
+     *                  for each combination of its flags BREAKABLE and DEATH_REGION
+     * @return the index of the level's first block in the store
+     */
+    int addLevel(LevelFile level, int[] listeners) {
+        int first = size;
+        int count = level.size();
+        ensureCapacity(first + count);
+        int[] colorIndexes = new int[level.getColorCount()];
+        for (int c = 0; c < colorIndexes.length; c++) {
+            colorIndexes[c] = internColor(level.getPaletteColor(c));
+        }
+        int mask = LevelFile.BREAKABLE | LevelFile.DEATH_REGION;
+        for (int i = 0; i < count; i++) {
+            int slot = first + i;
+            x[slot] = (float) level.getX(i);
+            y[slot] = (float) level.getY(i);
+            width[slot] = (float) level.getWidth(i);
+            height[slot] = (float) level.getHeight(i);
+            int colorIndex = colorIndexes[level.getColorIndex(i)];
+            if (colorIndex < 0) {
+                if (ownColors == null) {
+                    ownColors = new Color[x.length];
+                }
+                ownColors[slot] = level.getColor(i);
+                colorIndex = OWN_COLOR;
+            }
+            color[slot] = (short) colorIndex;
+            group[slot] = (short) listeners[level.getFlags(i) & mask];
+            spriteHandle[slot] = HandleList.NONE;
+        }
+        size += count;
+        return first;
+    }
+
+    /**
+     * Makes room for the given number of blocks in all, so adding them grows nothing.
+     *
+     * @param capacity the number of blocks
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= x.length) {
+            return;
+        }
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        width = Arrays.copyOf(width, capacity);
+        height = Arrays.copyOf(height, capacity);
+        color = Arrays.copyOf(color, capacity);
+        if (ownColors != null) {
+            ownColors = Arrays.copyOf(ownColors, capacity);
+        }
+        group = Arrays.copyOf(group, capacity);
+        if (ownListeners != null) {
+            ownListeners = Arrays.copyOf(ownListeners, capacity);
+        }
+        spriteHandle = Arrays.copyOf(spriteHandle, capacity);
+        views = Arrays.copyOf(views, capacity);
+    }
+
+    /**
+     * Returns the index the given listeners have in the table of listener arrays, adding them to
+     * the table if no block had them before and the table has room for them.
+     *
+     * @param listeners the listeners, which must not be modified afterwards if they are added
+     * @return the index of the listeners, or -1 if they are not in the table and the table is full
+     */
+    int internListeners(HitListener[] listeners) {
+        Integer known = groupIndexes.get(Arrays.asList(listeners));
+        if (known != null) {
+            return known;
+        }
+        if (groupCount == OWN_LISTENERS) {
+            return -1;
+        }
+        if (groupCount == groups.length) {
+            groups = Arrays.copyOf(groups, 2 * groupCount);
+        }
+        groups[groupCount] = listeners;
+        groupIndexes.put(Arrays.asList(listeners), groupCount);
+        return groupCount++;
+    }
+
+    /**
+     * Replaces a block's listeners with an array of the table of listener arrays.
+     *
+     * @param i        the index of the block
+     * @param listener the index of the listeners, as returned by internListeners (not -1)
+     */
+    void setListenerGroup(int i, int listener) {
+        group[i] = (short) listener;
+        if (ownListeners != null) {
+            ownListeners[i] = null;
+        }
+    }
+
+    /**
+     * Replaces a block's listeners, sharing the array of the table that has the same listeners,
+     * or keeping the array for the block alone if the table is full.
+     *
+     * @param i         the index of the block
+     * @param listeners the listeners, which must not be modified afterwards
+     */
+    void setListeners(int i, HitListener[] listeners) {
+        int listener = internListeners(listeners);
+        if (listener >= 0) {
+            setListenerGroup(i, listener);
+            return;
+        }
+        if (ownListeners == null) {
+            ownListeners = new HitListener[x.length][];
+        }
+        ownListeners[i] = listeners;
+        group[i] = (short) OWN_LISTENERS;
+    }
+
+    /**
+     * Returns a block's hit listeners. The array may be shared and must not be modified.
+     *
+     * @param i the index of the block
+     * @return the hit listeners
+     */
+    HitListener[] getListeners(int i) {
+        int listener = group[i] & 0xFFFF;
+        return listener == OWN_LISTENERS ? ownListeners[i] : groups[listener];
+    }
+
+    /**
+     * Returns the handle a block was given when it was added to a game's static sprites.
+     *
+     * @param i the index of the block
+     * @return the block's sprite handle, or HandleList.NONE if it was never added to a game
+     */
+    long getSpriteHandle(int i) {
+        return spriteHandle[i];
+    }
+
+    /**
+     * Records the handle a block was given when it was added to a game's static sprites, so it
+     * can be removed from them without searching.
+     *
+     * @param i      the index of the block
+     * @param handle the block's sprite handle
+     */
+    void setSpriteHandle(int i, long handle) {
+        spriteHandle[i] = handle;
+    }
+
+    /**
+     * Sets the buffer the blocks of the store record their hits in.
+     *
+     * @param buffer the hit event buffer, or null to deliver hits at once
+     */
+    void setHitEvents(HitEventBuffer buffer) {
+        this.hitEvents = buffer;
+    }
+
+    /**
+     * Returns the buffer the blocks of the store record their hits in.
+     *
+     * @return the hit event buffer, or null if hits are delivered at once
+     */
+    HitEventBuffer getHitEvents() {
+        return hitEvents;
+    }
+
+    /**
+     * Returns the x-coordinate of a block's upper-left corner.
+     *
+     * @param i the index of the block
+     * @return the x-coordinate
+     */
+    double getX(int i) {
+        return x[i];
+    }
+
+    /**
+     * Returns the y-coordinate of a block's upper-left corner, which is its largest y-coordinate.
+     *
+     * @param i the index of the block
+     * @return the y-coordinate
+     */
+    double getY(int i) {
+        return y[i];
+    }
+
+    /**
+     * Returns the width of a block.
+     *
+     * @param i the index of the block
+     * @return the width
+     */
+    double getWidth(int i) {
+        return width[i];
+    }
+
+    /**
+     * Returns the height of a block.
+     *
+     * @param i the index of the block
+     * @return the height
+     */
+    double getHeight(int i) {
+        return height[i];
+    }
+
+    /**
+     * Returns the color of a block.
+     *
+     * @param i the index of the block
+     * @return the color
+     */
+    Color getColor(int i) {
+        int index = color[i] & 0xFFFF;
+        return index == OWN_COLOR ? ownColors[i] : palette[index];
+    }
+
+    /**
+     * Draws a block, without asking for its view.
+     *
+     * @param d the surface to draw on
+     * @param i the index of the block
+     */
+    void drawOn(DrawSurface d, int i) {
+        Rectangle.drawOn(d, x[i], y[i], width[i], height[i], getColor(i));
+    }
+
+    /**
+     * Adds a slot for a block, with no hit listeners. Called by the block's constructor.
+     *
+     * @param view       the block serving the slot
+     * @param upperLeftX the x-coordinate of the block's upper-left corner
+     * @param upperLeftY the y-coordinate of the block's upper-left corner
+     * @param w          the width of the block
+     * @param h          the height of the block
+     * @param c          the color of the block
+     * @return the index of the slot
+     */
+    int addSlot(Block view, double upperLeftX, double upperLeftY, double w, double h, Color c) {
+        int colorIndex = internColor(c);
+        if (size == x.length) {
+            ensureCapacity(Math.max(INITIAL_CAPACITY, 2 * size));
+        }
+        if (colorIndex < 0) {
+            if (ownColors == null) {
+                ownColors = new Color[x.length];
+            }
+            ownColors[size] = c;
+            colorIndex = OWN_COLOR;
+        }
+        x[size] = (float) upperLeftX;
+        y[size] = (float) upperLeftY;
+        width[size] = (float) w;
+        height[size] = (float) h;
+        color[size] = (short) colorIndex;
+        spriteHandle[size] = HandleList.NONE;
+        views[size] = view;
+        return size++;
+    }
+
+    /**
+     * Creates the view of a block that was added without one, unless another thread just did.
+     *
+     * @param i the index of the block
+     * @return the block's view
+     */
+    private synchronized Block createView(int i) {
+        if (views[i] == null) {
+            views[i] = new Block(this, i);
+        }
+        return views[i];
+    }
+
+    /**
+     * Returns the index of a color in the palette, adding it to the palette if no block had it
+     * before and the palette has room for it. Equal colors share one index.
+     *
+     * @param c the color, or null
+     * @return the index of the color, or -1 if it is not in the palette and the palette is full
+     */
+    private int internColor(Color c) {
+        Integer known = colorIndexes.get(c);
+        if (known != null) {
+            return known;
+        }
+        if (colors == OWN_COLOR) {
+            return -1;
+        }
+        if (colors == palette.length) {
+            palette = Arrays.copyOf(palette, 2 * colors);
+        }
+        palette[colors] = c;
+        colorIndexes.put(c, colors);
+        return colors++;
+    }
+}
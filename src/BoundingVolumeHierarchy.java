@@ -0,0 +1,670 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A bounding-volume hierarchy of axis-aligned boxes, used as a broadphase for the static collidables.
+ * Each leaf holds one collidable and its box; each internal node holds the box around its two children.
+ * Unlike a uniform grid it adapts to geometry of very different sizes, like long walls next to small bricks.
+ * <p>
+ * Leaves can be inserted and removed at any time: an insertion walks down to the sibling whose
+ * box grows the least, and a removal replaces the leaf's parent with its sibling; both then only
+ * refit the boxes on the way back to the root. Since many insertions in a row may leave the tree
+ * unbalanced, build() rebuilds it from scratch once a level has been set up.
+ * <p>
+ * Queries only read the tree and keep their state in a Traversal, so threads that each use their
+ * own Traversal can query the same tree at the same time.
+ */
+public class BoundingVolumeHierarchy {
+
+    private static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private double[] minX;
+    private double[] minY;
+    private double[] maxX;
+    private double[] maxY;
+    private int[] child1;
+    private int[] child2;
+    private int[] parent;
+    private Collidable[] item;
+    private int[] rank;
+    private int capacity;
+    private int used;
+    private int free;
+    private int root;
+    private IdentityIntMap<Collidable> leaves;
+
+    /**
+     * Constructs an empty hierarchy.
+     */
+    public BoundingVolumeHierarchy() {
+        this.capacity = INITIAL_CAPACITY;
+        this.minX = new double[capacity];
+        this.minY = new double[capacity];
+        this.maxX = new double[capacity];
+        this.maxY = new double[capacity];
+        this.child1 = new int[capacity];
+        this.child2 = new int[capacity];
+        this.parent = new int[capacity];
+        this.item = new Collidable[capacity];
+        this.rank = new int[capacity];
+        this.free = NONE;
+        this.root = NONE;
+        this.leaves = new IdentityIntMap<>();
+    }
+
+    /**
+     * Adds a collidable with the given box to the hierarchy.
+     *
+     * @param c     the collidable to add
+     * @param order the collidable's rank for breaking ties between hits at the same time, lower wins
+     * @param x0    the smallest x-coordinate of the box
+     * @param y0    the smallest y-coordinate of the box
+     * @param x1    the largest x-coordinate of the box
+     * @param y1    the largest y-coordinate of the box
+     */
+    public void insert(Collidable c, int order, double x0, double y0, double x1, double y1) {
+        int leaf = allocate();
+        setBox(leaf, x0, y0, x1, y1);
+        item[leaf] = c;
+        rank[leaf] = order;
+        leaves.put(c, leaf);
+        insertLeaf(leaf);
+    }
+
+    /**
+     * Adds a collidable with the given box like insert, but leaves it out of the tree until the
+     * next build, so queries do not see it before then. Adding many collidables this way and
+     * building once is much faster than inserting them one by one.
+     *
+     * @param c     the collidable to add
+     * @param order the collidable's rank for breaking ties between hits at the same time, lower wins
+     * @param x0    the smallest x-coordinate of the box
+     * @param y0    the smallest y-coordinate of the box
+     * @param x1    the largest x-coordinate of the box
+     * @param y1    the largest y-coordinate of the box
+     */
+    public void add(Collidable c, int order, double x0, double y0, double x1, double y1) {
+        int leaf = allocate();
+        setBox(leaf, x0, y0, x1, y1);
+        item[leaf] = c;
+        rank[leaf] = order;
+        leaves.put(c, leaf);
+    }
+
+    /**
+     * Removes a collidable from the hierarchy. Does nothing if it is not in the hierarchy.
+     *
+     * @param c the collidable to remove
+     */
+    public void remove(Collidable c) {
+        int leaf = leaves.remove(c);
+        if (leaf < 0) {
+            return;
+        }
+        // a leaf added since the last build is not linked into the tree yet
+        if (leaf == root || parent[leaf] != NONE) {
+            removeLeaf(leaf);
+        }
+        release(leaf);
+    }
+
+    /**
+     * Copies the box a collidable was added with.
+     *
+     * @param c   the collidable
+     * @param box the array to copy the box to: the smallest x and y, then the largest x and y
+     * @return true if the collidable is in the hierarchy, false otherwise
+     */
+    public boolean getBox(Collidable c, double[] box) {
+        int leaf = leaves.get(c);
+        if (leaf < 0) {
+            return false;
+        }
+        box[0] = minX[leaf];
+        box[1] = minY[leaf];
+        box[2] = maxX[leaf];
+        box[3] = maxY[leaf];
+        return true;
+    }
+
+    /**
+     * Makes room for the given number of collidables in all, so adding them grows nothing.
+     *
+     * @param collidables the number of collidables
+     */
+    public void ensureCapacity(int collidables) {
+        // a tree over n leaves has n - 1 internal nodes
+        int nodes = 2 * collidables;
+        if (nodes > capacity) {
+            resize(nodes);
+        }
+        leaves.ensureCapacity(collidables);
+    }
+
+    /**
+     * Returns the number of collidables in the hierarchy.
+     *
+     * @return the number of collidables
+     */
+    public int size() {
+        return leaves.size();
+    }
+
+    /**
+     * Rebuilds the tree from scratch over the current leaves, splitting every node at the median
+     * of its leaves' centers along its longer side. Gives a balanced tree whatever the order the
+     * collidables were inserted in.
+     */
+    public void build() {
+        int[] ids = new int[leaves.size()];
+        int n = 0;
+        for (int i = 0; i < used; i++) {
+            if (item[i] != null) {
+                ids[n++] = i;
+            }
+        }
+        // keep the leaves, drop every internal node
+        for (int i = 0; i < used; i++) {
+            if (item[i] == null && child1[i] != NONE) {
+                release(i);
+            }
+        }
+        // the centers are copied next to the ids, so the splits scan memory in order
+        double[] cx = new double[n];
+        double[] cy = new double[n];
+        for (int i = 0; i < n; i++) {
+            cx[i] = (minX[ids[i]] + maxX[ids[i]]) / 2;
+            cy[i] = (minY[ids[i]] + maxY[ids[i]]) / 2;
+        }
+        root = n == 0 ? NONE : build(ids, cx, cy, 0, n);
+        if (root != NONE) {
+            parent[root] = NONE;
+        }
+    }
+
+    /**
+     * Collects every collidable whose box overlaps the given region.
+     *
+     * @param x0        the smallest x-coordinate of the region
+     * @param y0        the smallest y-coordinate of the region
+     * @param x1        the largest x-coordinate of the region
+     * @param y1        the largest y-coordinate of the region
+     * @param out       the list the collidables are appended to
+     * @param traversal the traversal state of the calling thread
+     */
+    public void query(double x0, double y0, double x1, double y1, List<Collidable> out, Traversal traversal) {
+        if (root == NONE) {
+            return;
+        }
+        int sp = traversal.push(0, root, 0);
+        while (sp > 0) {
+            int node = traversal.nodes[--sp];
+            if (minX[node] > x1 || maxX[node] < x0 || minY[node] > y1 || maxY[node] < y0) {
+                continue;
+            }
+            if (item[node] != null) {
+                out.add(item[node]);
+            } else {
+                sp = traversal.push(sp, child1[node], 0);
+                sp = traversal.push(sp, child2[node], 0);
+            }
+        }
+    }
+
+    /**
+     * Packs the box, rank and collidable of every leaf whose box overlaps the given region into a
+     * batch, for testing them all at once (see SlabKernel).
+     *
+     * @param x0        the smallest x-coordinate of the region
+     * @param y0        the smallest y-coordinate of the region
+     * @param x1        the largest x-coordinate of the region
+     * @param y1        the largest y-coordinate of the region
+     * @param out       the batch the boxes are appended to
+     * @param traversal the traversal state of the calling thread
+     */
+    public void query(double x0, double y0, double x1, double y1, BoxBatch out, Traversal traversal) {
+        if (root == NONE) {
+            return;
+        }
+        int sp = traversal.push(0, root, 0);
+        while (sp > 0) {
+            int node = traversal.nodes[--sp];
+            if (minX[node] > x1 || maxX[node] < x0 || minY[node] > y1 || maxY[node] < y0) {
+                continue;
+            }
+            if (item[node] != null) {
+                out.add(item[node], rank[node], minX[node], minY[node], maxX[node], maxY[node]);
+            } else {
+                sp = traversal.push(sp, child1[node], 0);
+                sp = traversal.push(sp, child2[node], 0);
+            }
+        }
+    }
+
+    /**
+     * Sweeps a circle from (x, y) by (dx, dy) through the tree, updating the result if a collidable
+     * is hit before it (or at the same time with a lower rank).
+     * Children are visited nearest first and a node is skipped as soon as its box is entered after
+     * the best hit found so far, so the search ends shortly after the first confirmed hit.
+     *
+     * @param x          the x-coordinate of the circle's center
+     * @param y          the y-coordinate of the circle's center
+     * @param dx         the x-component of the motion
+     * @param dy         the y-component of the motion
+     * @param r          the radius of the circle
+     * @param margin     extra distance added around every box, to absorb rounding errors
+     * @param result     the best hit so far, updated in place
+     * @param resultRank the rank of the collidable in the result, ignored if the result holds no hit
+     * @param traversal  the traversal state of the calling thread
+     * @return the rank of the collidable in the result after the sweep
+     */
+    public int sweep(double x, double y, double dx, double dy, double r, double margin, SweepHit result,
+                     int resultRank, Traversal traversal) {
+        if (root == NONE) {
+            return resultRank;
+        }
+        double reach = r + margin;
+        int bestRank = resultRank;
+        SweepHit test = traversal.hit;
+        // a zero component stands for "no motion along that axis"
+        double invDx = dx == 0 ? 0 : 1 / dx;
+        double invDy = dy == 0 ? 0 : 1 / dy;
+        int sp = pushIfReachable(traversal, 0, root, entryTime(root, x, y, invDx, invDy, reach));
+        while (sp > 0) {
+            sp--;
+            int node = traversal.nodes[sp];
+            double entry = traversal.times[sp];
+            if (entry > result.time()) {
+                continue;
+            }
+            if (item[node] != null) {
+                if (SweptCircle.sweep(x, y, dx, dy, r, minX[node], minY[node], maxX[node], maxY[node], test)
+                        && (test.time() < result.time()
+                        || (test.time() == result.time() && rank[node] < bestRank))) {
+                    result.set(test);
+                    result.setCollidable(item[node]);
+                    bestRank = rank[node];
+                }
+                continue;
+            }
+            int a = child1[node];
+            int b = child2[node];
+            double ta = entryTime(a, x, y, invDx, invDy, reach);
+            double tb = entryTime(b, x, y, invDx, invDy, reach);
+            // push the farther child first so the nearer one is popped first
+            if (ta <= tb) {
+                sp = pushIfReachable(traversal, sp, b, tb);
+                sp = pushIfReachable(traversal, sp, a, ta);
+            } else {
+                sp = pushIfReachable(traversal, sp, a, ta);
+                sp = pushIfReachable(traversal, sp, b, tb);
+            }
+        }
+        return bestRank;
+    }
+
+    /**
+     * Pushes a node on the traversal stack if the swept circle reaches its box.
+     *
+     * @param traversal the traversal state
+     * @param sp        the current stack size
+     * @param node      the node
+     * @param entry     the time the circle enters the node's box
+     * @return the new stack size
+     */
+    private static int pushIfReachable(Traversal traversal, int sp, int node, double entry) {
+        return entry == Double.POSITIVE_INFINITY ? sp : traversal.push(sp, node, entry);
+    }
+
+    /**
+     * Computes when a point moving from (x, y) by (dx, dy) enters a node's box grown by reach on every side.
+     *
+     * @param node  the node
+     * @param x     the x-coordinate of the start point
+     * @param y     the y-coordinate of the start point
+     * @param invDx 1 divided by the x-component of the motion, or 0 if that component is 0
+     * @param invDy 1 divided by the y-component of the motion, or 0 if that component is 0
+     * @param reach the distance the box is grown by
+     * @return the entry time between 0 and 1 (0 if the point starts inside), or positive infinity if
+     *         the point doesn't reach the box during the motion
+     */
+    private double entryTime(int node, double x, double y, double invDx, double invDy, double reach) {
+        double x0 = minX[node] - reach;
+        double x1 = maxX[node] + reach;
+        double y0 = minY[node] - reach;
+        double y1 = maxY[node] + reach;
+        double enter = 0;
+        double exit = 1;
+        if (invDx == 0) {
+            if (x < x0 || x > x1) {
+                return Double.POSITIVE_INFINITY;
+            }
+        } else {
+            double t0 = (x0 - x) * invDx;
+            double t1 = (x1 - x) * invDx;
+            enter = Math.max(enter, Math.min(t0, t1));
+            exit = Math.min(exit, Math.max(t0, t1));
+        }
+        if (invDy == 0) {
+            if (y < y0 || y > y1) {
+                return Double.POSITIVE_INFINITY;
+            }
+        } else {
+            double t0 = (y0 - y) * invDy;
+            double t1 = (y1 - y) * invDy;
+            enter = Math.max(enter, Math.min(t0, t1));
+            exit = Math.min(exit, Math.max(t0, t1));
+        }
+        return enter <= exit ? enter : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Builds a subtree over a range of leaves.
+     *
+     * @param ids  the leaves, reordered in place
+     * @param cx   the x-coordinates of the leaves' centers, reordered along with the leaves
+     * @param cy   the y-coordinates of the leaves' centers, reordered along with the leaves
+     * @param from the first index of the range
+     * @param to   the index after the last one of the range
+     * @return the root of the subtree
+     */
+    private int build(int[] ids, double[] cx, double[] cy, int from, int to) {
+        if (to - from == 1) {
+            return ids[from];
+        }
+        double cx0 = Double.POSITIVE_INFINITY;
+        double cy0 = Double.POSITIVE_INFINITY;
+        double cx1 = Double.NEGATIVE_INFINITY;
+        double cy1 = Double.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            cx0 = Math.min(cx0, cx[i]);
+            cy0 = Math.min(cy0, cy[i]);
+            cx1 = Math.max(cx1, cx[i]);
+            cy1 = Math.max(cy1, cy[i]);
+        }
+        boolean alongX = cx1 - cx0 >= cy1 - cy0;
+        int middle = (from + to) >>> 1;
+        select(ids, cx, cy, from, to - 1, middle, alongX ? cx : cy);
+
+        int node = allocate();
+        int a = build(ids, cx, cy, from, middle);
+        int b = build(ids, cx, cy, middle, to);
+        child1[node] = a;
+        child2[node] = b;
+        parent[a] = node;
+        parent[b] = node;
+        item[node] = null;
+        fit(node);
+        return node;
+    }
+
+    /**
+     * Partially sorts a range of leaves by their centers so the k-th one is in place, the ones
+     * before it are not greater and the ones after it are not smaller.
+     *
+     * @param ids  the leaves
+     * @param cx   the x-coordinates of the leaves' centers, reordered along with the leaves
+     * @param cy   the y-coordinates of the leaves' centers, reordered along with the leaves
+     * @param lo   the first index of the range
+     * @param hi   the last index of the range
+     * @param k    the index to put in place
+     * @param keys the coordinates to compare, either cx or cy
+     */
+    private static void select(int[] ids, double[] cx, double[] cy, int lo, int hi, int k, double[] keys) {
+        while (lo < hi) {
+            double pivot = keys[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(ids, cx, cy, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Swaps two leaves and their centers.
+     *
+     * @param ids the leaves
+     * @param cx  the x-coordinates of the leaves' centers
+     * @param cy  the y-coordinates of the leaves' centers
+     * @param i   the index of the first leaf
+     * @param j   the index of the second leaf
+     */
+    private static void swap(int[] ids, double[] cx, double[] cy, int i, int j) {
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        double x = cx[i];
+        cx[i] = cx[j];
+        cx[j] = x;
+        double y = cy[i];
+        cy[i] = cy[j];
+        cy[j] = y;
+    }
+
+    /**
+     * Links a new leaf into the tree next to the node whose box grows the least by including it.
+     *
+     * @param leaf the leaf
+     */
+    private void insertLeaf(int leaf) {
+        if (root == NONE) {
+            root = leaf;
+            parent[leaf] = NONE;
+            return;
+        }
+        int sibling = root;
+        while (item[sibling] == null) {
+            int a = child1[sibling];
+            int b = child2[sibling];
+            sibling = growth(a, leaf) <= growth(b, leaf) ? a : b;
+        }
+
+        int oldParent = parent[sibling];
+        int node = allocate();
+        item[node] = null;
+        parent[node] = oldParent;
+        child1[node] = sibling;
+        child2[node] = leaf;
+        parent[sibling] = node;
+        parent[leaf] = node;
+        if (oldParent == NONE) {
+            root = node;
+        } else if (child1[oldParent] == sibling) {
+            child1[oldParent] = node;
+        } else {
+            child2[oldParent] = node;
+        }
+        refit(node);
+    }
+
+    /**
+     * Unlinks a leaf from the tree, putting its sibling in place of their parent.
+     *
+     * @param leaf the leaf
+     */
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NONE;
+            return;
+        }
+        int node = parent[leaf];
+        int sibling = child1[node] == leaf ? child2[node] : child1[node];
+        int grandParent = parent[node];
+        parent[sibling] = grandParent;
+        if (grandParent == NONE) {
+            root = sibling;
+        } else {
+            if (child1[grandParent] == node) {
+                child1[grandParent] = sibling;
+            } else {
+                child2[grandParent] = sibling;
+            }
+            refit(grandParent);
+        }
+        release(node);
+    }
+
+    /**
+     * Returns how much a node's box would grow (in perimeter) by including a leaf's box.
+     *
+     * @param node the node
+     * @param leaf the leaf
+     * @return the growth of the perimeter
+     */
+    private double growth(int node, int leaf) {
+        double w = Math.max(maxX[node], maxX[leaf]) - Math.min(minX[node], minX[leaf]);
+        double h = Math.max(maxY[node], maxY[leaf]) - Math.min(minY[node], minY[leaf]);
+        return (w + h) - ((maxX[node] - minX[node]) + (maxY[node] - minY[node]));
+    }
+
+    /**
+     * Recomputes the boxes of a node and all its ancestors.
+     *
+     * @param node the node
+     */
+    private void refit(int node) {
+        while (node != NONE) {
+            fit(node);
+            node = parent[node];
+        }
+    }
+
+    /**
+     * Sets the box of an internal node to the box around its children.
+     *
+     * @param node the node
+     */
+    private void fit(int node) {
+        int a = child1[node];
+        int b = child2[node];
+        setBox(node, Math.min(minX[a], minX[b]), Math.min(minY[a], minY[b]),
+                Math.max(maxX[a], maxX[b]), Math.max(maxY[a], maxY[b]));
+    }
+
+    /**
+     * Sets the box of a node.
+     *
+     * @param node the node
+     * @param x0   the smallest x-coordinate
+     * @param y0   the smallest y-coordinate
+     * @param x1   the largest x-coordinate
+     * @param y1   the largest y-coordinate
+     */
+    private void setBox(int node, double x0, double y0, double x1, double y1) {
+        minX[node] = x0;
+        minY[node] = y0;
+        maxX[node] = x1;
+        maxY[node] = y1;
+    }
+
+    /**
+     * Takes a node from the free list, or a new one at the end of the arrays.
+     *
+     * @return the node
+     */
+    private int allocate() {
+        int node;
+        if (free != NONE) {
+            node = free;
+            free = parent[node];
+        } else {
+            if (used == capacity) {
+                grow();
+            }
+            node = used++;
+        }
+        parent[node] = NONE;
+        child1[node] = NONE;
+        child2[node] = NONE;
+        item[node] = null;
+        return node;
+    }
+
+    /**
+     * Returns a node to the free list. Free nodes are chained through their parent field and
+     * marked by having neither an item nor children.
+     *
+     * @param node the node
+     */
+    private void release(int node) {
+        item[node] = null;
+        child1[node] = NONE;
+        child2[node] = NONE;
+        parent[node] = free;
+        free = node;
+    }
+
+    /**
+     * Doubles the capacity of the arrays.
+     */
+    private void grow() {
+        resize(capacity * 2);
+    }
+
+    /**
+     * Moves the nodes into arrays of the given capacity.
+     *
+     * @param newCapacity the new capacity, at least the number of nodes used
+     */
+    private void resize(int newCapacity) {
+        capacity = newCapacity;
+        minX = Arrays.copyOf(minX, capacity);
+        minY = Arrays.copyOf(minY, capacity);
+        maxX = Arrays.copyOf(maxX, capacity);
+        maxY = Arrays.copyOf(maxY, capacity);
+        child1 = Arrays.copyOf(child1, capacity);
+        child2 = Arrays.copyOf(child2, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        item = Arrays.copyOf(item, capacity);
+        rank = Arrays.copyOf(rank, capacity);
+    }
+
+    /**
+     * The state of one traversal: a stack of nodes still to visit with the times the swept circle
+     * enters them, and a result holder for testing leaves. The stack grows as needed and is then
+     * reused, so traversals allocate nothing once it is large enough.
+     */
+    public static final class Traversal {
+
+        private int[] nodes = new int[64];
+        private double[] times = new double[64];
+        private final SweepHit hit = new SweepHit();
+
+        /**
+         * Pushes a node on the stack.
+         *
+         * @param sp    the current stack size
+         * @param node  the node
+         * @param entry the time the swept circle enters the node's box
+         * @return the new stack size
+         */
+        private int push(int sp, int node, double entry) {
+            if (sp == nodes.length) {
+                nodes = Arrays.copyOf(nodes, sp * 2);
+                times = Arrays.copyOf(times, sp * 2);
+            }
+            nodes[sp] = node;
+            times[sp] = entry;
+            return sp + 1;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+import java.util.Arrays;
+
+/**
+ * A batch of candidate boxes gathered for a segment query, packed into parallel arrays of
+ * primitives (one lane per box) so a SlabKernel can test the segment against all of them at
+ * once, without asking each collidable for its rectangle. Each box keeps the collidable it
+ * belongs to and the collidable's rank, which breaks ties between boxes hit at the same time.
+ * A batch is cleared and refilled for every query, so it grows to the largest number of
+ * candidates seen and then allocates nothing.
+ */
+public class BoxBatch {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private double[] minX;
+    private double[] minY;
+    private double[] maxX;
+    private double[] maxY;
+    private double[] times;
+    private int[] ranks;
+    private Collidable[] items;
+    private int size;
+
+    /**
+     * Constructs an empty batch.
+     */
+    public BoxBatch() {
+        this.minX = new double[INITIAL_CAPACITY];
+        this.minY = new double[INITIAL_CAPACITY];
+        this.maxX = new double[INITIAL_CAPACITY];
+        this.maxY = new double[INITIAL_CAPACITY];
+        this.times = new double[INITIAL_CAPACITY];
+        this.ranks = new int[INITIAL_CAPACITY];
+        this.items = new Collidable[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Removes every box from the batch.
+     */
+    public void clear() {
+        Arrays.fill(items, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Adds a box to the batch.
+     *
+     * @param c    the collidable the box belongs to
+     * @param rank the collidable's rank, lower wins ties
+     * @param x0   the smallest x-coordinate of the box
+     * @param y0   the smallest y-coordinate of the box
+     * @param x1   the largest x-coordinate of the box
+     * @param y1   the largest y-coordinate of the box
+     */
+    public void add(Collidable c, int rank, double x0, double y0, double x1, double y1) {
+        if (size == items.length) {
+            grow(2 * size);
+        }
+        minX[size] = x0;
+        minY[size] = y0;
+        maxX[size] = x1;
+        maxY[size] = y1;
+        ranks[size] = rank;
+        items[size] = c;
+        size++;
+    }
+
+    /**
+     * Returns the number of boxes in the batch.
+     *
+     * @return the number of boxes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the collidable a box belongs to.
+     *
+     * @param i the index of the box
+     * @return the collidable
+     */
+    public Collidable get(int i) {
+        return items[i];
+    }
+
+    /**
+     * Returns the time a kernel computed for a box (see SlabKernel).
+     *
+     * @param i the index of the box
+     * @return the time, or positive infinity if the segment misses the box
+     */
+    public double time(int i) {
+        return times[i];
+    }
+
+    /**
+     * Finds the box of the lowest rank among the boxes whose computed time is the given time.
+     *
+     * @param time the time, usually the smallest time a kernel returned
+     * @return the index of the box, or -1 if the time is infinite or no box has it
+     */
+    public int closest(double time) {
+        if (time == Double.POSITIVE_INFINITY) {
+            return -1;
+        }
+        int best = -1;
+        for (int i = 0; i < size; i++) {
+            if (times[i] == time && (best < 0 || ranks[i] < ranks[best])) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Sweeps a circle exactly against the boxes a kernel may have found it reaches, after the
+     * kernel computed the times of the boxes grown by at least the circle's radius for the
+     * circle's center. A box is skipped if the center never reaches it grown, or reaches it only
+     * after the closest hit so far; a center that stays inside a grown box all along has no time
+     * for it, so that box is tested anyway. The result is updated if a box is hit earlier, or at
+     * the same time by a collidable of lower rank.
+     *
+     * @param x          the x-coordinate of the circle's center
+     * @param y          the y-coordinate of the circle's center
+     * @param dx         the x-component of the motion
+     * @param dy         the y-component of the motion
+     * @param r          the radius of the circle
+     * @param grow       the distance the kernel grew the boxes by, at least r
+     * @param result     the closest hit so far, updated in place
+     * @param resultRank the rank of the collidable of the closest hit so far, or -1 if none
+     * @param test       scratch space for a single box test
+     * @return the rank of the collidable of the closest hit after the sweep, or resultRank if unchanged
+     */
+    public int sweep(double x, double y, double dx, double dy, double r, double grow, SweepHit result,
+                     int resultRank, SweepHit test) {
+        int bestRank = resultRank;
+        for (int i = 0; i < size; i++) {
+            double t = times[i];
+            if ((t == Double.POSITIVE_INFINITY || t > result.time())
+                    && !(minX[i] - grow <= x && x <= maxX[i] + grow && minY[i] - grow <= y && y <= maxY[i] + grow)) {
+                continue;
+            }
+            if (SweptCircle.sweep(x, y, dx, dy, r, minX[i], minY[i], maxX[i], maxY[i], test)
+                    && (test.time() < result.time() || (test.time() == result.time() && ranks[i] < bestRank))) {
+                result.set(test);
+                result.setCollidable(items[i]);
+                bestRank = ranks[i];
+            }
+        }
+        return bestRank;
+    }
+
+    /**
+     * Returns the lane of the boxes' smallest x-coordinates.
+     *
+     * @return the array, valid up to size
+     */
+    double[] minX() {
+        return minX;
+    }
+
+    /**
+     * Returns the lane of the boxes' smallest y-coordinates.
+     *
+     * @return the array, valid up to size
+     */
+    double[] minY() {
+        return minY;
+    }
+
+    /**
+     * Returns the lane of the boxes' largest x-coordinates.
+     *
+     * @return the array, valid up to size
+     */
+    double[] maxX() {
+        return maxX;
+    }
+
+    /**
+     * Returns the lane of the boxes' largest y-coordinates.
+     *
+     * @return the array, valid up to size
+     */
+    double[] maxY() {
+        return maxY;
+    }
+
+    /**
+     * Returns the lane the kernels write the boxes' times to.
+     *
+     * @return the array, valid up to size
+     */
+    double[] times() {
+        return times;
+    }
+
+    /**
+     * Grows the lanes.
+     *
+     * @param capacity the new number of boxes the lanes hold
+     */
+    private void grow(int capacity) {
+        minX = Arrays.copyOf(minX, capacity);
+        minY = Arrays.copyOf(minY, capacity);
+        maxX = Arrays.copyOf(maxX, capacity);
+        maxY = Arrays.copyOf(maxY, capacity);
+        times = Arrays.copyOf(times, capacity);
+        ranks = Arrays.copyOf(ranks, capacity);
+        items = Arrays.copyOf(items, capacity);
+    }
+}
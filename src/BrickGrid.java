@@ -0,0 +1,557 @@
+import java.util.List;
+
+/**
+ * An index of the bricks of a level laid out on a regular lattice, such as the rows of blocks of
+ * the default level. Every cell of the lattice holds at most one brick, so a brick is found from
+ * its position by arithmetic instead of by a search: which cells hold a brick is kept in an
+ * occupancy bitmap, next to the brick of each cell and its rank.
+ * <p>
+ * A brick is either a collidable whose rectangle is exactly its cell, or a block of a BlockStore
+ * whose rectangle lies within its cell (see addBlock). A block is kept as its index in the store,
+ * with no Block view or other object of its own, so a level of a million bricks is put in the
+ * lattice by filling a few arrays; the view is only asked of the store when a query finds the
+ * block. The store keeps coordinates as floats, so a block may stick out of its cell by the
+ * rounding of a float, far less than the margins the queries add to their reach.
+ * <p>
+ * A swept circle is traced through the lattice with a DDA walk (Amanatides and Woo) that visits
+ * the cells the circle's center crosses, in order, and tests the bricks near each of them. The
+ * walk stops at the first cell entered after the best hit so far, so a query costs the number of
+ * cells crossed, however many bricks the level has left. Removing a brick only clears its bit.
+ * <p>
+ * The coordinates are those of the collision boxes: the first row of cells is the one of the
+ * smallest y-coordinates.
+ */
+public class BrickGrid {
+
+    private final double minX;
+    private final double minY;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int columns;
+    private final int rows;
+    private final long[] occupied;
+    private final Collidable[] bricks;
+    private final int[] ranks;
+    private BlockStore store;
+    private int[] blocks;
+    private int size;
+
+    /**
+     * Constructs an empty lattice.
+     *
+     * @param minX       the smallest x-coordinate of the lattice
+     * @param minY       the smallest y-coordinate of the lattice
+     * @param cellWidth  the width of a cell
+     * @param cellHeight the height of a cell
+     * @param columns    the number of columns
+     * @param rows       the number of rows
+     * @throws IllegalArgumentException if a cell is empty or the lattice has no cell
+     */
+    public BrickGrid(double minX, double minY, double cellWidth, double cellHeight, int columns, int rows) {
+        if (!(cellWidth > 0 && cellHeight > 0) || columns <= 0 || rows <= 0) {
+            throw new IllegalArgumentException("a brick grid needs cells of positive size");
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.cellWidth = cellWidth;
+        this.cellHeight = cellHeight;
+        this.columns = columns;
+        this.rows = rows;
+        this.occupied = new long[(columns * rows + 63) >>> 6];
+        this.bricks = new Collidable[columns * rows];
+        this.ranks = new int[columns * rows];
+    }
+
+    /**
+     * Returns the number of bricks in the lattice.
+     *
+     * @return the number of bricks
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the cell whose rectangle is exactly the given box.
+     *
+     * @param x0 the smallest x-coordinate of the box
+     * @param y0 the smallest y-coordinate of the box
+     * @param x1 the largest x-coordinate of the box
+     * @param y1 the largest y-coordinate of the box
+     * @return the index of the cell, or -1 if the box is not a cell of the lattice
+     */
+    public int cellOf(double x0, double y0, double x1, double y1) {
+        int col = (int) Math.floor((x0 - minX) / cellWidth);
+        int row = (int) Math.floor((y0 - minY) / cellHeight);
+        if (col < 0 || col >= columns || row < 0 || row >= rows
+                || cellMinX(col) != x0 || cellMinX(col + 1) != x1
+                || cellMinY(row) != y0 || cellMinY(row + 1) != y1) {
+            return -1;
+        }
+        return row * columns + col;
+    }
+
+    /**
+     * Returns the cell a box lies within: the cell of the box's center, if the box does not reach
+     * out of it (compared as floats, see BlockStore).
+     *
+     * @param x0 the smallest x-coordinate of the box
+     * @param y0 the smallest y-coordinate of the box
+     * @param x1 the largest x-coordinate of the box
+     * @param y1 the largest y-coordinate of the box
+     * @return the index of the cell, or -1 if the box is not within a cell of the lattice
+     */
+    public int cellContaining(double x0, double y0, double x1, double y1) {
+        int col = (int) Math.floor(((x0 + x1) / 2 - minX) / cellWidth);
+        int row = (int) Math.floor(((y0 + y1) / 2 - minY) / cellHeight);
+        if (col < 0 || col >= columns || row < 0 || row >= rows
+                || x0 < (float) cellMinX(col) || x1 > (float) cellMinX(col + 1)
+                || y0 < (float) cellMinY(row) || y1 > (float) cellMinY(row + 1)) {
+            return -1;
+        }
+        return row * columns + col;
+    }
+
+    /**
+     * Returns the cell holding a block of the store, found from the block's rectangle.
+     *
+     * @param s     the store of the block
+     * @param block the index of the block in its store
+     * @return the index of the cell, or -1 if the block is not in the lattice
+     */
+    public int cellOfBlock(BlockStore s, int block) {
+        if (s != store) {
+            return -1;
+        }
+        double x0 = s.getX(block);
+        double y1 = s.getY(block);
+        int cell = cellContaining(x0, y1 - s.getHeight(block), x0 + s.getWidth(block), y1);
+        return cell >= 0 && isOccupied(cell) && bricks[cell] == null && blocks[cell] == block ? cell : -1;
+    }
+
+    /**
+     * Returns the cell holding a brick.
+     *
+     * @param c the brick
+     * @return the index of the cell, or -1 if the collidable is not a block kept in the lattice by
+     *         its index (see addBlock)
+     */
+    public int cellOf(Collidable c) {
+        if (store == null || !(c instanceof Block)) {
+            return -1;
+        }
+        Block block = (Block) c;
+        return cellOfBlock(block.getStore(), block.getIndex());
+    }
+
+    /**
+     * Returns the block a cell holds, by its index in the store.
+     *
+     * @param cell the index of the cell
+     * @return the index of the block in the store, or -1 if the cell holds no block of the store
+     */
+    public int blockAt(int cell) {
+        return isOccupied(cell) && bricks[cell] == null ? blocks[cell] : -1;
+    }
+
+    /**
+     * Returns the rank of the brick of a cell.
+     *
+     * @param cell the index of a cell holding a brick
+     * @return the brick's rank
+     */
+    public int getRank(int cell) {
+        return ranks[cell];
+    }
+
+    /**
+     * Returns the column a vertical line lies in, clamped to the lattice.
+     *
+     * @param x the x-coordinate of the line
+     * @return the column, between 0 and the last column
+     */
+    public int columnOf(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((x - minX) / cellWidth)));
+    }
+
+    /**
+     * Returns the row a horizontal line lies in, clamped to the lattice.
+     *
+     * @param y the y-coordinate of the line
+     * @return the row, between 0 and the last row
+     */
+    public int rowOf(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - minY) / cellHeight)));
+    }
+
+    /**
+     * Returns the number of cells of the lattice.
+     *
+     * @return the number of cells
+     */
+    public int getCellCount() {
+        return bricks.length;
+    }
+
+    /**
+     * Returns the number of columns of the lattice.
+     *
+     * @return the number of columns
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Checks whether a cell holds a brick.
+     *
+     * @param cell the index of the cell
+     * @return true if the cell holds a brick, false otherwise
+     */
+    public boolean isOccupied(int cell) {
+        return (occupied[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Puts a brick in an empty cell.
+     *
+     * @param cell  the index of the cell, as returned by cellOf
+     * @param brick the brick, whose rectangle is the cell
+     * @param rank  the brick's rank, which breaks ties between bricks hit at the same time
+     * @throws IllegalStateException if the cell already holds a brick
+     */
+    public void add(int cell, Collidable brick, int rank) {
+        if (isOccupied(cell)) {
+            throw new IllegalStateException("the cell already holds a brick");
+        }
+        occupied[cell >>> 6] |= 1L << cell;
+        bricks[cell] = brick;
+        ranks[cell] = rank;
+        size++;
+    }
+
+    /**
+     * Checks whether blocks of a store can be put in the lattice by their index: the lattice
+     * holds no block of another store.
+     *
+     * @param s the store
+     * @return true if blocks of the store can be added, false otherwise
+     */
+    public boolean acceptsBlocksOf(BlockStore s) {
+        return store == null || store == s;
+    }
+
+    /**
+     * Puts a block of a store in an empty cell, by its index. All the blocks of a lattice kept by
+     * their index come from the same store.
+     *
+     * @param cell  the index of the cell, as returned by cellContaining
+     * @param s     the store of the block
+     * @param block the index of the block in the store, whose rectangle lies within the cell
+     * @param rank  the block's rank, which breaks ties between bricks hit at the same time
+     * @throws IllegalStateException    if the cell already holds a brick
+     * @throws IllegalArgumentException if the lattice already holds blocks of another store
+     */
+    public void addBlock(int cell, BlockStore s, int block, int rank) {
+        if (store == null) {
+            store = s;
+            blocks = new int[bricks.length];
+        } else if (s != store) {
+            throw new IllegalArgumentException("the lattice holds blocks of another store");
+        }
+        add(cell, null, rank);
+        blocks[cell] = block;
+    }
+
+    /**
+     * Removes the brick of a cell.
+     *
+     * @param cell the index of the cell
+     */
+    public void remove(int cell) {
+        if (!isOccupied(cell)) {
+            return;
+        }
+        occupied[cell >>> 6] &= ~(1L << cell);
+        bricks[cell] = null;
+        size--;
+    }
+
+    /**
+     * Copies the rectangle of the brick of a cell.
+     *
+     * @param cell the index of a cell holding a brick
+     * @param box  the array to copy the rectangle to: the smallest x and y, then the largest x and y
+     */
+    public void getBox(int cell, double[] box) {
+        int col = cell % columns;
+        int row = cell / columns;
+        box[0] = brickMinX(cell, col);
+        box[1] = brickMinY(cell, row);
+        box[2] = brickMaxX(cell, col);
+        box[3] = brickMaxY(cell, row);
+    }
+
+    /**
+     * Adds the bricks whose cells overlap a box to a list.
+     *
+     * @param x0  the smallest x-coordinate of the box
+     * @param y0  the smallest y-coordinate of the box
+     * @param x1  the largest x-coordinate of the box
+     * @param y1  the largest y-coordinate of the box
+     * @param out the list to add the bricks to
+     */
+    public void query(double x0, double y0, double x1, double y1, List<Collidable> out) {
+        // a cell touching the box counts as overlapping it, like in the hierarchy
+        int col0 = Math.max(0, (int) Math.ceil((x0 - minX) / cellWidth) - 1);
+        int col1 = Math.min(columns - 1, (int) Math.floor((x1 - minX) / cellWidth));
+        int row0 = Math.max(0, (int) Math.ceil((y0 - minY) / cellHeight) - 1);
+        int row1 = Math.min(rows - 1, (int) Math.floor((y1 - minY) / cellHeight));
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                int cell = row * columns + col;
+                if (isOccupied(cell) && brickMaxX(cell, col) >= x0 && brickMinX(cell, col) <= x1
+                        && brickMaxY(cell, row) >= y0 && brickMinY(cell, row) <= y1) {
+                    out.add(brick(cell));
+                }
+            }
+        }
+    }
+
+    /**
+     * Packs the cell, rank and brick of every brick whose cell overlaps a box into a batch, for
+     * testing them all at once (see SlabKernel).
+     *
+     * @param x0  the smallest x-coordinate of the box
+     * @param y0  the smallest y-coordinate of the box
+     * @param x1  the largest x-coordinate of the box
+     * @param y1  the largest y-coordinate of the box
+     * @param out the batch the bricks are appended to
+     */
+    public void query(double x0, double y0, double x1, double y1, BoxBatch out) {
+        int col0 = Math.max(0, (int) Math.ceil((x0 - minX) / cellWidth) - 1);
+        int col1 = Math.min(columns - 1, (int) Math.floor((x1 - minX) / cellWidth));
+        int row0 = Math.max(0, (int) Math.ceil((y0 - minY) / cellHeight) - 1);
+        int row1 = Math.min(rows - 1, (int) Math.floor((y1 - minY) / cellHeight));
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                int cell = row * columns + col;
+                if (!isOccupied(cell)) {
+                    continue;
+                }
+                double bx0 = brickMinX(cell, col);
+                double by0 = brickMinY(cell, row);
+                double bx1 = brickMaxX(cell, col);
+                double by1 = brickMaxY(cell, row);
+                if (bx1 >= x0 && bx0 <= x1 && by1 >= y0 && by0 <= y1) {
+                    out.add(brick(cell), ranks[cell], bx0, by0, bx1, by1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sweeps a circle from (x, y) by (dx, dy) through the lattice, updating the result if a brick
+     * is hit before it (or at the same time with a lower rank).
+     * <p>
+     * The center is walked from cell to cell. A brick can only be touched while the center is in
+     * one of the cells around it, within the circle's reach, so the bricks of a window of cells
+     * around the center are tested: all of them in the first cell, and then only those of the
+     * column or row the window gains at each step. Each brick is tested once, when it enters the
+     * window, and never touched before that; so once the walk is about to enter a cell after the
+     * best hit so far, no brick left can be hit earlier.
+     *
+     * @param x          the x-coordinate of the circle's center
+     * @param y          the y-coordinate of the circle's center
+     * @param dx         the x-component of the motion
+     * @param dy         the y-component of the motion
+     * @param r          the radius of the circle
+     * @param margin     extra distance added to the reach of the circle, to absorb rounding errors
+     * @param result     the best hit so far, updated in place
+     * @param resultRank the rank of the collidable in the result, ignored if the result holds no hit
+     * @param test       scratch space for testing a single brick
+     * @return the rank of the collidable in the result after the sweep
+     */
+    public int sweep(double x, double y, double dx, double dy, double r, double margin, SweepHit result,
+                     int resultRank, SweepHit test) {
+        if (size == 0) {
+            return resultRank;
+        }
+        double reach = r + margin;
+        // clip the motion to the lattice grown by the reach
+        double enter = 0;
+        double exit = 1;
+        double lo = minX - reach;
+        double hi = cellMinX(columns) + reach;
+        if (dx == 0) {
+            if (x < lo || x > hi) {
+                return resultRank;
+            }
+        } else {
+            double a = (lo - x) / dx;
+            double b = (hi - x) / dx;
+            enter = Math.max(enter, Math.min(a, b));
+            exit = Math.min(exit, Math.max(a, b));
+        }
+        lo = minY - reach;
+        hi = cellMinY(rows) + reach;
+        if (dy == 0) {
+            if (y < lo || y > hi) {
+                return resultRank;
+            }
+        } else {
+            double a = (lo - y) / dy;
+            double b = (hi - y) / dy;
+            enter = Math.max(enter, Math.min(a, b));
+            exit = Math.min(exit, Math.max(a, b));
+        }
+        if (enter > exit || enter > result.time()) {
+            return resultRank;
+        }
+
+        // a brick within the reach of the center is at most this many cells away from the center's cell
+        int spanX = (int) (reach / cellWidth) + 1;
+        int spanY = (int) (reach / cellHeight) + 1;
+        int stepX = dx > 0 ? 1 : -1;
+        int stepY = dy > 0 ? 1 : -1;
+        int col = (int) Math.floor((x + dx * enter - minX) / cellWidth);
+        int row = (int) Math.floor((y + dy * enter - minY) / cellHeight);
+        int rank = testCells(col - spanX, col + spanX, row - spanY, row + spanY, x, y, dx, dy, r, result,
+                resultRank, test);
+        while (true) {
+            // the times the center crosses into the next column and the next row
+            double nextX = dx == 0 ? Double.POSITIVE_INFINITY
+                    : (cellMinX(dx > 0 ? col + 1 : col) - x) / dx;
+            double nextY = dy == 0 ? Double.POSITIVE_INFINITY
+                    : (cellMinY(dy > 0 ? row + 1 : row) - y) / dy;
+            double next = Math.min(nextX, nextY);
+            if (next > exit || next > result.time()) {
+                return rank;
+            }
+            if (nextX <= nextY) {
+                col += stepX;
+                int edge = col + stepX * spanX;
+                rank = testCells(edge, edge, row - spanY, row + spanY, x, y, dx, dy, r, result, rank, test);
+            } else {
+                row += stepY;
+                int edge = row + stepY * spanY;
+                rank = testCells(col - spanX, col + spanX, edge, edge, x, y, dx, dy, r, result, rank, test);
+            }
+        }
+    }
+
+    /**
+     * Tests the bricks of a block of cells, some of which may lie outside the lattice.
+     *
+     * @param col0       the first column
+     * @param col1       the last column
+     * @param row0       the first row
+     * @param row1       the last row
+     * @param x          the x-coordinate of the circle's center
+     * @param y          the y-coordinate of the circle's center
+     * @param dx         the x-component of the motion
+     * @param dy         the y-component of the motion
+     * @param r          the radius of the circle
+     * @param result     the best hit so far, updated in place
+     * @param resultRank the rank of the collidable in the result
+     * @param test       scratch space for testing a single brick
+     * @return the rank of the collidable in the result after the tests
+     */
+    private int testCells(int col0, int col1, int row0, int row1, double x, double y, double dx, double dy,
+                          double r, SweepHit result, int resultRank, SweepHit test) {
+        int bestRank = resultRank;
+        int firstCol = Math.max(col0, 0);
+        int lastCol = Math.min(col1, columns - 1);
+        for (int row = Math.max(row0, 0); row <= Math.min(row1, rows - 1); row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                int cell = row * columns + col;
+                if (isOccupied(cell)
+                        && SweptCircle.sweep(x, y, dx, dy, r, brickMinX(cell, col), brickMinY(cell, row),
+                        brickMaxX(cell, col), brickMaxY(cell, row), test)
+                        && (test.time() < result.time()
+                        || (test.time() == result.time() && ranks[cell] < bestRank))) {
+                    result.set(test);
+                    result.setCollidable(brick(cell));
+                    bestRank = ranks[cell];
+                }
+            }
+        }
+        return bestRank;
+    }
+
+    /**
+     * Returns the brick of an occupied cell, asking the store for the view of a block kept by its
+     * index.
+     *
+     * @param cell the index of the cell
+     * @return the brick
+     */
+    private Collidable brick(int cell) {
+        Collidable brick = bricks[cell];
+        return brick != null ? brick : store.get(blocks[cell]);
+    }
+
+    /**
+     * Returns the smallest x-coordinate of the brick of an occupied cell.
+     *
+     * @param cell the index of the cell
+     * @param col  the column of the cell
+     * @return the x-coordinate
+     */
+    private double brickMinX(int cell, int col) {
+        return bricks[cell] != null ? cellMinX(col) : store.getX(blocks[cell]);
+    }
+
+    /**
+     * Returns the largest x-coordinate of the brick of an occupied cell.
+     *
+     * @param cell the index of the cell
+     * @param col  the column of the cell
+     * @return the x-coordinate
+     */
+    private double brickMaxX(int cell, int col) {
+        return bricks[cell] != null ? cellMinX(col + 1) : store.getX(blocks[cell]) + store.getWidth(blocks[cell]);
+    }
+
+    /**
+     * Returns the smallest y-coordinate of the brick of an occupied cell.
+     *
+     * @param cell the index of the cell
+     * @param row  the row of the cell
+     * @return the y-coordinate
+     */
+    private double brickMinY(int cell, int row) {
+        return bricks[cell] != null ? cellMinY(row) : store.getY(blocks[cell]) - store.getHeight(blocks[cell]);
+    }
+
+    /**
+     * Returns the largest y-coordinate of the brick of an occupied cell.
+     *
+     * @param cell the index of the cell
+     * @param row  the row of the cell
+     * @return the y-coordinate
+     */
+    private double brickMaxY(int cell, int row) {
+        return bricks[cell] != null ? cellMinY(row + 1) : store.getY(blocks[cell]);
+    }
+
+    /**
+     * Returns the x-coordinate of the left edge of a column.
+     *
+     * @param col the column, which may be one past the last
+     * @return the x-coordinate
+     */
+    private double cellMinX(int col) {
+        return minX + col * cellWidth;
+    }
+
+    /**
+     * Returns the y-coordinate of the bottom edge of a row.
+     *
+     * @param row the row, which may be one past the last
+     * @return the y-coordinate
+     */
+    private double cellMinY(int row) {
+        return minY + row * cellHeight;
+    }
+}
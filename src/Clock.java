@@ -0,0 +1,29 @@
+/**
+ * A source of time for the game loop.
+ * The game reads the time and sleeps only through a clock, so it can be driven by the real
+ * system time or by a virtual time that advances as fast as the simulation runs.
+ */
+public interface Clock {
+
+    /**
+     * Returns the current time of the clock in nanoseconds.
+     * Only differences between two readings are meaningful.
+     *
+     * @return the current time in nanoseconds
+     */
+    long nanoTime();
+
+    /**
+     * Waits for the given amount of time.
+     *
+     * @param milliseconds the time to wait, in milliseconds
+     */
+    void sleepFor(long milliseconds);
+
+    /**
+     * Waits for the given amount of time, given to the nanosecond.
+     *
+     * @param nanoseconds the time to wait, in nanoseconds
+     */
+    void sleepForNanos(long nanoseconds);
+}
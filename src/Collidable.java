@@ -15,6 +15,8 @@ public interface Collidable {
      * Notify the object that a collision has occurred at a specific point with a given velocity.
      * The method calculates and returns the new velocity after the collision based on
      * the object's properties and the impact.
+     * The new velocity may be written into currentVelocity and returned, so a hit allocates nothing.
+     * The caller may reuse both the point and the velocity after the call, so they must not be kept.
      *
      * @param hitter          the ball that hits the object
      * @param collisionPoint  the point at which the collision occurs
@@ -0,0 +1,87 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scratch space used by a single collision query: the candidate list gathered from the
+ * broadphase, the broadphase's traversal state, the batch of boxes for a slab kernel and the
+ * result of the current narrowphase test.
+ * It also counts the queries that skipped the static collidables (see DistanceField).
+ * GameEnvironment queries only write to the scratch they are given, so threads that each use
+ * their own CollisionQuery can query the same environment at the same time.
+ */
+public class CollisionQuery {
+
+    // enough for the candidates of most queries; the list grows to the largest query made with it
+    // and keeps that size, so it stops growing once a game settles
+    private static final int INITIAL_CAPACITY = 64;
+
+    private List<Collidable> candidates;
+    private SweepHit hit;
+    private BoundingVolumeHierarchy.Traversal traversal;
+    private BoxBatch batch;
+    private int skipped;
+
+    /**
+     * Constructs an empty scratch space.
+     */
+    public CollisionQuery() {
+        this.candidates = new ArrayList<>(INITIAL_CAPACITY);
+        this.hit = new SweepHit();
+        this.traversal = new BoundingVolumeHierarchy.Traversal();
+        this.batch = new BoxBatch();
+    }
+
+    /**
+     * Returns the candidate list.
+     *
+     * @return the candidate list
+     */
+    List<Collidable> candidates() {
+        return candidates;
+    }
+
+    /**
+     * Returns the result holder for a single narrowphase test.
+     *
+     * @return the result holder
+     */
+    SweepHit hit() {
+        return hit;
+    }
+
+    /**
+     * Returns the state used to traverse the hierarchy of static collidables.
+     *
+     * @return the traversal state
+     */
+    BoundingVolumeHierarchy.Traversal traversal() {
+        return traversal;
+    }
+
+    /**
+     * Returns the batch the candidates' boxes are packed into for a slab kernel.
+     *
+     * @return the batch
+     */
+    BoxBatch batch() {
+        return batch;
+    }
+
+    /**
+     * Counts a query that skipped the static collidables.
+     */
+    void countSkipped() {
+        skipped++;
+    }
+
+    /**
+     * Returns the number of queries that skipped the static collidables since the last call.
+     *
+     * @return the number of skipped queries
+     */
+    int takeSkipped() {
+        int count = skipped;
+        skipped = 0;
+        return count;
+    }
+}
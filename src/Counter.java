@@ -1,15 +1,20 @@
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * The Counter class is used to keep track of a numerical count.
+ * The count is spread over striped cells (a LongAdder), so threads that update the same counter at
+ * the same time do not contend on a single variable, and a single thread pays little more than for
+ * a plain field. Reading the count adds up the cells, so it is cheap, but a read that races with
+ * updates may miss some of them.
  */
 public class Counter {
 
-    private int counter;
+    private final LongAdder counter = new LongAdder();
 
     /**
      * Constructs a Counter object with an initial count of 0.
      */
     public Counter() {
-        counter = 0;
     }
 
     /**
@@ -18,7 +23,7 @@ public class Counter {
      * @param num the initial count
      */
     public Counter(int num) {
-        counter = num;
+        counter.add(num);
     }
 
     /**
@@ -27,7 +32,7 @@ public class Counter {
      * @param number the number to add
      */
     void increase(int number) {
-        counter += number;
+        counter.add(number);
     }
 
     /**
@@ -36,7 +41,17 @@ public class Counter {
      * @param number the number to subtract
      */
     void decrease(int number) {
-        counter -= number;
+        counter.add(-number);
+    }
+
+    /**
+     * Sets the count, for restoring a saved game.
+     *
+     * @param value the new count
+     */
+    void set(long value) {
+        counter.reset();
+        counter.add(value);
     }
 
     /**
@@ -44,7 +59,16 @@ public class Counter {
      *
      * @return the current count
      */
-    int getValue() {
-        return counter;
+    public int getValue() {
+        return (int) counter.sum();
+    }
+
+    /**
+     * Gets the current count, without narrowing it to an int.
+     *
+     * @return the current count
+     */
+    public long getLongValue() {
+        return counter.sum();
     }
 }
@@ -0,0 +1,66 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A named collection of counters, so a game's counters can be observed from outside the game,
+ * for instance by a monitoring thread or at the end of a benchmark run.
+ * Counters are registered while the game is set up; reading them is safe from any thread.
+ */
+public class CounterRegistry {
+
+    private final Map<String, Counter> counters = new LinkedHashMap<>();
+
+    /**
+     * Adds a counter to the registry under a name, replacing any counter with that name.
+     *
+     * @param name    the name of the counter
+     * @param counter the counter to add
+     * @return the counter
+     */
+    public synchronized Counter register(String name, Counter counter) {
+        counters.put(name, counter);
+        return counter;
+    }
+
+    /**
+     * Returns the counter with the given name, registering a new counter at 0 if there is none.
+     *
+     * @param name the name of the counter
+     * @return the counter
+     */
+    public synchronized Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> new Counter());
+    }
+
+    /**
+     * Reads every counter, in the order they were registered. Each counter is read on its own,
+     * so counters updated during the snapshot may be read at slightly different moments.
+     *
+     * @return the names of the counters mapped to their current counts
+     */
+    public synchronized Map<String, Long> snapshot() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().getLongValue());
+        }
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * Returns the snapshot of the counters as a single line of name=count pairs.
+     *
+     * @return the counters and their counts
+     */
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder();
+        for (Map.Entry<String, Long> entry : snapshot().entrySet()) {
+            if (line.length() > 0) {
+                line.append(", ");
+            }
+            line.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return line.toString();
+    }
+}
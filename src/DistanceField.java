@@ -0,0 +1,252 @@
+/**
+ * A coarse distance field over the static collidables of a level, telling how far a point is at
+ * least from all of them. A ball whose whole step stays within that distance cannot hit anything
+ * static during the step, so its collision query can skip the hierarchy and the brick grid.
+ * <p>
+ * The region of the field is divided into square cells. A cell is covered if the box of a static
+ * collidable touches it; the number of boxes touching each cell is counted, so a box can be taken
+ * away again. Every cell stores the chessboard distance, in cells, to the nearest covered cell,
+ * up to a cap. The cells just outside the region count as covered, so nothing outside the region
+ * is ever closer than the field claims. A point in a cell at distance d is at least d - 1 whole
+ * cells away from every covered cell, which gives a lower bound on its distance to every
+ * collidable.
+ * <p>
+ * The distances are computed for the whole region in two passes by build, and then kept up to
+ * date locally: adding a box lowers the distances around it, and removing one recomputes the
+ * cells within the cap of it.
+ */
+public class DistanceField {
+
+    // the largest distance stored, in cells; a local update redoes the cells this close to a box
+    private static final int CAP = 16;
+
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    private final int[] covers;
+    private final byte[] distance;
+    private final byte[] scratch;
+    private boolean built;
+
+    /**
+     * Constructs a field over a region with no collidables. The field tells nothing until it is built.
+     *
+     * @param minX     the smallest x-coordinate of the region
+     * @param minY     the smallest y-coordinate of the region
+     * @param maxX     the largest x-coordinate of the region
+     * @param maxY     the largest y-coordinate of the region
+     * @param cellSize the side of a cell
+     * @throws IllegalArgumentException if the region or the cells are empty
+     */
+    public DistanceField(double minX, double minY, double maxX, double maxY, double cellSize) {
+        if (!(cellSize > 0 && maxX > minX && maxY > minY)) {
+            throw new IllegalArgumentException("a distance field needs a region and cells of positive size");
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.cellSize = cellSize;
+        this.columns = (int) Math.ceil((maxX - minX) / cellSize);
+        this.rows = (int) Math.ceil((maxY - minY) / cellSize);
+        this.covers = new int[columns * rows];
+        this.distance = new byte[columns * rows];
+        this.scratch = new byte[columns * rows];
+    }
+
+    /**
+     * Returns a lower bound on the distance from a point to every collidable of the field.
+     *
+     * @param x the x-coordinate of the point
+     * @param y the y-coordinate of the point
+     * @return the lower bound, 0 if the point is outside the region or the field is not built
+     */
+    public double clearance(double x, double y) {
+        if (!built) {
+            return 0;
+        }
+        double col = Math.floor((x - minX) / cellSize);
+        double row = Math.floor((y - minY) / cellSize);
+        if (col < 0 || col >= columns || row < 0 || row >= rows) {
+            return 0;
+        }
+        int d = distance[(int) row * columns + (int) col];
+        return d <= 1 ? 0 : (d - 1) * cellSize;
+    }
+
+    /**
+     * Adds the box of a collidable. If the field is built, the distances around the box are
+     * lowered at once.
+     *
+     * @param x0 the smallest x-coordinate of the box
+     * @param y0 the smallest y-coordinate of the box
+     * @param x1 the largest x-coordinate of the box
+     * @param y1 the largest y-coordinate of the box
+     */
+    public void add(double x0, double y0, double x1, double y1) {
+        int col0 = column(x0);
+        int col1 = column(x1);
+        int row0 = row(y0);
+        int row1 = row(y1);
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                covers[row * columns + col]++;
+            }
+        }
+        if (!built) {
+            return;
+        }
+        // every cell's distance to the new cells is its distance to their block
+        for (int row = Math.max(0, row0 - CAP); row <= Math.min(rows - 1, row1 + CAP); row++) {
+            int dy = Math.max(0, Math.max(row0 - row, row - row1));
+            for (int col = Math.max(0, col0 - CAP); col <= Math.min(columns - 1, col1 + CAP); col++) {
+                int d = Math.max(dy, Math.max(0, Math.max(col0 - col, col - col1)));
+                int cell = row * columns + col;
+                if (d < distance[cell]) {
+                    distance[cell] = (byte) d;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the box of a collidable, which must have been added with the very same coordinates.
+     * If the field is built, the distances near the box are recomputed at once.
+     *
+     * @param x0 the smallest x-coordinate of the box
+     * @param y0 the smallest y-coordinate of the box
+     * @param x1 the largest x-coordinate of the box
+     * @param y1 the largest y-coordinate of the box
+     */
+    public void remove(double x0, double y0, double x1, double y1) {
+        int col0 = column(x0);
+        int col1 = column(x1);
+        int row0 = row(y0);
+        int row1 = row(y1);
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                covers[row * columns + col]--;
+            }
+        }
+        if (!built) {
+            return;
+        }
+        // only the cells within the cap of the box can change; the covered cells they may be
+        // nearest to are within the cap of them, so the transform runs over twice the cap around
+        // the box and only the inner part is kept
+        int outerCol0 = Math.max(0, col0 - 2 * CAP);
+        int outerCol1 = Math.min(columns - 1, col1 + 2 * CAP);
+        int outerRow0 = Math.max(0, row0 - 2 * CAP);
+        int outerRow1 = Math.min(rows - 1, row1 + 2 * CAP);
+        transform(outerCol0, outerCol1, outerRow0, outerRow1);
+        int width = outerCol1 - outerCol0 + 1;
+        for (int row = Math.max(0, row0 - CAP); row <= Math.min(rows - 1, row1 + CAP); row++) {
+            int from = Math.max(0, col0 - CAP);
+            int to = Math.min(columns - 1, col1 + CAP);
+            System.arraycopy(scratch, (row - outerRow0) * width + from - outerCol0, distance, row * columns + from,
+                    to - from + 1);
+        }
+    }
+
+    /**
+     * Computes the distances of the whole region. Until this is called the field tells nothing,
+     * and the boxes added are only counted.
+     */
+    public void build() {
+        transform(0, columns - 1, 0, rows - 1);
+        System.arraycopy(scratch, 0, distance, 0, distance.length);
+        built = true;
+    }
+
+    /**
+     * Makes the field tell nothing until the next build, so many boxes can be added without
+     * updating the distances for each of them.
+     */
+    public void invalidate() {
+        built = false;
+    }
+
+    /**
+     * Computes the distances of a block of cells into the scratch array, row by row, with two
+     * passes of a chamfer transform whose steps to all eight neighbors cost one cell, which gives
+     * the exact chessboard distance. Only the covered cells inside the block, and the border of
+     * the region, are taken into account.
+     *
+     * @param col0 the first column of the block
+     * @param col1 the last column of the block
+     * @param row0 the first row of the block
+     * @param row1 the last row of the block
+     */
+    private void transform(int col0, int col1, int row0, int row1) {
+        int width = col1 - col0 + 1;
+        for (int row = row0; row <= row1; row++) {
+            int edgeY = Math.min(row + 1, rows - row);
+            for (int col = col0; col <= col1; col++) {
+                int d = covers[row * columns + col] > 0 ? 0
+                        : Math.min(CAP, Math.min(edgeY, Math.min(col + 1, columns - col)));
+                scratch[(row - row0) * width + col - col0] = (byte) d;
+            }
+        }
+        int height = row1 - row0 + 1;
+        for (int r = 0; r < height; r++) {
+            for (int c = 0; c < width; c++) {
+                int i = r * width + c;
+                int d = scratch[i];
+                if (c > 0) {
+                    d = Math.min(d, scratch[i - 1] + 1);
+                }
+                if (r > 0) {
+                    int above = i - width;
+                    d = Math.min(d, scratch[above] + 1);
+                    if (c > 0) {
+                        d = Math.min(d, scratch[above - 1] + 1);
+                    }
+                    if (c < width - 1) {
+                        d = Math.min(d, scratch[above + 1] + 1);
+                    }
+                }
+                scratch[i] = (byte) d;
+            }
+        }
+        for (int r = height - 1; r >= 0; r--) {
+            for (int c = width - 1; c >= 0; c--) {
+                int i = r * width + c;
+                int d = scratch[i];
+                if (c < width - 1) {
+                    d = Math.min(d, scratch[i + 1] + 1);
+                }
+                if (r < height - 1) {
+                    int below = i + width;
+                    d = Math.min(d, scratch[below] + 1);
+                    if (c > 0) {
+                        d = Math.min(d, scratch[below - 1] + 1);
+                    }
+                    if (c < width - 1) {
+                        d = Math.min(d, scratch[below + 1] + 1);
+                    }
+                }
+                scratch[i] = (byte) d;
+            }
+        }
+    }
+
+    /**
+     * Returns the column of an x-coordinate, clamped to the region.
+     *
+     * @param x the x-coordinate
+     * @return the column
+     */
+    private int column(double x) {
+        return (int) Math.max(0, Math.min(columns - 1, Math.floor((x - minX) / cellSize)));
+    }
+
+    /**
+     * Returns the row of a y-coordinate, clamped to the region.
+     *
+     * @param y the y-coordinate
+     * @return the row
+     */
+    private int row(double y) {
+        return (int) Math.max(0, Math.min(rows - 1, Math.floor((y - minY) / cellSize)));
+    }
+}
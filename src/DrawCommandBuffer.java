@@ -0,0 +1,517 @@
+import biuoop.DrawSurface;
+import java.awt.Color;
+import java.awt.Image;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A DrawSurface that records drawing calls instead of drawing them, and later replays them on a
+ * real surface grouped by color, so the real surface switches colors as rarely as possible.
+ * <p>
+ * The calls are gathered into batches of a single color. A new call joins the latest batch of its
+ * color, unless a batch recorded after that one may draw over the same pixels: then the call
+ * starts a new batch, so any two calls that overlap are still replayed in the order they were
+ * made and the frame looks exactly the same. Overlaps are tested on bounding boxes, and text is
+ * taken to overlap everything.
+ * <p>
+ * The calls are kept in parallel arrays that grow as needed and are reused by the next frame, so
+ * recording and replaying a frame of the same size allocates nothing. The colors are numbered in a
+ * palette that is kept from frame to frame too, and started over when a frame begins once it holds
+ * too many colors.
+ */
+public class DrawCommandBuffer implements DrawSurface {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    // how many batches a call may skip over to join an earlier batch of its color
+    private static final int MAX_LOOKBACK = 32;
+
+    // the number of colors after which the palette is started over
+    private static final int MAX_PALETTE = 1024;
+
+    // a coordinate far outside any surface, for calls whose box is unknown
+    private static final int FAR = Integer.MAX_VALUE / 2;
+
+    private static final int FILL_RECTANGLE = 0;
+    private static final int DRAW_RECTANGLE = 1;
+    private static final int FILL_OVAL = 2;
+    private static final int DRAW_OVAL = 3;
+    private static final int FILL_CIRCLE = 4;
+    private static final int DRAW_CIRCLE = 5;
+    private static final int DRAW_LINE = 6;
+    private static final int FILL_POLYGON = 7;
+    private static final int DRAW_POLYGON = 8;
+    private static final int DRAW_IMAGE = 9;
+    private static final int DRAW_TEXT = 10;
+
+    private DrawSurface target;
+
+    // the recorded calls, and for each the next call of its batch (-1 for the last one)
+    private int size;
+    private int[] operation = new int[INITIAL_CAPACITY];
+    private int[] a = new int[INITIAL_CAPACITY];
+    private int[] b = new int[INITIAL_CAPACITY];
+    private int[] c = new int[INITIAL_CAPACITY];
+    private int[] d = new int[INITIAL_CAPACITY];
+    private Object[] payload = new Object[INITIAL_CAPACITY];
+    private int[] next = new int[INITIAL_CAPACITY];
+
+    // the batches in replay order: their color, first and last call, and the box around their calls
+    private int batches;
+    private int[] batchColor = new int[INITIAL_CAPACITY];
+    private int[] batchFirst = new int[INITIAL_CAPACITY];
+    private int[] batchLast = new int[INITIAL_CAPACITY];
+    private int[] batchMinX = new int[INITIAL_CAPACITY];
+    private int[] batchMinY = new int[INITIAL_CAPACITY];
+    private int[] batchMaxX = new int[INITIAL_CAPACITY];
+    private int[] batchMaxY = new int[INITIAL_CAPACITY];
+
+    private Color[] palette = new Color[16];
+    private int paletteSize;
+    private Map<Color, Integer> paletteIndexes = new HashMap<>();
+    private int currentColor = -1;
+    private long colorChanges;
+
+    // the bounding box of the call being recorded, filled in by bound
+    private int minX;
+    private int minY;
+    private int maxX;
+    private int maxY;
+
+    /**
+     * Starts recording a frame that will be replayed on the given surface. Anything recorded
+     * and not yet replayed is dropped.
+     *
+     * @param surface the surface the frame will be replayed on
+     */
+    public void begin(DrawSurface surface) {
+        clear();
+        if (paletteSize >= MAX_PALETTE) {
+            Arrays.fill(palette, 0, paletteSize, null);
+            paletteSize = 0;
+            paletteIndexes.clear();
+        }
+        this.target = surface;
+        this.currentColor = -1;
+    }
+
+    /**
+     * Replays the recorded calls on the surface given to begin, batch by batch.
+     * A color is only set when it differs from the last one set.
+     */
+    public void flush() {
+        int lastColor = -1;
+        for (int batch = 0; batch < batches; batch++) {
+            int color = batchColor[batch];
+            if (color >= 0 && color != lastColor) {
+                lastColor = color;
+                target.setColor(palette[color]);
+                colorChanges++;
+            }
+            for (int command = batchFirst[batch]; command >= 0; command = next[command]) {
+                replay(command);
+            }
+        }
+        clear();
+    }
+
+    /**
+     * Returns the number of colors set on the real surface so far.
+     *
+     * @return the number of color changes
+     */
+    public long getColorChanges() {
+        return colorChanges;
+    }
+
+    /**
+     * Returns the width of the surface the frame will be replayed on.
+     *
+     * @return the width of the surface
+     */
+    @Override
+    public int getWidth() {
+        return target.getWidth();
+    }
+
+    /**
+     * Returns the height of the surface the frame will be replayed on.
+     *
+     * @return the height of the surface
+     */
+    @Override
+    public int getHeight() {
+        return target.getHeight();
+    }
+
+    /**
+     * Sets the color of the following calls.
+     *
+     * @param color the color to draw with
+     */
+    @Override
+    public void setColor(Color color) {
+        if (currentColor >= 0 && palette[currentColor] == color) {
+            return;
+        }
+        Integer known = paletteIndexes.get(color);
+        if (known != null) {
+            currentColor = known;
+            return;
+        }
+        if (paletteSize == palette.length) {
+            palette = Arrays.copyOf(palette, paletteSize * 2);
+        }
+        palette[paletteSize] = color;
+        paletteIndexes.put(color, paletteSize);
+        currentColor = paletteSize++;
+    }
+
+    /**
+     * Records a line between two points.
+     *
+     * @param x1 the x coordinate of the first point
+     * @param y1 the y coordinate of the first point
+     * @param x2 the x coordinate of the second point
+     * @param y2 the y coordinate of the second point
+     */
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        record(DRAW_LINE, x1, y1, x2, y2, null);
+    }
+
+    /**
+     * Records the outline of an oval.
+     *
+     * @param x      the left edge of the oval's bounding box
+     * @param y      the top edge of the oval's bounding box
+     * @param width  the width of the oval
+     * @param height the height of the oval
+     */
+    @Override
+    public void drawOval(int x, int y, int width, int height) {
+        record(DRAW_OVAL, x, y, width, height, null);
+    }
+
+    /**
+     * Records a filled oval.
+     *
+     * @param x      the left edge of the oval's bounding box
+     * @param y      the top edge of the oval's bounding box
+     * @param width  the width of the oval
+     * @param height the height of the oval
+     */
+    @Override
+    public void fillOval(int x, int y, int width, int height) {
+        record(FILL_OVAL, x, y, width, height, null);
+    }
+
+    /**
+     * Records the outline of a rectangle.
+     *
+     * @param x      the left edge of the rectangle
+     * @param y      the top edge of the rectangle
+     * @param width  the width of the rectangle
+     * @param height the height of the rectangle
+     */
+    @Override
+    public void drawRectangle(int x, int y, int width, int height) {
+        record(DRAW_RECTANGLE, x, y, width, height, null);
+    }
+
+    /**
+     * Records a filled rectangle.
+     *
+     * @param x      the left edge of the rectangle
+     * @param y      the top edge of the rectangle
+     * @param width  the width of the rectangle
+     * @param height the height of the rectangle
+     */
+    @Override
+    public void fillRectangle(int x, int y, int width, int height) {
+        record(FILL_RECTANGLE, x, y, width, height, null);
+    }
+
+    /**
+     * Records an image.
+     *
+     * @param x     the left edge of the image
+     * @param y     the top edge of the image
+     * @param image the image to draw
+     */
+    @Override
+    public void drawImage(int x, int y, Image image) {
+        record(DRAW_IMAGE, x, y, 0, 0, image);
+    }
+
+    /**
+     * Records the outline of a circle.
+     *
+     * @param x      the x coordinate of the center
+     * @param y      the y coordinate of the center
+     * @param radius the radius of the circle
+     */
+    @Override
+    public void drawCircle(int x, int y, int radius) {
+        record(DRAW_CIRCLE, x, y, radius, 0, null);
+    }
+
+    /**
+     * Records a filled circle.
+     *
+     * @param x      the x coordinate of the center
+     * @param y      the y coordinate of the center
+     * @param radius the radius of the circle
+     */
+    @Override
+    public void fillCircle(int x, int y, int radius) {
+        record(FILL_CIRCLE, x, y, radius, 0, null);
+    }
+
+    /**
+     * Records a line of text.
+     *
+     * @param x        the x coordinate of the text's baseline start
+     * @param y        the y coordinate of the text's baseline
+     * @param text     the text to draw
+     * @param fontSize the size of the font
+     */
+    @Override
+    public void drawText(int x, int y, String text, int fontSize) {
+        record(DRAW_TEXT, x, y, fontSize, 0, text);
+    }
+
+    /**
+     * Records the outline of a polygon. The polygon must not change until the frame is replayed.
+     *
+     * @param polygon the polygon to draw
+     */
+    @Override
+    public void drawPolygon(Polygon polygon) {
+        record(DRAW_POLYGON, 0, 0, 0, 0, polygon);
+    }
+
+    /**
+     * Records a filled polygon. The polygon must not change until the frame is replayed.
+     *
+     * @param polygon the polygon to fill
+     */
+    @Override
+    public void fillPolygon(Polygon polygon) {
+        record(FILL_POLYGON, 0, 0, 0, 0, polygon);
+    }
+
+    /**
+     * Appends a call to the buffer in the current color, and adds it to a batch.
+     *
+     * @param op     the kind of call
+     * @param a0     the call's first argument
+     * @param b0     the call's second argument
+     * @param c0     the call's third argument
+     * @param d0     the call's fourth argument
+     * @param object the call's object argument, or null
+     */
+    private void record(int op, int a0, int b0, int c0, int d0, Object object) {
+        if (size == operation.length) {
+            growCalls();
+        }
+        int command = size++;
+        operation[command] = op;
+        a[command] = a0;
+        b[command] = b0;
+        c[command] = c0;
+        d[command] = d0;
+        payload[command] = object;
+        next[command] = -1;
+        bound(command);
+
+        // images do not use the color, so they fit in a batch of any color
+        boolean anyColor = op == DRAW_IMAGE;
+        int stop = Math.max(batches - MAX_LOOKBACK, 0);
+        for (int batch = batches - 1; batch >= stop; batch--) {
+            if (anyColor || batchColor[batch] == currentColor) {
+                append(batch, command);
+                return;
+            }
+            if (overlaps(batch)) {
+                break;
+            }
+        }
+        if (batches == batchColor.length) {
+            growBatches();
+        }
+        int batch = batches++;
+        batchColor[batch] = anyColor ? -1 : currentColor;
+        batchFirst[batch] = command;
+        batchLast[batch] = command;
+        batchMinX[batch] = minX;
+        batchMinY[batch] = minY;
+        batchMaxX[batch] = maxX;
+        batchMaxY[batch] = maxY;
+    }
+
+    /**
+     * Adds a call to the end of a batch and widens the batch's box around it.
+     *
+     * @param batch   the batch
+     * @param command the call, whose box is in minX, minY, maxX and maxY
+     */
+    private void append(int batch, int command) {
+        next[batchLast[batch]] = command;
+        batchLast[batch] = command;
+        batchMinX[batch] = Math.min(batchMinX[batch], minX);
+        batchMinY[batch] = Math.min(batchMinY[batch], minY);
+        batchMaxX[batch] = Math.max(batchMaxX[batch], maxX);
+        batchMaxY[batch] = Math.max(batchMaxY[batch], maxY);
+    }
+
+    /**
+     * Checks whether the box of the call being recorded overlaps the box of a batch.
+     *
+     * @param batch the batch
+     * @return true if they overlap
+     */
+    private boolean overlaps(int batch) {
+        return minX < batchMaxX[batch] && batchMinX[batch] < maxX
+                && minY < batchMaxY[batch] && batchMinY[batch] < maxY;
+    }
+
+    /**
+     * Computes the box of the pixels a call may draw into minX, minY, maxX and maxY, the maximums
+     * excluded. Outlines reach one pixel past their width and height, so every box is widened by one.
+     *
+     * @param command the call
+     */
+    private void bound(int command) {
+        switch (operation[command]) {
+            case FILL_CIRCLE:
+            case DRAW_CIRCLE:
+                setBounds(a[command] - c[command], b[command] - c[command],
+                        a[command] + c[command], b[command] + c[command]);
+                break;
+            case DRAW_LINE:
+                setBounds(Math.min(a[command], c[command]), Math.min(b[command], d[command]),
+                        Math.max(a[command], c[command]), Math.max(b[command], d[command]));
+                break;
+            case FILL_POLYGON:
+            case DRAW_POLYGON:
+                Rectangle box = ((Polygon) payload[command]).getBounds();
+                setBounds(box.x, box.y, box.x + box.width, box.y + box.height);
+                break;
+            case DRAW_IMAGE:
+                Image image = (Image) payload[command];
+                int width = image.getWidth(null);
+                int height = image.getHeight(null);
+                if (width < 0 || height < 0) {
+                    setBounds(-FAR, -FAR, FAR, FAR);
+                } else {
+                    setBounds(a[command], b[command], a[command] + width, b[command] + height);
+                }
+                break;
+            case DRAW_TEXT:
+                setBounds(-FAR, -FAR, FAR, FAR);
+                break;
+            default:
+                setBounds(a[command], b[command], a[command] + c[command], b[command] + d[command]);
+                break;
+        }
+    }
+
+    /**
+     * Sets the box of the call being recorded, widened by one pixel on the far sides.
+     *
+     * @param x0 the left edge
+     * @param y0 the top edge
+     * @param x1 the right edge
+     * @param y1 the bottom edge
+     */
+    private void setBounds(int x0, int y0, int x1, int y1) {
+        minX = x0;
+        minY = y0;
+        maxX = x1 + 1;
+        maxY = y1 + 1;
+    }
+
+    /**
+     * Drops every recorded call and batch.
+     */
+    private void clear() {
+        Arrays.fill(payload, 0, size, null);
+        size = 0;
+        batches = 0;
+    }
+
+    /**
+     * Doubles the number of calls the buffer can hold.
+     */
+    private void growCalls() {
+        int capacity = operation.length * 2;
+        operation = Arrays.copyOf(operation, capacity);
+        a = Arrays.copyOf(a, capacity);
+        b = Arrays.copyOf(b, capacity);
+        c = Arrays.copyOf(c, capacity);
+        d = Arrays.copyOf(d, capacity);
+        payload = Arrays.copyOf(payload, capacity);
+        next = Arrays.copyOf(next, capacity);
+    }
+
+    /**
+     * Doubles the number of batches the buffer can hold.
+     */
+    private void growBatches() {
+        int capacity = batchColor.length * 2;
+        batchColor = Arrays.copyOf(batchColor, capacity);
+        batchFirst = Arrays.copyOf(batchFirst, capacity);
+        batchLast = Arrays.copyOf(batchLast, capacity);
+        batchMinX = Arrays.copyOf(batchMinX, capacity);
+        batchMinY = Arrays.copyOf(batchMinY, capacity);
+        batchMaxX = Arrays.copyOf(batchMaxX, capacity);
+        batchMaxY = Arrays.copyOf(batchMaxY, capacity);
+    }
+
+    /**
+     * Replays a single call on the target surface.
+     *
+     * @param command the call
+     */
+    private void replay(int command) {
+        switch (operation[command]) {
+            case FILL_RECTANGLE:
+                target.fillRectangle(a[command], b[command], c[command], d[command]);
+                break;
+            case DRAW_RECTANGLE:
+                target.drawRectangle(a[command], b[command], c[command], d[command]);
+                break;
+            case FILL_OVAL:
+                target.fillOval(a[command], b[command], c[command], d[command]);
+                break;
+            case DRAW_OVAL:
+                target.drawOval(a[command], b[command], c[command], d[command]);
+                break;
+            case FILL_CIRCLE:
+                target.fillCircle(a[command], b[command], c[command]);
+                break;
+            case DRAW_CIRCLE:
+                target.drawCircle(a[command], b[command], c[command]);
+                break;
+            case DRAW_LINE:
+                target.drawLine(a[command], b[command], c[command], d[command]);
+                break;
+            case FILL_POLYGON:
+                target.fillPolygon((Polygon) payload[command]);
+                break;
+            case DRAW_POLYGON:
+                target.drawPolygon((Polygon) payload[command]);
+                break;
+            case DRAW_IMAGE:
+                target.drawImage(a[command], b[command], (Image) payload[command]);
+                break;
+            default:
+                target.drawText(a[command], b[command], (String) payload[command], c[command]);
+                break;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+import java.io.PrintStream;
+
+/**
+ * Latency histograms for the phases of the game loop: advancing the sprites, drawing them,
+ * showing the frame, the whole frame, and how much longer than asked the sleep at the end of
+ * a frame took. Together they tell whether a stutter comes from the simulation, the rendering
+ * or the frame pacing.
+ */
+public class FrameTimings {
+
+    private final LatencyHistogram update = new LatencyHistogram("update");
+    private final LatencyHistogram draw = new LatencyHistogram("draw");
+    private final LatencyHistogram show = new LatencyHistogram("show");
+    private final LatencyHistogram frame = new LatencyHistogram("frame");
+    private final LatencyHistogram oversleep = new LatencyHistogram("oversleep");
+
+    /**
+     * Returns the histogram of the time spent advancing all sprites by one step.
+     *
+     * @return the update histogram
+     */
+    public LatencyHistogram getUpdate() {
+        return this.update;
+    }
+
+    /**
+     * Returns the histogram of the time spent drawing all sprites.
+     *
+     * @return the draw histogram
+     */
+    public LatencyHistogram getDraw() {
+        return this.draw;
+    }
+
+    /**
+     * Returns the histogram of the time spent showing a drawn frame.
+     *
+     * @return the show histogram
+     */
+    public LatencyHistogram getShow() {
+        return this.show;
+    }
+
+    /**
+     * Returns the histogram of the time from the start of a frame to the start of the next one.
+     *
+     * @return the frame histogram
+     */
+    public LatencyHistogram getFrame() {
+        return this.frame;
+    }
+
+    /**
+     * Returns the histogram of how much longer each sleep took than requested.
+     *
+     * @return the oversleep histogram
+     */
+    public LatencyHistogram getOversleep() {
+        return this.oversleep;
+    }
+
+    /**
+     * Forgets everything recorded so far. Must be called by the game loop's thread.
+     */
+    public void reset() {
+        update.reset();
+        draw.reset();
+        show.reset();
+        frame.reset();
+        oversleep.reset();
+    }
+
+    /**
+     * Prints a summary line for every phase that recorded anything.
+     *
+     * @param out the stream to print to
+     */
+    public void print(PrintStream out) {
+        LatencyHistogram[] all = {update, draw, show, frame, oversleep};
+        for (LatencyHistogram h : all) {
+            if (h.getCount() > 0) {
+                out.println(h);
+            }
+        }
+    }
+}
@@ -1,56 +1,178 @@
 import biuoop.DrawSurface;
 import biuoop.GUI;
 import biuoop.KeyboardSensor;
-import biuoop.Sleeper;
 import java.awt.Color;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The Game class represents the main game logic and handles the game loop.
+ * A game that runs its queries on threads of its own (see setThreads) should be closed once it
+ * is over, which run() does itself.
  */
-public class Game {
+public class Game implements AutoCloseable {
 
     public static final double WIDTH = 800;
     public static final double HEIGHT = 600;
+    // the seed a game's random generator starts from until setSeed is called
+    public static final long DEFAULT_SEED = 0;
+    private static final int FRAMES_PER_SECOND = 60;
+    private static final int MAX_STEPS_PER_FRAME = 8;
+    private static final String REWIND_KEY = "r";
+    // the side of a cell of the distance field, a little more than a ball's radius
+    private static final double DISTANCE_CELL = 8;
     private SpriteCollection sprites;
+    private StaticLayer staticLayer;
     private GameEnvironment environment;
+    private BallSystem balls;
     private Counter counter;
     private Counter ballCounter;
     private Counter score;
     private ScoreIndicator scoreIndicator;
+    private Clock clock = new SystemClock();
+    private int tickRate = FRAMES_PER_SECOND;
+    private Paddle paddle;
+    private final FrameTimings timings = new FrameTimings();
+    private HitEventBuffer hitEvents;
+    private CounterRegistry counters;
+    private Counter hits;
+    private TickInput input;
+    private Counter[] savedCounters;
+    private BlockStore blocks;
+    private int[] levelRanks;
+    private HitListener[][] levelListeners;
+    private SnapshotRing rewind;
+    private ForkJoinPool pool;
+    private final SeededRandom random = new SeededRandom(DEFAULT_SEED);
 
     /**
      * Adds a collidable object to the game environment.
      *
      * @param c the collidable object to add
+     * @return the collidable's handle, for removing it
      */
-    public void addCollidable(Collidable c) {
-        this.environment.addCollidable(c);
+    public long addCollidable(Collidable c) {
+        return this.environment.addCollidable(c);
+    }
+
+    /**
+     * Adds a collidable object whose rectangle is the given box to the game environment.
+     *
+     * @param c    the collidable object to add
+     * @param minX the smallest x-coordinate of the collidable's rectangle
+     * @param minY the smallest y-coordinate of the rectangle
+     * @param maxX the largest x-coordinate of the rectangle
+     * @param maxY the largest y-coordinate of the rectangle
+     * @return the collidable's handle, for removing it
+     */
+    public long addCollidable(Collidable c, double minX, double minY, double maxX, double maxY) {
+        return this.environment.addCollidable(c, minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Adds a collidable object that moves during the game to the game environment.
+     *
+     * @param c the collidable object to add
+     * @return the collidable's handle, for removing it
+     */
+    public long addDynamicCollidable(Collidable c) {
+        return this.environment.addDynamicCollidable(c);
+    }
+
+    /**
+     * Adds a ball to the game. The ball's state moves into the game's ball system.
+     *
+     * @param b the ball to add
+     */
+    public void addBall(Ball b) {
+        this.balls.adopt(b);
     }
 
     /**
      * Adds a sprite to the game.
      *
      * @param s the sprite to add
+     * @return the sprite's handle, for removing it
      */
-    public void addSprite(Sprite s) {
-        this.sprites.addSprite(s);
+    public long addSprite(Sprite s) {
+        return this.sprites.addSprite(s);
+    }
+
+    /**
+     * Adds a sprite that never moves or changes to the game. It is drawn below the other sprites.
+     *
+     * @param s      the sprite to add
+     * @param region the region the sprite draws in
+     * @return the sprite's handle, for removing it
+     */
+    public long addStaticSprite(Sprite s, Rectangle region) {
+        return this.staticLayer.addSprite(s, region);
+    }
+
+    /**
+     * Adds a sprite that never moves or changes to the game, drawing in the given box.
+     *
+     * @param s    the sprite to add
+     * @param minX the smallest x-coordinate of the region the sprite draws in
+     * @param minY the smallest y-coordinate of the region
+     * @param maxX the largest x-coordinate of the region
+     * @param maxY the largest y-coordinate of the region
+     * @return the sprite's handle, for removing it
+     */
+    public long addStaticSprite(Sprite s, double minX, double minY, double maxX, double maxY) {
+        return this.staticLayer.addSprite(s, minX, minY, maxX, maxY);
     }
 
     /**
      * Initializes a new game by creating the blocks, balls, and other game objects.
      */
     public void initialize() {
+        initialize(null);
+    }
+
+    /**
+     * Initializes a new game with the blocks of a level file, or with the default blocks.
+     * The walls, balls and other game objects are the same for every level.
+     *
+     * @param level the level whose blocks to create, or null for the default blocks
+     */
+    public void initialize(LevelFile level) {
         this.sprites = new SpriteCollection();
+        this.staticLayer = new StaticLayer();
+        this.sprites.addSprite(this.staticLayer);
         this.environment = new GameEnvironment();
-        counter = new Counter();
-        ballCounter = new Counter(3);
-        score = new Counter();
+        this.environment.setDistanceField(new DistanceField(0, 0, WIDTH, HEIGHT, DISTANCE_CELL));
+        // everything is indexed at once by the build at the end
+        this.environment.deferIndexing();
+        this.balls = new BallSystem();
+        this.balls.setEnvironment(this.environment);
+        this.hitEvents = new HitEventBuffer(this);
+        this.blocks = new BlockStore();
+        counters = new CounterRegistry();
+        counter = counters.register("blocks left", new Counter());
+        ballCounter = counters.register("balls left", new Counter(3));
+        score = counters.register("score", new Counter());
+        hits = counters.register("hits", new Counter());
+        Counter collisionsTested = counters.register("collisions tested", new Counter());
+        this.balls.setQueryCounter(collisionsTested);
+        Counter pairsTested = counters.register("ball pairs tested", new Counter());
+        this.balls.setPairCounter(pairsTested);
+        Counter queriesSkipped = counters.register("queries skipped", new Counter());
+        this.balls.setSkipCounter(queriesSkipped);
+        this.savedCounters = new Counter[] {counter, ballCounter, score, hits, collisionsTested, pairsTested,
+                queriesSkipped};
 
         BlockRemover remover = new BlockRemover(this, counter);
         BallRemover ballRemover = new BallRemover(this, ballCounter);
-        ScoreTrackingListener scoreL = new ScoreTrackingListener(score);
+        ScoreTrackingListener scoreL = new ScoreTrackingListener(score, random);
 
-        createBlocks(remover, scoreL, counter);
+        if (level == null) {
+            createBlocks(remover, scoreL, counter);
+        } else {
+            loadBlocks(level, remover, scoreL, ballRemover);
+        }
+        addSprite(this.balls);
 
         Ball ball1 = new Ball(new Point(88, 50), 7, Color.BLACK);
         ball1.setVelocity(3, 4);
@@ -68,11 +190,11 @@ public class Game {
         Rectangle downRect = new Rectangle(new Point(0, 30), WIDTH - 30, 30);
         Rectangle deathRegion = new Rectangle(new Point(30, HEIGHT), WIDTH, 30);
 
-        Block rightCorner = new Block(rightRect, Color.GRAY);
-        Block leftCorner = new Block(leftRect, Color.GRAY);
-        Block upCorner = new Block(upRect, Color.GRAY);
-        Block downCorner = new Block(downRect, Color.GRAY);
-        Block deathRegionB = new Block(deathRegion, Color.GRAY);
+        Block rightCorner = blocks.add(rightRect, Color.GRAY);
+        Block leftCorner = blocks.add(leftRect, Color.GRAY);
+        Block upCorner = blocks.add(upRect, Color.GRAY);
+        Block downCorner = blocks.add(downRect, Color.GRAY);
+        Block deathRegionB = blocks.add(deathRegion, Color.GRAY);
 
         leftCorner.addToGame(this);
         rightCorner.addToGame(this);
@@ -86,42 +208,513 @@ public class Game {
 
         ScoreIndicator scoreIndicator = new ScoreIndicator(score);
         scoreIndicator.addToGame(this);
+
+        this.environment.build();
+
+        // a snapshot records which of the store's blocks are present, and removed ones are added
+        // back with their ranks and listeners (a block remover drops itself from the block it removes)
+        this.levelRanks = new int[blocks.size()];
+        this.levelListeners = new HitListener[blocks.size()][];
+        for (int i = 0; i < blocks.size(); i++) {
+            levelRanks[i] = this.environment.getBlockRank(blocks, i);
+            levelListeners[i] = blocks.getListeners(i);
+        }
+    }
+
+    /**
+     * Sets the clock the game loop reads the time from and sleeps with.
+     *
+     * @param clock the clock to use
+     */
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Restarts the game's random generator, which picks the color a ball takes when it hits a block
+     * that does not give it its own. Games with the same seed and the same input play out the same.
+     *
+     * @param seed the seed
+     */
+    public void setSeed(long seed) {
+        this.random.setSeed(seed);
+    }
+
+    /**
+     * Returns the state of the game's random generator, which an input log keeps so a replay
+     * starts with the same random numbers as the recording.
+     *
+     * @return the state of the random generator
+     */
+    public long getRandomState() {
+        return this.random.getState();
+    }
+
+    /**
+     * Sets the state of the game's random generator to one returned by getRandomState.
+     *
+     * @param state the state of the random generator
+     */
+    public void setRandomState(long state) {
+        this.random.setState(state);
+    }
+
+    /**
+     * Sets whether the static sprites are drawn from a cached image that is only redrawn where
+     * a sprite was removed (the default), or drawn one by one every frame.
+     *
+     * @param cached true to cache the static sprites, false to draw them every frame
+     */
+    public void setStaticLayerCached(boolean cached) {
+        this.staticLayer.setCached(cached);
+    }
+
+    /**
+     * Sets whether each frame's drawing calls are recorded and replayed grouped by color (the
+     * default), or made straight on the surface in the order the sprites make them.
+     *
+     * @param batched true to batch the drawing calls by color, false to draw them straight away
+     */
+    public void setDrawBatched(boolean batched) {
+        this.sprites.setBatched(batched);
+    }
+
+    /**
+     * Sets the number of threads the balls' trajectory queries run on.
+     * Hits are still resolved on the game's thread in a fixed order, so the game plays out
+     * exactly the same whatever the number of threads.
+     *
+     * The threads of an earlier call are shut down.
+     *
+     * @param threads the number of threads, 1 to run everything on the game's thread
+     */
+    public void setThreads(int threads) {
+        close();
+        if (threads > 1) {
+            this.pool = new ForkJoinPool(threads);
+            this.balls.setPool(this.pool);
+        }
+    }
+
+    /**
+     * Shuts down the threads the trajectory queries run on, if any; the game can go on, with
+     * everything on the game's thread. Games that are played by the thousand, such as those of a
+     * SimulationHost, must be closed so their threads don't pile up.
+     */
+    @Override
+    public void close() {
+        if (this.pool != null) {
+            this.pool.shutdown();
+            this.pool = null;
+            this.balls.setPool(null);
+        }
+    }
+
+    /**
+     * Sets the kernel the balls' trajectory queries test the nearby static collidables with, all
+     * at once (see GameEnvironment.setSlabKernel). The game plays out exactly the same with or
+     * without a kernel.
+     *
+     * @param kernel the kernel (see SlabKernels), or null to walk the hierarchy and the brick grid
+     */
+    public void setSlabKernel(SlabKernel kernel) {
+        this.environment.setSlabKernel(kernel);
+    }
+
+    /**
+     * Sets whether the balls bounce off each other, for games with many balls. They pass through
+     * each other by default.
+     *
+     * @param enabled true to make the balls collide with each other, false to let them pass
+     */
+    public void setBallCollisions(boolean enabled) {
+        this.balls.setBallCollisions(enabled);
+    }
+
+    /**
+     * Sets how many simulation steps run per second. The balls and the paddle move the same
+     * distance per second whatever the rate, since their speeds are given per 60 FPS frame.
+     *
+     * @param stepsPerSecond the simulation rate, in steps per second
+     * @throws IllegalArgumentException if the rate is not positive
+     */
+    public void setTickRate(int stepsPerSecond) {
+        if (stepsPerSecond <= 0) {
+            throw new IllegalArgumentException("the tick rate must be positive");
+        }
+        this.tickRate = stepsPerSecond;
+        double timeScale = (double) FRAMES_PER_SECOND / stepsPerSecond;
+        this.balls.setTimeScale(timeScale);
+        if (this.paddle != null) {
+            this.paddle.setTimeScale(timeScale);
+        }
+    }
+
+    /**
+     * Keeps a snapshot of the world as run() starts and after each of its steps in the given ring.
+     * Holding the rewind key (r) then plays the game backwards, a step at a time, as far as the
+     * ring goes.
+     * Rewinding is disabled while the game's input is recorded, since the recording could not
+     * be replayed.
+     *
+     * @param ring the ring of snapshots to rewind through, or null to disable rewinding
+     */
+    public void setRewind(SnapshotRing ring) {
+        this.rewind = ring;
     }
 
     /**
      * Runs the game and starts the animation loop.
+     * The simulation advances in fixed steps (see setTickRate) paid for from an accumulator of
+     * elapsed time, while frames are drawn at the display rate with the sprites blended between
+     * their last two steps. A frame runs at most MAX_STEPS_PER_FRAME steps; time beyond that is
+     * dropped, so a slow frame makes the game lag briefly instead of falling further and further behind.
+     * The time spent in each phase of the loop is recorded (see getFrameTimings) and printed on exit.
      */
     public void run() {
+        run(null);
+    }
+
+    /**
+     * Runs the game like run(), recording the paddle input of every step and the checksum of the
+     * world after it, so the game can be replayed (see InputReplay).
+     *
+     * @param recording the log to record the steps in, or null to record nothing
+     */
+    public void run(InputLog recording) {
         GUI gui = new GUI("title", (int) WIDTH, (int) HEIGHT);
         KeyboardSensor keyboard = gui.getKeyboardSensor();
-        Rectangle paddleShape = new Rectangle(new Point(WIDTH / 2 - 50, HEIGHT - 50), 100, 20);
-        Paddle paddle = new Paddle(keyboard, paddleShape, 10);
+        addPaddle(recording != null ? new InputRecorder(keyboard, recording) : keyboard);
+        if (recording != null) {
+            recording.setRandomState(getRandomState());
+        }
+        SnapshotRing history = recording == null ? this.rewind : null;
+        // the newest snapshot of the ring is always the state the world is in
+        if (history != null) {
+            capture(history.push());
+        }
 
-        paddle.addToGame(this);
+        long nanosecondsPerStep = 1000000000L / tickRate;
+        long nanosecondsPerFrame = 1000000000L / FRAMES_PER_SECOND;
+        long accumulator = nanosecondsPerStep;
+        long previousTime = clock.nanoTime();
 
-        Sleeper sleeper = new Sleeper();
-        int framesPerSecond = 60;
-        int millisecondsPerFrame = 1000 / framesPerSecond;
+        while (!isOver()) {
+            long startTime = clock.nanoTime();
+            accumulator += startTime - previousTime;
+            timings.getFrame().record(startTime - previousTime);
+            previousTime = startTime;
 
-        while (true) {
-            if (counter.getValue() == 0) {
-                score.increase(100);
+            int steps = 0;
+            while (accumulator >= nanosecondsPerStep && steps < MAX_STEPS_PER_FRAME && !isOver()) {
+                long updateStart = clock.nanoTime();
+                if (history != null && keyboard.isPressed(REWIND_KEY)) {
+                    if (history.size() > 1) {
+                        history.pop();
+                        restore(history.get(0));
+                    }
+                } else {
+                    step();
+                    if (history != null) {
+                        capture(history.push());
+                    }
+                }
+                timings.getUpdate().record(clock.nanoTime() - updateStart);
+                accumulator -= nanosecondsPerStep;
+                steps++;
             }
-            if (counter.getValue() == 0 || ballCounter.getValue() == 0) {
-                gui.close();
+            if (accumulator >= nanosecondsPerStep) {
+                accumulator %= nanosecondsPerStep;
             }
-            long startTime = System.currentTimeMillis();
+
+            long drawStart = clock.nanoTime();
             DrawSurface d = gui.getDrawSurface();
-            this.sprites.drawAllOn(d);
+            this.sprites.drawAllOn(d, (double) accumulator / nanosecondsPerStep);
+            long showStart = clock.nanoTime();
+            timings.getDraw().record(showStart - drawStart);
             gui.show(d);
-            this.sprites.notifyAllTimePassed();
+            timings.getShow().record(clock.nanoTime() - showStart);
 
-            long usedTime = System.currentTimeMillis() - startTime;
-            long millisecondsLeftToSleep = millisecondsPerFrame - usedTime;
+            long usedTime = clock.nanoTime() - startTime;
+            long millisecondsLeftToSleep = (nanosecondsPerFrame - usedTime) / 1000000L;
             if (millisecondsLeftToSleep > 0) {
-                sleeper.sleepFor(millisecondsLeftToSleep);
+                long sleepStart = clock.nanoTime();
+                clock.sleepFor(millisecondsLeftToSleep);
+                timings.getOversleep().record(clock.nanoTime() - sleepStart - millisecondsLeftToSleep * 1000000L);
             }
         }
+        finish();
+        gui.close();
+        close();
+        timings.print(System.out);
+    }
+
+    /**
+     * Runs the game without a window, as fast as the CPU allows.
+     * Each tick draws all sprites on the given surface (if any) and advances them by one step.
+     * The game's clock is advanced by the length of one step per tick, without really sleeping,
+     * and the draw and update phases are timed with it, as in run.
+     * Calling it again continues the same game; the paddle is only created by the first call.
+     * A keyboard that is a TickInput is told when each step begins and ends, which is how games
+     * are recorded and replayed.
+     *
+     * @param keyboard the input source controlling the paddle (used by the first call only)
+     * @param surface  the surface to draw on every tick, or null to skip drawing
+     * @param maxTicks the maximal number of ticks to run
+     * @return the number of ticks that were run
+     */
+    public long runHeadless(KeyboardSensor keyboard, DrawSurface surface, long maxTicks) {
+        if (this.paddle == null) {
+            addPaddle(keyboard);
+        }
+        long nanosecondsPerStep = 1000000000L / tickRate;
+        long ticks = 0;
+        while (ticks < maxTicks && !isOver()) {
+            long drawStart = clock.nanoTime();
+            if (surface != null) {
+                this.sprites.drawAllOn(surface);
+                timings.getDraw().record(clock.nanoTime() - drawStart);
+            }
+            long updateStart = clock.nanoTime();
+            step();
+            timings.getUpdate().record(clock.nanoTime() - updateStart);
+            clock.sleepForNanos(nanosecondsPerStep);
+            ticks++;
+        }
+        if (isOver()) {
+            finish();
+        }
+        return ticks;
+    }
+
+    /**
+     * Captures the state of the world in a snapshot: which of the level's blocks are left, the
+     * paddle, the counters, the random generator and the balls. The game must have started (the
+     * paddle is created by the first call to run or runHeadless). Capturing allocates nothing once
+     * the snapshot's buffer is big enough.
+     *
+     * @param snapshot the snapshot to capture into, replacing what it held
+     */
+    public void capture(WorldSnapshot snapshot) {
+        requireStarted();
+        int words = (blocks.size() + 63) >>> 6;
+        ByteBuffer out = snapshot.prepare(4 + 8 * words + 16 + 4 + 8 * savedCounters.length + 8
+                + balls.getSnapshotSize());
+        out.putInt(blocks.size());
+        for (int w = 0; w < words; w++) {
+            long present = 0;
+            for (int i = w << 6; i < Math.min(blocks.size(), (w + 1) << 6); i++) {
+                if (environment.containsBlock(blocks, i)) {
+                    present |= 1L << (i & 63);
+                }
+            }
+            out.putLong(present);
+        }
+        paddle.writeTo(out);
+        out.putInt(savedCounters.length);
+        for (Counter c : savedCounters) {
+            out.putLong(c.getLongValue());
+        }
+        out.putLong(random.getState());
+        balls.writeTo(out);
+        out.flip();
+    }
+
+    /**
+     * Restores the world to the state captured in a snapshot. The snapshot must come from a game
+     * of the same level. Removed blocks are added back with their original rank and listeners,
+     * so the game plays on exactly as it did after the capture, given the same input.
+     *
+     * @param snapshot the snapshot to restore
+     * @throws IllegalArgumentException if the snapshot was captured in a game of another level
+     */
+    public void restore(WorldSnapshot snapshot) {
+        requireStarted();
+        ByteBuffer in = snapshot.contents();
+        if (in.getInt() != blocks.size()) {
+            throw new IllegalArgumentException("the snapshot is of a level with another number of blocks");
+        }
+        int words = (blocks.size() + 63) >>> 6;
+        for (int w = 0; w < words; w++) {
+            long present = in.getLong();
+            for (int i = w << 6; i < Math.min(blocks.size(), (w + 1) << 6); i++) {
+                boolean wasPresent = (present & (1L << (i & 63))) != 0;
+                boolean isPresent = environment.containsBlock(blocks, i);
+                if (wasPresent && !isPresent) {
+                    environment.restoreBlock(blocks, i, levelRanks[i]);
+                    staticLayer.addBlock(blocks, i);
+                    blocks.setListeners(i, levelListeners[i]);
+                } else if (!wasPresent && isPresent) {
+                    blocks.get(i).removeFromGame(this);
+                }
+            }
+        }
+        paddle.readFrom(in);
+        if (in.getInt() != savedCounters.length) {
+            throw new IllegalArgumentException("the snapshot has another number of counters");
+        }
+        for (Counter c : savedCounters) {
+            c.set(in.getLong());
+        }
+        if (snapshot.hasRandomState()) {
+            random.setState(in.getLong());
+        } else {
+            random.setSeed(DEFAULT_SEED);
+        }
+        balls.readFrom(in);
+    }
+
+    /**
+     * Returns a checksum of the world's state: the balls' positions, velocities and colors, the
+     * paddle's position, the score and the numbers of blocks and balls left. Two runs of a game
+     * that give the same checksums after every step played out the same.
+     *
+     * @return the checksum
+     */
+    public int checksum() {
+        long h = balls.checksum();
+        h = 31 * h + Double.doubleToLongBits(paddle.getCollisionRectangle().getUpperLeft().getX());
+        h = 31 * h + score.getValue();
+        h = 31 * h + counter.getValue();
+        h = 31 * h + ballCounter.getValue();
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Returns the registry of the game's counters: the blocks and balls left, the score, the hits
+     * reported by blocks, the ball trajectories tested for collisions and the pairs of balls
+     * tested for collisions with each other.
+     *
+     * @return the counter registry
+     */
+    public CounterRegistry getCounters() {
+        return this.counters;
+    }
+
+    /**
+     * Returns the buffer the blocks of this game record their hits in.
+     *
+     * @return the hit event buffer
+     */
+    public HitEventBuffer getHitEvents() {
+        return this.hitEvents;
+    }
+
+    /**
+     * Checks if a collidable is still in the game.
+     *
+     * @param c the collidable to check
+     * @return true if the collidable is in the game, false otherwise
+     */
+    public boolean contains(Collidable c) {
+        return this.environment.contains(c);
+    }
+
+    /**
+     * Checks if a ball is still in the game.
+     *
+     * @param b the ball to check
+     * @return true if the ball is in the game, false otherwise
+     */
+    public boolean contains(Ball b) {
+        return this.balls.contains(b);
+    }
+
+    /**
+     * Returns the latency histograms of the game loop's phases. They are updated while the game
+     * runs and may be read from any thread.
+     *
+     * @return the frame timings
+     */
+    public FrameTimings getFrameTimings() {
+        return this.timings;
+    }
+
+    /**
+     * Checks if the game is over, either because all blocks were cleared or all balls were lost.
+     *
+     * @return true if the game is over, false otherwise
+     */
+    public boolean isOver() {
+        return counter.getValue() == 0 || ballCounter.getValue() == 0;
+    }
+
+    /**
+     * Returns the current score.
+     *
+     * @return the score
+     */
+    public int getScore() {
+        return score.getValue();
+    }
+
+    /**
+     * Returns the number of blocks that are still in the game.
+     *
+     * @return the number of remaining blocks
+     */
+    public int getRemainingBlocks() {
+        return counter.getValue();
+    }
+
+    /**
+     * Returns the number of balls that are still in the game.
+     *
+     * @return the number of remaining balls
+     */
+    public int getRemainingBalls() {
+        return ballCounter.getValue();
+    }
+
+    /**
+     * Creates the paddle and adds it to the game.
+     *
+     * @param keyboard the input source controlling the paddle
+     */
+    private void addPaddle(KeyboardSensor keyboard) {
+        Rectangle paddleShape = new Rectangle(new Point(WIDTH / 2 - 50, HEIGHT - 50), 100, 20);
+        this.paddle = new Paddle(keyboard, paddleShape, 10);
+        this.input = keyboard instanceof TickInput ? (TickInput) keyboard : null;
+        this.paddle.setTimeScale((double) FRAMES_PER_SECOND / tickRate);
+
+        this.paddle.addToGame(this);
+    }
+
+    /**
+     * Advances the game by one simulation step: every sprite moves, and then the hits that
+     * happened during the step are delivered to the blocks' listeners, and the balls they removed
+     * are dropped.
+     */
+    private void step() {
+        if (this.input != null) {
+            this.input.beginTick();
+        }
+        this.sprites.notifyAllTimePassed();
+        this.hits.increase(this.hitEvents.dispatch());
+        this.balls.dropRemoved();
+        if (this.input != null) {
+            this.input.endTick(checksum());
+        }
+    }
+
+    /**
+     * Checks that the game has started, so every part of the world exists.
+     *
+     * @throws IllegalStateException if the paddle was not created yet
+     */
+    private void requireStarted() {
+        if (this.paddle == null) {
+            throw new IllegalStateException("the game has not started");
+        }
+    }
+
+    /**
+     * Gives the bonus for clearing all the blocks, once the game is over.
+     */
+    private void finish() {
+        if (counter.getValue() == 0) {
+            score.increase(100);
+        }
     }
 
     /**
@@ -133,12 +726,14 @@ public class Game {
         int startY = 100;
         int startX = 230;
         Color[] colors = {Color.BLUE, Color.RED, Color.ORANGE, Color.YELLOW, Color.GREEN, Color.PINK};
+        // the rows are laid out on a lattice, whose first row of collision boxes ends at startY
+        this.environment.setBrickGrid(new BrickGrid(startX, startY - blockHeight, blockWidth, blockHeight,
+                12, 6));
 
         for (int i = 0; i < 6; i++) {
             for (int j = 12 - i; j > 0; j--) {
-                Point upperLeft = new Point(startX + (12 - j) * blockWidth, startY + i * blockHeight);
-                Rectangle blockShape = new Rectangle(upperLeft, blockWidth, blockHeight);
-                Block block = new Block(blockShape, colors[i]);
+                Block block = blocks.add(startX + (12 - j) * blockWidth, startY + i * blockHeight, blockWidth,
+                        blockHeight, colors[i]);
                 block.addToGame(this);
                 block.addHitListener(a);
                 block.addHitListener(b);
@@ -147,6 +742,58 @@ public class Game {
         }
     }
 
+    /**
+     * Creates the blocks of a level file. Breakable blocks get the given block listeners and are
+     * counted as remaining blocks, and death regions get the given ball listener.
+     * The records are copied into the block store in bulk, and the blocks lying within the cells
+     * of the level's lattice, if it has one, are put in a brick grid by their index: such blocks
+     * get no Block view, sprite or collidable handle unless the game asks for them.
+     *
+     * @param level        the level
+     * @param blockRemover the listener removing breakable blocks
+     * @param score        the listener scoring hits on breakable blocks
+     * @param ballRemover  the listener of the death regions
+     */
+    private void loadBlocks(LevelFile level, HitListener blockRemover, HitListener score, HitListener ballRemover) {
+        // blocks with the same flags share one listener array of the store, looked up once here (a new
+        // store always has room for them)
+        int[] listeners = {
+                blocks.internListeners(new HitListener[] {}),
+                blocks.internListeners(new HitListener[] {blockRemover, score}),
+                blocks.internListeners(new HitListener[] {ballRemover}),
+                blocks.internListeners(new HitListener[] {blockRemover, score, ballRemover})};
+        BrickGrid grid = level.newBrickGrid();
+        this.environment.setBrickGrid(grid);
+        this.staticLayer.setBrickGrid(grid, blocks);
+        this.blocks.setHitEvents(this.hitEvents);
+        int first = blocks.addLevel(level, listeners);
+        this.environment.addBlocks(blocks, first, level.size());
+        this.staticLayer.addBlocks(blocks, first, level.size());
+        int breakable = 0;
+        for (int i = 0; i < level.size(); i++) {
+            if ((level.getFlags(i) & LevelFile.BREAKABLE) != 0) {
+                breakable++;
+            }
+        }
+        counter.increase(breakable);
+    }
+
+    /**
+     * Adds balls at random positions in the empty area below the blocks, for stress tests.
+     *
+     * @param count the number of balls to add
+     * @param seed  the seed of the random positions and directions
+     */
+    public void spawnBalls(int count, long seed) {
+        Random positions = new Random(seed);
+        for (int i = 0; i < count; i++) {
+            Ball ball = this.balls.add(40 + positions.nextDouble() * (WIDTH - 80),
+                    250 + positions.nextDouble() * 250, 3, Color.BLACK);
+            ball.setVelocity(Velocity.fromAngleAndSpeed(positions.nextDouble() * 360, 5));
+        }
+        ballCounter.increase(count);
+    }
+
     /**
      * Removes a collidable object from the game environment.
      *
@@ -157,11 +804,67 @@ public class Game {
     }
 
     /**
-     * Removes a sprite from the game.
+     * Removes a collidable object from the game environment by its handle.
+     *
+     * @param handle the handle the collidable was added with
+     */
+    public void removeCollidable(long handle) {
+        this.environment.removeCollidable(handle);
+    }
+
+    /**
+     * Removes a ball from the game.
+     *
+     * @param b the ball to remove
+     */
+    public void removeBall(Ball b) {
+        this.balls.remove(b);
+    }
+
+    /**
+     * Removes a sprite from the game, searching for it. Removing it by its handle is faster.
      *
      * @param s the sprite to remove
      */
     public void removeSprite(Sprite s) {
         this.sprites.removeSprite(s);
     }
+
+    /**
+     * Removes a sprite from the game by its handle.
+     *
+     * @param handle the handle the sprite was added with
+     */
+    public void removeSprite(long handle) {
+        this.sprites.removeSprite(handle);
+    }
+
+    /**
+     * Removes a static sprite from the game, searching for it. Removing it by its handle is faster.
+     *
+     * @param s the static sprite to remove
+     */
+    public void removeStaticSprite(Sprite s) {
+        this.staticLayer.removeSprite(s);
+    }
+
+    /**
+     * Removes a block of a store from the game's static sprites, whether it is drawn as a sprite
+     * of its own or by the brick grid (see StaticLayer.removeBlock).
+     *
+     * @param store the store of the block
+     * @param i     the index of the block in the store
+     */
+    void removeStaticBlock(BlockStore store, int i) {
+        this.staticLayer.removeBlock(store, i);
+    }
+
+    /**
+     * Removes a static sprite from the game by its handle.
+     *
+     * @param handle the handle the static sprite was added with
+     */
+    public void removeStaticSprite(long handle) {
+        this.staticLayer.removeSprite(handle);
+    }
 }
@@ -1,71 +1,308 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Manages the game environment including all collidables.
+ * Static collidables are indexed in a bounding-volume hierarchy so a collision query only tests the
+ * collidables near the trajectory. Collidables that move (like the paddle) are kept in a
+ * small separate list which is always tested. Bricks laid out on a lattice can be kept in a
+ * brick grid instead of the hierarchy (see setBrickGrid), which traces a trajectory through the
+ * lattice cell by cell. A distance field over the static collidables (see setDistanceField) lets a
+ * query whose motion stays clear of all of them skip both.
+ * <p>
+ * Adding a collidable returns a handle (see HandleList). A collidable can be removed by its
+ * handle or by itself; either way removal takes constant time, plus the refit of the hierarchy.
+ * The blocks of a BlockStore can also be added in bulk (see addBlocks): those that fit in the brick
+ * grid are kept there by their index in the store, with no handle, and are found and removed
+ * through the grid.
  */
 public class GameEnvironment {
 
-    private List<Collidable> shapes;
+    private static final double QUERY_MARGIN = 0.001;
+
+    private HandleList<Collidable> shapes;
+    private List<Collidable> dynamicShapes;
+    private BoundingVolumeHierarchy tree;
+    private BrickGrid grid;
+    private DistanceField field;
+    private SlabKernel slabKernel;
+    private double[] box;
+    // the id of each collidable in shapes, and the rank and grid cell (or -1) of the collidable of each id
+    private IdentityIntMap<Collidable> ids;
+    private int[] ranks;
+    private int[] cells;
+    private int nextOrder;
+    private boolean deferred;
+    private List<Collidable> candidates;
+    private CollisionQuery query;
 
     /**
      * Default constructor that initializes the list of shapes.
      */
     public GameEnvironment() {
-        this.shapes = new ArrayList<>();
+        this(new ArrayList<>());
     }
 
     /**
      * Constructs a game environment with a pre-defined list of shapes.
      *
-     * @param shapes a list of collidables to be managed
+     * @param shapes a list of collidables to be managed, which are added in order
      */
     public GameEnvironment(List<Collidable> shapes) {
-        this.shapes = shapes;
+        this.shapes = new HandleList<>();
+        this.dynamicShapes = new ArrayList<>();
+        this.tree = new BoundingVolumeHierarchy();
+        this.ids = new IdentityIntMap<>();
+        this.ranks = new int[shapes.size() + 1];
+        this.cells = new int[shapes.size() + 1];
+        this.candidates = new ArrayList<>();
+        this.query = new CollisionQuery();
+        this.box = new double[4];
+        for (Collidable c : shapes) {
+            addCollidable(c);
+        }
     }
 
     /**
-     * Retrieves the list of collidables.
+     * Retrieves the collidables, in the order they were added, leaving out the blocks kept in the
+     * brick grid by their index (see addBlocks).
+     * Changing the list changes nothing, use addCollidable and removeCollidable instead.
      *
-     * @return the list of collidable shapes
+     * @return a new list of the collidable shapes
      */
     public List<Collidable> getShapes() {
-        return this.shapes;
+        return this.shapes.toList();
+    }
+
+    /**
+     * Sets the lattice of bricks of the level. The static collidables added from then on whose
+     * rectangle is exactly an empty cell of the lattice, and the blocks added by addBlocks whose
+     * rectangle lies within an empty cell, are kept in it instead of the hierarchy.
+     *
+     * @param bricks the lattice, or null to keep every static collidable in the hierarchy
+     */
+    public void setBrickGrid(BrickGrid bricks) {
+        this.grid = bricks;
+    }
+
+    /**
+     * Sets the distance field over the static collidables. The static collidables added from then
+     * on are added to the field, which is built along with the hierarchy.
+     *
+     * @param distances the field, or null to query the hierarchy for every motion
+     */
+    public void setDistanceField(DistanceField distances) {
+        this.field = distances;
+    }
+
+    /**
+     * Sets the kernel the queries test their static candidates with. With a kernel, the boxes of
+     * the static collidables near the motion are packed into a batch straight from the hierarchy
+     * and the brick grid, and tested all at once: a segment query takes the kernel's times as its
+     * result, and a swept-circle query only runs the exact test on the boxes the kernel finds the
+     * circle may reach. Without one, the hierarchy and the grid are walked and each candidate is
+     * tested on its own. The queries find the same collisions either way.
+     *
+     * @param kernel the kernel (see SlabKernels), or null to test the candidates one at a time
+     */
+    public void setSlabKernel(SlabKernel kernel) {
+        this.slabKernel = kernel;
     }
 
     /**
      * Adds a collidable to the environment.
+     * The collidable's rectangle must not change while it is in the environment.
+     *
+     * @param c the collidable to add
+     * @return the collidable's handle, for removing it
+     */
+    public long addCollidable(Collidable c) {
+        long handle = track(c, nextOrder);
+        index(c, nextOrder++);
+        return handle;
+    }
+
+    /**
+     * Adds a collidable whose rectangle is the given box to the environment, without asking the
+     * collidable for its rectangle (see BlockStore).
+     *
+     * @param c    the collidable to add
+     * @param minX the smallest x-coordinate of the collidable's rectangle
+     * @param minY the smallest y-coordinate of the rectangle
+     * @param maxX the largest x-coordinate of the rectangle
+     * @param maxY the largest y-coordinate of the rectangle
+     * @return the collidable's handle, for removing it
+     */
+    public long addCollidable(Collidable c, double minX, double minY, double maxX, double maxY) {
+        long handle = track(c, nextOrder);
+        index(c, nextOrder++, minX, minY, maxX, maxY);
+        return handle;
+    }
+
+    /**
+     * Adds blocks of a store in bulk, as static collidables of consecutive ranks. A block whose
+     * rectangle lies within an empty cell of the brick grid is kept there by its index, without
+     * asking the store for its view; the others are added one by one, like addCollidable.
+     *
+     * @param store the store of the blocks
+     * @param first the index of the first block in the store
+     * @param count the number of blocks
+     */
+    public void addBlocks(BlockStore store, int first, int count) {
+        for (int i = first; i < first + count; i++) {
+            addBlock(store, i, nextOrder++);
+        }
+    }
+
+    /**
+     * Adds back a block of a store that was removed, with the rank it had when it was first added,
+     * like restoreCollidable; it is kept in the brick grid if it lies within an empty cell.
+     *
+     * @param store the store of the block
+     * @param i     the index of the block in the store
+     * @param rank  the rank the block had
+     */
+    public void restoreBlock(BlockStore store, int i, int rank) {
+        addBlock(store, i, rank);
+    }
+
+    /**
+     * Checks if a block of a store is in the environment, without asking the store for its view
+     * if the block never had one.
+     *
+     * @param store the store of the block
+     * @param i     the index of the block in the store
+     * @return true if the block is in the environment, false otherwise
+     */
+    public boolean containsBlock(BlockStore store, int i) {
+        return (grid != null && grid.cellOfBlock(store, i) >= 0)
+                || (store.hasView(i) && ids.containsKey(store.get(i)));
+    }
+
+    /**
+     * Returns the rank of a block of a store, like getRank, without asking the store for its view
+     * if the block never had one.
+     *
+     * @param store the store of the block
+     * @param i     the index of the block in the store
+     * @return the block's rank, or -1 if it is not in the environment
+     */
+    public int getBlockRank(BlockStore store, int i) {
+        int cell = grid == null ? -1 : grid.cellOfBlock(store, i);
+        if (cell >= 0) {
+            return grid.getRank(cell);
+        }
+        return store.hasView(i) ? getRank(store.get(i)) : -1;
+    }
+
+    /**
+     * Adds back a static collidable that was removed, with the rank it had when it was first
+     * added, so it wins ties against the same collidables as before (see getRank).
+     *
+     * @param c    the collidable to add back
+     * @param rank the rank the collidable had
+     * @return the collidable's new handle
+     */
+    public long restoreCollidable(Collidable c, int rank) {
+        long handle = track(c, rank);
+        index(c, rank);
+        return handle;
+    }
+
+    /**
+     * Adds back a static collidable whose rectangle is the given box, like restoreCollidable.
+     *
+     * @param c    the collidable to add back
+     * @param rank the rank the collidable had
+     * @param minX the smallest x-coordinate of the collidable's rectangle
+     * @param minY the smallest y-coordinate of the rectangle
+     * @param maxX the largest x-coordinate of the rectangle
+     * @param maxY the largest y-coordinate of the rectangle
+     * @return the collidable's new handle
+     */
+    public long restoreCollidable(Collidable c, int rank, double minX, double minY, double maxX, double maxY) {
+        long handle = track(c, rank);
+        index(c, rank, minX, minY, maxX, maxY);
+        return handle;
+    }
+
+    /**
+     * Returns the rank of a collidable: the number of collidables added before it. Of two
+     * collidables hit at the same time, the one of the lower rank wins.
+     *
+     * @param c the collidable
+     * @return the collidable's rank, or -1 if it is not in the environment
+     */
+    public int getRank(Collidable c) {
+        int id = ids.get(c);
+        if (id >= 0) {
+            return ranks[id];
+        }
+        int cell = grid == null ? -1 : grid.cellOf(c);
+        return cell < 0 ? -1 : grid.getRank(cell);
+    }
+
+    /**
+     * Adds a collidable whose rectangle may change over time (like the paddle) to the environment.
      *
      * @param c the collidable to add
+     * @return the collidable's handle, for removing it
      */
-    public void addCollidable(Collidable c) {
-        shapes.add(c);
+    public long addDynamicCollidable(Collidable c) {
+        long handle = track(c, nextOrder++);
+        dynamicShapes.add(c);
+        return handle;
     }
 
     /**
      * Calculates the closest collision for a moving object following a given trajectory.
      * If no collision is detected, returns null.
+     * When two collidables are hit at the same distance, the one added first is returned.
+     * Moving balls use the swept-circle query instead, which accounts for the ball's radius.
+     * With a slab kernel set, the candidates are tested as one batch (see setSlabKernel).
      *
      * @param trajectory the path the object is moving along
      * @return information about the closest collision, or null if no collision is detected
      */
     public CollisionInfo getClosestCollision(Line trajectory) {
-        List<Point> points;
-        Point closest = new Point(-1000, -1000);
+        Point start = trajectory.start();
+        Point end = trajectory.end();
+        candidates.clear();
+        double minX = Math.min(start.getX(), end.getX()) - QUERY_MARGIN;
+        double minY = Math.min(start.getY(), end.getY()) - QUERY_MARGIN;
+        double maxX = Math.max(start.getX(), end.getX()) + QUERY_MARGIN;
+        double maxY = Math.max(start.getY(), end.getY()) + QUERY_MARGIN;
+        if (slabKernel != null) {
+            return getClosestCollision(start, end, minX, minY, maxX, maxY);
+        }
+        tree.query(minX, minY, maxX, maxY, candidates, query.traversal());
+        if (grid != null) {
+            grid.query(minX, minY, maxX, maxY, candidates);
+        }
+        for (int i = 0; i < dynamicShapes.size(); i++) {
+            candidates.add(dynamicShapes.get(i));
+        }
+
+        Point closest = null;
+        double closestDistance = Double.POSITIVE_INFINITY;
         Collidable closestShape = null;
 
-        for (Collidable shape : shapes) {
-            points = shape.getCollisionRectangle().intersectionPoints(trajectory);
-            if (points.isEmpty()) {
+        for (int i = 0; i < candidates.size(); i++) {
+            Collidable shape = candidates.get(i);
+            Point collisionPoint = trajectory.closestIntersectionToStartOfLine(shape.getCollisionRectangle());
+            if (collisionPoint == null) {
                 continue;
-            } else {
-                Point collisionPoint = trajectory.closestIntersectionToStartOfLine(shape.getCollisionRectangle());
-                if (collisionPoint.distance(trajectory.start()) < closest.distance(trajectory.start())) {
-                    closest = collisionPoint;
-                    closestShape = shape;
-                }
+            }
+            double distance = collisionPoint.distance(start);
+            if (distance < closestDistance
+                    || (distance == closestDistance && getRank(shape) < getRank(closestShape))) {
+                closest = collisionPoint;
+                closestDistance = distance;
+                closestShape = shape;
             }
         }
+        candidates.clear();
 
         if (closestShape == null) {
             return null;
@@ -74,12 +311,316 @@ public class GameEnvironment {
         return new CollisionInfo(closest, closestShape);
     }
 
+    /**
+     * Finds the collidable a segment hits first with the slab kernel, testing the candidates in
+     * the given region as one batch.
+     *
+     * @param start the start of the segment
+     * @param end   the end of the segment
+     * @param minX  the smallest x-coordinate of the region
+     * @param minY  the smallest y-coordinate of the region
+     * @param maxX  the largest x-coordinate of the region
+     * @param maxY  the largest y-coordinate of the region
+     * @return information about the closest collision, or null if no collision is detected
+     */
+    private CollisionInfo getClosestCollision(Point start, Point end, double minX, double minY, double maxX,
+                                              double maxY) {
+        BoxBatch batch = query.batch();
+        batch.clear();
+        tree.query(minX, minY, maxX, maxY, batch, query.traversal());
+        if (grid != null) {
+            grid.query(minX, minY, maxX, maxY, batch);
+        }
+        for (int i = 0; i < dynamicShapes.size(); i++) {
+            Collidable shape = dynamicShapes.get(i);
+            Rectangle r = shape.getCollisionRectangle();
+            double x = r.getUpperLeft().getX();
+            double y = r.getUpperLeft().getY();
+            batch.add(shape, getRank(shape), x, y - r.getHeight(), x + r.getWidth(), y);
+        }
+        double dx = end.getX() - start.getX();
+        double dy = end.getY() - start.getY();
+        double t = slabKernel.computeTimes(batch, start.getX(), start.getY(), dx, dy, 0);
+        int closest = batch.closest(t);
+        if (closest < 0) {
+            batch.clear();
+            return null;
+        }
+        Collidable shape = batch.get(closest);
+        batch.clear();
+        return new CollisionInfo(new Point(start.getX() + dx * t, start.getY() + dy * t), shape);
+    }
+
+    /**
+     * Finds the first collidable hit by a circle moving from (x, y) by (dx, dy), using an exact
+     * swept-circle test. The result is written to the given holder, which is left cleared if
+     * nothing is hit. When two collidables are hit at the same time, the one added first wins.
+     *
+     * @param x      the x-coordinate of the circle's center
+     * @param y      the y-coordinate of the circle's center
+     * @param dx     the x-component of the motion
+     * @param dy     the y-component of the motion
+     * @param radius the radius of the circle
+     * @param result the holder the closest hit is written to
+     * @return true if something is hit during the motion, false otherwise
+     */
+    public boolean getClosestCollision(double x, double y, double dx, double dy, double radius, SweepHit result) {
+        return getClosestCollision(x, y, dx, dy, radius, result, this.query);
+    }
+
+    /**
+     * Same as the swept-circle getClosestCollision, but uses the given scratch space.
+     * If the distance field shows that the circle stays clear of every static collidable during
+     * the motion, only the moving collidables are tested, and the scratch space counts the query
+     * as skipped. With a slab kernel set, the static candidates are tested as one batch first
+     * (see setSlabKernel).
+     * The environment itself is only read, so any number of threads may run this at the same
+     * time, each with its own scratch space, as long as no collidable is added or removed.
+     *
+     * @param x       the x-coordinate of the circle's center
+     * @param y       the y-coordinate of the circle's center
+     * @param dx      the x-component of the motion
+     * @param dy      the y-component of the motion
+     * @param radius  the radius of the circle
+     * @param result  the holder the closest hit is written to
+     * @param scratch the scratch space of the calling thread
+     * @return true if something is hit during the motion, false otherwise
+     */
+    public boolean getClosestCollision(double x, double y, double dx, double dy, double radius, SweepHit result,
+                                       CollisionQuery scratch) {
+        SweepHit test = scratch.hit();
+        result.clear();
+        int rank = -1;
+        for (int i = 0; i < dynamicShapes.size(); i++) {
+            Collidable shape = dynamicShapes.get(i);
+            Rectangle r = shape.getCollisionRectangle();
+            double minX = r.getUpperLeft().getX();
+            double maxY = r.getUpperLeft().getY();
+            if (SweptCircle.sweep(x, y, dx, dy, radius, minX, maxY - r.getHeight(), minX + r.getWidth(), maxY,
+                    test) && (test.time() < result.time() || (test.time() == result.time()
+                    && getRank(shape) < rank))) {
+                result.set(test);
+                result.setCollidable(shape);
+                rank = getRank(shape);
+            }
+        }
+        if (field != null && Math.sqrt(dx * dx + dy * dy) + radius + QUERY_MARGIN < field.clearance(x, y)) {
+            scratch.countSkipped();
+            return result.isHit();
+        }
+        if (slabKernel != null) {
+            double reach = radius + QUERY_MARGIN;
+            double minX = Math.min(x, x + dx) - reach;
+            double minY = Math.min(y, y + dy) - reach;
+            double maxX = Math.max(x, x + dx) + reach;
+            double maxY = Math.max(y, y + dy) + reach;
+            BoxBatch batch = scratch.batch();
+            batch.clear();
+            tree.query(minX, minY, maxX, maxY, batch, scratch.traversal());
+            if (grid != null) {
+                grid.query(minX, minY, maxX, maxY, batch);
+            }
+            slabKernel.computeTimes(batch, x, y, dx, dy, reach);
+            batch.sweep(x, y, dx, dy, radius, reach, result, rank, test);
+            batch.clear();
+            return result.isHit();
+        }
+        rank = tree.sweep(x, y, dx, dy, radius, QUERY_MARGIN, result, rank, scratch.traversal());
+        if (grid != null) {
+            grid.sweep(x, y, dx, dy, radius, QUERY_MARGIN, result, rank, test);
+        }
+        return result.isHit();
+    }
+
+    /**
+     * Checks if a collidable is in the environment.
+     *
+     * @param c the collidable to check
+     * @return true if the collidable is in the environment, false otherwise
+     */
+    public boolean contains(Collidable c) {
+        return ids.containsKey(c) || (grid != null && grid.cellOf(c) >= 0);
+    }
+
+    /**
+     * Returns the number of collidables added to the environment so far.
+     * Comparing two readings tells whether a collidable was added in between.
+     *
+     * @return the number of additions
+     */
+    public int getAdditions() {
+        return nextOrder;
+    }
+
     /**
      * Removes a collidable from the environment.
      *
      * @param c the collidable to remove
      */
     public void removeCollidable(Collidable c) {
-        shapes.remove(c);
+        int id = ids.remove(c);
+        if (id < 0) {
+            int cell = grid == null ? -1 : grid.cellOf(c);
+            if (cell >= 0) {
+                grid.getBox(cell, box);
+                grid.remove(cell);
+                if (field != null) {
+                    field.remove(box[0], box[1], box[2], box[3]);
+                }
+            }
+            return;
+        }
+        shapes.remove(shapes.handle(id));
+        // nothing iterates over the shapes, so their tombstones can be dropped at any time
+        shapes.compact();
+        if (cells[id] >= 0) {
+            grid.getBox(cells[id], box);
+            grid.remove(cells[id]);
+        } else if (dynamicShapes.remove(c) || !tree.getBox(c, box)) {
+            return;
+        } else {
+            tree.remove(c);
+        }
+        if (field != null) {
+            field.remove(box[0], box[1], box[2], box[3]);
+        }
+    }
+
+    /**
+     * Removes a collidable from the environment by its handle.
+     *
+     * @param handle the handle the collidable was added with
+     */
+    public void removeCollidable(long handle) {
+        Collidable c = shapes.get(handle);
+        if (c != null) {
+            removeCollidable(c);
+        }
+    }
+
+    /**
+     * Makes room for the given number of collidables in all, so a large level can be added
+     * without growing anything along the way.
+     *
+     * @param collidables the number of collidables
+     */
+    public void ensureCapacity(int collidables) {
+        ids.ensureCapacity(collidables);
+        shapes.ensureCapacity(collidables);
+        if (collidables > ranks.length) {
+            ranks = Arrays.copyOf(ranks, collidables);
+            cells = Arrays.copyOf(cells, collidables);
+        }
+        tree.ensureCapacity(collidables);
+    }
+
+    /**
+     * Makes the static collidables added from now on skip the hierarchy until the next build.
+     * Queries do not see them before then, so this is meant for setting up a level: adding a
+     * large level's collidables this way and building once is much faster than indexing them
+     * one by one.
+     */
+    public void deferIndexing() {
+        deferred = true;
+        if (field != null) {
+            field.invalidate();
+        }
+    }
+
+    /**
+     * Rebuilds the hierarchy of static collidables into a balanced tree, including the
+     * collidables whose indexing was deferred. Collidables may still be added and removed
+     * afterwards, but a level is best set up by adding all its collidables first and building once.
+     */
+    public void build() {
+        tree.build();
+        if (field != null) {
+            field.build();
+        }
+        deferred = false;
+    }
+
+    /**
+     * Adds a collidable to the list of shapes and records its rank.
+     *
+     * @param c    the collidable
+     * @param rank the collidable's rank
+     * @return the collidable's handle
+     */
+    private long track(Collidable c, int rank) {
+        long handle = shapes.add(c);
+        int id = HandleList.id(handle);
+        if (id >= ranks.length) {
+            ranks = Arrays.copyOf(ranks, Math.max(2 * ranks.length, id + 1));
+            cells = Arrays.copyOf(cells, ranks.length);
+        }
+        ranks[id] = rank;
+        cells[id] = -1;
+        ids.put(c, id);
+        return handle;
+    }
+
+    /**
+     * Adds a block of a store with the given rank: by its index in an empty cell of the brick
+     * grid if its rectangle lies within one, or like restoreCollidable otherwise.
+     *
+     * @param store the store of the block
+     * @param i     the index of the block in the store
+     * @param rank  the block's rank
+     */
+    private void addBlock(BlockStore store, int i, int rank) {
+        double minX = store.getX(i);
+        double maxY = store.getY(i);
+        double maxX = minX + store.getWidth(i);
+        double minY = maxY - store.getHeight(i);
+        int cell = grid == null ? -1 : grid.cellContaining(minX, minY, maxX, maxY);
+        if (cell < 0 || grid.isOccupied(cell) || !grid.acceptsBlocksOf(store)) {
+            track(store.get(i), rank);
+            index(store.get(i), rank, minX, minY, maxX, maxY);
+            return;
+        }
+        grid.addBlock(cell, store, i, rank);
+        if (field != null) {
+            field.add(minX, minY, maxX, maxY);
+        }
+    }
+
+    /**
+     * Registers a static collidable, in the brick grid or in the hierarchy.
+     *
+     * @param c    the collidable to register
+     * @param rank the collidable's rank
+     */
+    private void index(Collidable c, int rank) {
+        Rectangle r = c.getCollisionRectangle();
+        Point upperLeft = r.getUpperLeft();
+        index(c, rank, upperLeft.getX(), upperLeft.getY() - r.getHeight(), upperLeft.getX() + r.getWidth(),
+                upperLeft.getY());
+    }
+
+    /**
+     * Registers a static collidable with the given box in the brick grid, if the box is an empty
+     * cell of the grid, or in the hierarchy otherwise, and in the distance field.
+     *
+     * @param c    the collidable to register
+     * @param rank the collidable's rank
+     * @param minX the smallest x-coordinate of the box
+     * @param minY the smallest y-coordinate of the box
+     * @param maxX the largest x-coordinate of the box
+     * @param maxY the largest y-coordinate of the box
+     */
+    private void index(Collidable c, int rank, double minX, double minY, double maxX, double maxY) {
+        if (field != null) {
+            field.add(minX, minY, maxX, maxY);
+        }
+        int cell = grid == null ? -1 : grid.cellOf(minX, minY, maxX, maxY);
+        if (cell >= 0 && !grid.isOccupied(cell)) {
+            grid.add(cell, c, rank);
+            cells[ids.get(c)] = cell;
+        } else if (deferred) {
+            tree.add(c, rank, minX, minY, maxX, maxY);
+        } else {
+            tree.insert(c, rank, minX, minY, maxX, maxY);
+        }
     }
 }
@@ -0,0 +1,71 @@
+/**
+ * The outcome of one game played by a SimulationHost.
+ */
+public class GameResult {
+
+    private final int score;
+    private final long ticks;
+    private final int blocksLeft;
+    private final int ballsLost;
+
+    /**
+     * Constructs the outcome of a game.
+     *
+     * @param score      the final score
+     * @param ticks      the number of ticks the game ran
+     * @param blocksLeft the number of blocks left at the end
+     * @param ballsLost  the number of balls lost during the game
+     */
+    public GameResult(int score, long ticks, int blocksLeft, int ballsLost) {
+        this.score = score;
+        this.ticks = ticks;
+        this.blocksLeft = blocksLeft;
+        this.ballsLost = ballsLost;
+    }
+
+    /**
+     * Returns the final score.
+     *
+     * @return the score
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the number of ticks the game ran, which for a cleared game is the number of ticks
+     * it took to clear it.
+     *
+     * @return the number of ticks
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Returns the number of blocks left at the end of the game.
+     *
+     * @return the number of blocks left
+     */
+    public int getBlocksLeft() {
+        return blocksLeft;
+    }
+
+    /**
+     * Returns the number of balls lost during the game.
+     *
+     * @return the number of balls lost
+     */
+    public int getBallsLost() {
+        return ballsLost;
+    }
+
+    /**
+     * Checks whether all the blocks were cleared.
+     *
+     * @return true if the game was cleared, false otherwise
+     */
+    public boolean isCleared() {
+        return blocksLeft == 0;
+    }
+}
@@ -0,0 +1,320 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A list that hands out a handle for every element added to it, so the element can later be
+ * removed in constant time, without searching for it or shifting the elements after it.
+ * <p>
+ * The elements are kept in slots, in the order they were added. Removing an element only leaves
+ * a tombstone (a null) in its slot, so the slots of the other elements do not change and a pass
+ * over the slots may remove elements, even the one it is visiting, and still visit every other
+ * element once. The tombstones are dropped by compact, which the owner of the list calls before
+ * a pass; it only does the work once at least half of the slots are tombstones, so the cost of
+ * a removal stays constant on average.
+ * <p>
+ * A handle names the element's id, which stays the same when compacting moves the element to
+ * another slot, and the generation of the id: ids are reused by later elements, and each reuse
+ * starts a new generation, so a handle of a removed element never names another element.
+ *
+ * @param <T> the type of the elements
+ */
+public class HandleList<T> {
+
+    /**
+     * A handle that names no element.
+     */
+    public static final long NONE = -1L;
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int NO_ID = -1;
+
+    private Object[] items;
+    private int[] idOfSlot;
+    private int[] slotOfId;
+    private int[] generation;
+    private int slots;
+    private int size;
+    private int ids;
+    private int freeId = NO_ID;
+
+    /**
+     * Constructs an empty list.
+     */
+    public HandleList() {
+        this.items = new Object[INITIAL_CAPACITY];
+        this.idOfSlot = new int[INITIAL_CAPACITY];
+        this.slotOfId = new int[INITIAL_CAPACITY];
+        this.generation = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Returns the id a handle names. Ids are small non-negative ints, so they can index arrays
+     * kept alongside the list.
+     *
+     * @param handle a handle returned by add
+     * @return the id of the handle's element
+     */
+    public static int id(long handle) {
+        return (int) handle;
+    }
+
+    /**
+     * Adds an element at the end of the list.
+     *
+     * @param item the element, not null
+     * @return the element's handle
+     */
+    public long add(T item) {
+        if (slots == items.length) {
+            growSlots(2 * slots);
+        }
+        int id = freeId;
+        if (id != NO_ID) {
+            freeId = nextFreeId(id);
+        } else {
+            if (ids == slotOfId.length) {
+                growIds(2 * ids);
+            }
+            id = ids++;
+        }
+        items[slots] = item;
+        idOfSlot[slots] = id;
+        slotOfId[id] = slots;
+        slots++;
+        size++;
+        return handle(id);
+    }
+
+    /**
+     * Removes an element.
+     *
+     * @param handle the element's handle
+     * @return the removed element, or null if the handle names no element of the list
+     */
+    public T remove(long handle) {
+        int slot = slotOf(handle);
+        if (slot < 0) {
+            return null;
+        }
+        T item = elementAt(slot);
+        int id = id(handle);
+        items[slot] = null;
+        idOfSlot[slot] = NO_ID;
+        generation[id] = (generation[id] + 1) & Integer.MAX_VALUE;
+        // a free id's slot holds the next free id, encoded as a negative number
+        slotOfId[id] = -2 - freeId;
+        freeId = id;
+        size--;
+        return item;
+    }
+
+    /**
+     * Returns the element a handle names.
+     *
+     * @param handle the element's handle
+     * @return the element, or null if the handle names no element of the list
+     */
+    public T get(long handle) {
+        int slot = slotOf(handle);
+        return slot < 0 ? null : elementAt(slot);
+    }
+
+    /**
+     * Checks whether a handle names an element of the list.
+     *
+     * @param handle the handle
+     * @return true if the handle's element is in the list, false if it was removed
+     */
+    public boolean contains(long handle) {
+        return slotOf(handle) >= 0;
+    }
+
+    /**
+     * Returns the handle of the element that has an id.
+     *
+     * @param id the id
+     * @return the handle, or NONE if no element has the id
+     */
+    public long handle(int id) {
+        if (id < 0 || id >= ids || slotOfId[id] < 0) {
+            return NONE;
+        }
+        return ((long) generation[id] << 32) | id;
+    }
+
+    /**
+     * Finds an element by searching the list, for callers that did not keep its handle.
+     * Unlike the other operations this takes time proportional to the number of slots.
+     *
+     * @param item the element to find, compared with equals
+     * @return the handle of the first slot holding the element, or NONE if it is not in the list
+     */
+    public long find(Object item) {
+        for (int slot = 0; slot < slots; slot++) {
+            if (items[slot] != null && items[slot].equals(item)) {
+                return handle(idOfSlot[slot]);
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Returns the number of elements.
+     *
+     * @return the number of elements
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of slots, which is the number of elements plus the number of tombstones.
+     * A pass over the list visits the slots up to this number, reading it again after every
+     * slot, so it also visits the elements added during the pass.
+     *
+     * @return the number of slots
+     */
+    public int slotCount() {
+        return slots;
+    }
+
+    /**
+     * Returns the element in a slot.
+     *
+     * @param slot the slot, less than slotCount
+     * @return the element, or null if the slot is a tombstone
+     */
+    public T atSlot(int slot) {
+        return elementAt(slot);
+    }
+
+    /**
+     * Returns the id of the element in a slot.
+     *
+     * @param slot the slot, less than slotCount
+     * @return the id, or -1 if the slot is a tombstone
+     */
+    public int idAtSlot(int slot) {
+        return idOfSlot[slot];
+    }
+
+    /**
+     * Returns the slot of the element that has an id, the inverse of idAtSlot.
+     *
+     * @param id the id
+     * @return the slot, or -1 if no element has the id
+     */
+    public int slotWithId(int id) {
+        if (id < 0 || id >= ids || slotOfId[id] < 0) {
+            return -1;
+        }
+        return slotOfId[id];
+    }
+
+    /**
+     * Returns the elements, in order, in a new list.
+     *
+     * @return the elements
+     */
+    public List<T> toList() {
+        List<T> list = new ArrayList<>(size);
+        for (int slot = 0; slot < slots; slot++) {
+            if (items[slot] != null) {
+                list.add(elementAt(slot));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Makes room for the given number of elements in all, so adding them grows nothing.
+     *
+     * @param capacity the number of elements
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > items.length) {
+            growSlots(capacity);
+        }
+        if (capacity > slotOfId.length) {
+            growIds(capacity);
+        }
+    }
+
+    /**
+     * Drops the tombstones, moving the elements down to the first slots while keeping their order,
+     * if at least half of the slots are tombstones. Handles stay valid. Must not be called during
+     * a pass over the slots.
+     */
+    public void compact() {
+        if (2 * (slots - size) < slots || slots == size) {
+            return;
+        }
+        int j = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            if (items[slot] != null) {
+                items[j] = items[slot];
+                idOfSlot[j] = idOfSlot[slot];
+                slotOfId[idOfSlot[j]] = j;
+                j++;
+            }
+        }
+        Arrays.fill(items, j, slots, null);
+        slots = j;
+    }
+
+    /**
+     * Returns the slot of the element a handle names.
+     *
+     * @param handle the handle
+     * @return the slot, or -1 if the handle names no element of the list
+     */
+    private int slotOf(long handle) {
+        int id = id(handle);
+        if (handle < 0 || id >= ids || generation[id] != (int) (handle >>> 32) || slotOfId[id] < 0) {
+            return -1;
+        }
+        return slotOfId[id];
+    }
+
+    /**
+     * Returns the next id of the list of free ids.
+     *
+     * @param id a free id
+     * @return the free id after it, or NO_ID if it is the last one
+     */
+    private int nextFreeId(int id) {
+        return -2 - slotOfId[id];
+    }
+
+    /**
+     * Returns the element in a slot, with its type.
+     *
+     * @param slot the slot
+     * @return the element, or null for a tombstone
+     */
+    @SuppressWarnings("unchecked")
+    private T elementAt(int slot) {
+        return (T) items[slot];
+    }
+
+    /**
+     * Grows the arrays indexed by slot.
+     *
+     * @param capacity the new number of slots
+     */
+    private void growSlots(int capacity) {
+        items = Arrays.copyOf(items, capacity);
+        idOfSlot = Arrays.copyOf(idOfSlot, capacity);
+    }
+
+    /**
+     * Grows the arrays indexed by id.
+     *
+     * @param capacity the new number of ids
+     */
+    private void growIds(int capacity) {
+        slotOfId = Arrays.copyOf(slotOfId, capacity);
+        generation = Arrays.copyOf(generation, capacity);
+    }
+}
@@ -0,0 +1,327 @@
+import biuoop.KeyboardSensor;
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Runs the game without a window, as fast as possible, and reports the simulation speed.
+ * Usage: HeadlessGame [ticks] [--draw] [--balls count] [--ball-collisions] [--threads count]
+ *        [--slab-kernel] [--tick-rate steps] [--uncached] [--unbatched] [--level file]
+ *        [--record file | --replay file] [--load file] [--save file] [--check-allocations]
+ *    or: HeadlessGame [ticks] --games count [--balls count] [--ball-collisions] [--level file]
+ *    or: HeadlessGame --write-level file blocks
+ * The second form plays a batch of games at the same time on a SimulationHost, each with its own
+ * seed for the extra balls and the balls' colors, and prints a summary of their outcomes.
+ * The third form writes a level file with a lattice of the given number of blocks, for trying
+ * out large levels with --level.
+ * With --record, the run's input and the world's checksum after every step are written to an
+ * input log. With --replay, the input of an input log (recorded here or by Ass3Game --record)
+ * is played back for as many steps as it holds, and the program exits with status 1 if the world
+ * ever differs from the recording. The other options must match the recorded run's.
+ * With --load, the run starts from a world snapshot saved by --save at the end of an earlier run
+ * of the same level, so two builds can be compared from exactly the same state.
+ * With --check-allocations, the ticks after a warm-up must not allocate any memory, or the
+ * program exits with status 1. The check should run with -Xbatch (see the check-allocations
+ * target of build.xml), since a background JIT compilation may allocate on the game's thread.
+ */
+public class HeadlessGame {
+
+    private static final long WARM_UP_TICKS = 20000;
+
+    /**
+     * The main method to run the game headless.
+     *
+     * @param args the maximal number of ticks, --draw to also run the drawing code, and --balls to add
+     *             extra random balls, --ball-collisions to make the balls bounce off each other,
+     *             --threads to query the balls' trajectories in parallel, --slab-kernel to test
+     *             the static collidables near each trajectory as one batch with the fastest slab
+     *             kernel the runtime supports,
+     *             --tick-rate to set the simulation steps per second of game time (60 by default),
+     *             --uncached to draw the static sprites one by one every tick instead of from the
+     *             cached layer, --unbatched to make the drawing calls in sprite order instead of
+     *             grouped by color, --level to play the blocks of a level file, --record to
+     *             record the input in an input log, --replay to play back an input log, --load
+     *             to start from a saved world snapshot, --save to save the world at the end, and
+     *             --check-allocations to check that the steady-state ticks allocate nothing;
+     *             or --games to play a batch of games, or --write-level to write a level file
+     * @throws IOException if a level file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("--write-level")) {
+            writeLevel(Paths.get(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+
+        long maxTicks = 100000;
+        boolean draw = false;
+        int extraBalls = 0;
+        int threads = 1;
+        boolean slabKernel = false;
+        int tickRate = 0;
+        boolean ballCollisions = false;
+        int games = 0;
+        boolean checkAllocations = false;
+        boolean cached = true;
+        boolean batched = true;
+        LevelFile level = null;
+        Path record = null;
+        InputLog replay = null;
+        WorldSnapshot load = null;
+        Path save = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--draw")) {
+                draw = true;
+            } else if (args[i].equals("--uncached")) {
+                cached = false;
+            } else if (args[i].equals("--unbatched")) {
+                batched = false;
+            } else if (args[i].equals("--check-allocations")) {
+                checkAllocations = true;
+            } else if (args[i].equals("--level")) {
+                level = LevelFile.open(Paths.get(args[++i]));
+            } else if (args[i].equals("--record")) {
+                record = Paths.get(args[++i]);
+            } else if (args[i].equals("--replay")) {
+                replay = InputLog.read(Paths.get(args[++i]));
+            } else if (args[i].equals("--load")) {
+                load = WorldSnapshot.read(Paths.get(args[++i]));
+            } else if (args[i].equals("--save")) {
+                save = Paths.get(args[++i]);
+            } else if (args[i].equals("--games")) {
+                games = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--ball-collisions")) {
+                ballCollisions = true;
+            } else if (args[i].equals("--tick-rate")) {
+                tickRate = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--slab-kernel")) {
+                slabKernel = true;
+            } else if (args[i].equals("--balls")) {
+                extraBalls = Integer.parseInt(args[++i]);
+            } else {
+                maxTicks = Long.parseLong(args[i]);
+            }
+        }
+
+        if (games > 0) {
+            playBatch(games, level, extraBalls, ballCollisions, maxTicks);
+            return;
+        }
+
+        if (checkAllocations) {
+            // games are played first until the JIT compiler has seen enough ticks to settle, since
+            // compiling a method can allocate on the thread that triggered the compilation
+            long warmUp = 0;
+            while (warmUp < WARM_UP_TICKS) {
+                try (Game game = newGame(level, extraBalls, threads, slabKernel)) {
+                    warmUp += game.runHeadless(new HeadlessKeyboard(), null, maxTicks);
+                }
+            }
+            boolean clean;
+            try (Game game = newGame(level, extraBalls, threads, slabKernel)) {
+                clean = checkAllocations(game, maxTicks);
+            }
+            System.exit(clean ? 0 : 1);
+        }
+
+        long loadStart = System.nanoTime();
+        Game game = newGame(level, extraBalls, threads, slabKernel);
+        if (level != null) {
+            System.out.printf("level: %d blocks%s, set up in %.3f s%n", level.size(),
+                    level.hasLattice() ? " on a lattice" : "", (System.nanoTime() - loadStart) / 1e9);
+        }
+        if (slabKernel) {
+            System.out.println("slab kernel: " + SlabKernels.fastest().getClass().getSimpleName());
+        }
+        game.setBallCollisions(ballCollisions);
+        if (tickRate > 0) {
+            game.setTickRate(tickRate);
+        }
+        game.setStaticLayerCached(cached);
+        game.setDrawBatched(batched);
+        NullDrawSurface surface = draw ? new NullDrawSurface((int) Game.WIDTH, (int) Game.HEIGHT) : null;
+
+        KeyboardSensor keyboard = new HeadlessKeyboard();
+        InputLog recording = null;
+        if (record != null) {
+            recording = new InputLog();
+            keyboard = new InputRecorder(keyboard, recording);
+        } else if (replay != null) {
+            keyboard = new InputReplay(replay);
+            maxTicks = replay.size();
+        }
+
+        if (load != null) {
+            // no steps are run, this only creates the paddle, which the snapshot restores as well
+            game.runHeadless(keyboard, null, 0);
+            game.restore(load);
+        }
+        if (recording != null) {
+            recording.setRandomState(game.getRandomState());
+        } else if (replay != null) {
+            game.setRandomState(replay.getRandomState());
+        }
+
+        long start = System.nanoTime();
+        long ticks = game.runHeadless(keyboard, surface, maxTicks);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        game.close();
+
+        System.out.printf("ticks: %d, time: %.3f s, ticks/second: %.0f%n", ticks, seconds, ticks / seconds);
+        System.out.printf("score: %d, blocks left: %d, balls left: %d%n",
+                game.getScore(), game.getRemainingBlocks(), game.getRemainingBalls());
+        System.out.println("counters: " + game.getCounters());
+        long queries = game.getCounters().counter("collisions tested").getLongValue();
+        if (queries > 0) {
+            System.out.printf("queries skipped by the distance field: %.1f%%%n",
+                    100.0 * game.getCounters().counter("queries skipped").getLongValue() / queries);
+        }
+        if (surface != null) {
+            System.out.printf("drawing calls per tick: %.1f%n", (double) surface.getCalls() / ticks);
+        }
+        game.getFrameTimings().print(System.out);
+
+        if (save != null) {
+            WorldSnapshot snapshot = new WorldSnapshot();
+            game.capture(snapshot);
+            snapshot.write(save);
+            System.out.printf("saved the world to %s (%d bytes)%n", save, snapshot.size());
+        }
+        if (recording != null) {
+            recording.write(record);
+            System.out.printf("recorded %d steps to %s%n", recording.size(), record);
+        } else if (replay != null) {
+            InputReplay player = (InputReplay) keyboard;
+            if (player.isFaithful()) {
+                System.out.printf("replay: all %d steps matched the recording%n", player.getTicks());
+            } else {
+                int mismatch = player.getFirstMismatch() >= 0 ? player.getFirstMismatch() : player.getTicks();
+                System.out.printf("replay: diverged from the recording at step %d of %d%n", mismatch, replay.size());
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Creates a game driven by a virtual clock.
+     *
+     * @param level      the level whose blocks to play, or null for the default blocks
+     * @param extraBalls the number of extra random balls
+     * @param threads    the number of threads the trajectory queries run on
+     * @param slabKernel true to test the trajectories' static candidates with the fastest slab kernel
+     * @return the initialized game
+     */
+    private static Game newGame(LevelFile level, int extraBalls, int threads, boolean slabKernel) {
+        Game game = new Game();
+        game.setClock(new VirtualClock());
+        game.initialize(level);
+        game.spawnBalls(extraBalls, 1);
+        game.setThreads(threads);
+        if (slabKernel) {
+            game.setSlabKernel(SlabKernels.fastest());
+        }
+        return game;
+    }
+
+    /**
+     * Plays a batch of games on a simulation host and prints a summary of their outcomes.
+     *
+     * @param games          the number of games
+     * @param level          the level whose blocks to play, or null for the default blocks
+     * @param extraBalls     the number of extra random balls of each game
+     * @param ballCollisions true to make the balls bounce off each other
+     * @param maxTicks       the maximal number of ticks of each game
+     */
+    private static void playBatch(int games, LevelFile level, int extraBalls, boolean ballCollisions, long maxTicks) {
+        try (SimulationHost host = new SimulationHost()) {
+            long start = System.nanoTime();
+            List<GameResult> results = host.play(games, index -> {
+                Game game = new Game();
+                game.initialize(level);
+                game.spawnBalls(extraBalls, index + 1);
+                game.setSeed(index + 1);
+                game.setBallCollisions(ballCollisions);
+                return game;
+            }, maxTicks);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            SimulationSummary summary = new SimulationSummary(results);
+            System.out.printf("%d games on %s in %.3f s: %.0f games/second, %.0f ticks/second%n", games,
+                    host.usesVirtualThreads() ? "virtual threads" : "a fork-join pool", seconds, games / seconds,
+                    summary.getTotalTicks() / seconds);
+            System.out.println(summary);
+        }
+    }
+
+    /**
+     * Runs a game for a number of warm-up ticks, then checks that the steady-state ticks allocate
+     * no memory on the game's thread. A tick is in steady state when no ball and no block is
+     * removed during it; removals are allowed to allocate, like spawns. Drawing is skipped,
+     * since only the simulation is checked. With more than one thread the fork-join tasks that
+     * split the queries are allocated every tick, so the check is meant for a single thread.
+     *
+     * @param game     an initialized game
+     * @param maxTicks the total number of ticks to run, the first fifth being the warm-up
+     * @return true if the steady-state ticks allocated nothing, false otherwise
+     */
+    private static boolean checkAllocations(Game game, long maxTicks) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        HeadlessKeyboard keyboard = new HeadlessKeyboard();
+
+        long ticks = game.runHeadless(keyboard, null, maxTicks / 5);
+        // the reading itself may allocate, so measure it and subtract it
+        long overhead = -threads.getCurrentThreadAllocatedBytes() + threads.getCurrentThreadAllocatedBytes();
+        long steadyTicks = 0;
+        long allocated = 0;
+        while (ticks < maxTicks && !game.isOver()) {
+            int blocks = game.getRemainingBlocks();
+            int balls = game.getRemainingBalls();
+            long before = threads.getCurrentThreadAllocatedBytes();
+            ticks += game.runHeadless(keyboard, null, 1);
+            long after = threads.getCurrentThreadAllocatedBytes();
+            if (blocks == game.getRemainingBlocks() && balls == game.getRemainingBalls()) {
+                steadyTicks++;
+                allocated += after - before - overhead;
+            }
+        }
+
+        System.out.printf("steady-state ticks: %d, allocated: %d bytes, balls left: %d%n",
+                steadyTicks, allocated, game.getRemainingBalls());
+        return allocated <= 0;
+    }
+
+    /**
+     * Writes a level file with a lattice of breakable blocks filling the area above the balls,
+     * between the walls. Each row of blocks has its own color. The lattice is declared in the
+     * file, so the game keeps the blocks in a brick grid.
+     *
+     * @param file   the level file
+     * @param blocks the number of blocks
+     * @throws IOException if the file cannot be written
+     */
+    private static void writeLevel(Path file, int blocks) throws IOException {
+        Color[] palette = {Color.BLUE, Color.RED, Color.ORANGE, Color.YELLOW, Color.GREEN, Color.PINK};
+        double left = 30;
+        double top = 40;
+        double width = Game.WIDTH - 60;
+        double height = 200;
+        int columns = (int) Math.ceil(Math.sqrt(blocks * width / height));
+        int rows = (int) Math.ceil((double) blocks / columns);
+        double cellWidth = width / columns;
+        double cellHeight = height / rows;
+        try (LevelFile.Writer writer = new LevelFile.Writer(file, palette)) {
+            writer.setLattice(left, top, cellWidth, cellHeight, columns, rows);
+            for (int i = 0; i < blocks; i++) {
+                int row = i / columns;
+                int column = i % columns;
+                // a Rectangle's upper-left point has the larger y-coordinate
+                writer.add(left + column * cellWidth, top + (row + 1) * cellHeight, cellWidth * 0.8,
+                        cellHeight * 0.8, row % palette.length, LevelFile.BREAKABLE);
+            }
+        }
+        System.out.printf("wrote %d blocks to %s%n", blocks, file);
+    }
+}
@@ -0,0 +1,48 @@
+import biuoop.KeyboardSensor;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A KeyboardSensor that is not connected to a real keyboard.
+ * Keys are pressed and released by code, which lets the game run without a window.
+ */
+public class HeadlessKeyboard implements KeyboardSensor {
+
+    private Set<String> pressed;
+
+    /**
+     * Constructs a keyboard with no keys pressed.
+     */
+    public HeadlessKeyboard() {
+        this.pressed = new HashSet<>();
+    }
+
+    /**
+     * Presses a key until it is released.
+     *
+     * @param key the key to press
+     */
+    public void press(String key) {
+        pressed.add(key);
+    }
+
+    /**
+     * Releases a key.
+     *
+     * @param key the key to release
+     */
+    public void release(String key) {
+        pressed.remove(key);
+    }
+
+    /**
+     * Checks if a key is currently pressed.
+     *
+     * @param key the key to check
+     * @return true if the key is pressed, false otherwise
+     */
+    @Override
+    public boolean isPressed(String key) {
+        return pressed.contains(key);
+    }
+}
@@ -0,0 +1,106 @@
+import java.util.Arrays;
+
+/**
+ * Collects the hits that happen during a game tick, to be handed to the blocks' hit listeners
+ * together once the balls have moved. Listeners may then remove blocks and balls freely, since
+ * nothing is iterating over them anymore.
+ * <p>
+ * A hit is kept as the block, the ball and the collision point, in parallel arrays that grow as
+ * needed and are reused by the next tick, so recording a hit allocates nothing.
+ */
+public class HitEventBuffer {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Game game;
+    private int size;
+    private Block[] blocks = new Block[INITIAL_CAPACITY];
+    private Ball[] balls = new Ball[INITIAL_CAPACITY];
+    private double[] pointX = new double[INITIAL_CAPACITY];
+    private double[] pointY = new double[INITIAL_CAPACITY];
+
+    /**
+     * Constructs an empty buffer for the hits of the given game.
+     *
+     * @param game the game whose blocks and balls the hits refer to
+     */
+    public HitEventBuffer(Game game) {
+        this.game = game;
+    }
+
+    /**
+     * Records a hit.
+     *
+     * @param block the block that was hit
+     * @param ball  the ball that hit it
+     * @param x     the x-coordinate of the collision point
+     * @param y     the y-coordinate of the collision point
+     */
+    public void add(Block block, Ball ball, double x, double y) {
+        if (size == blocks.length) {
+            int capacity = size * 2;
+            blocks = Arrays.copyOf(blocks, capacity);
+            balls = Arrays.copyOf(balls, capacity);
+            pointX = Arrays.copyOf(pointX, capacity);
+            pointY = Arrays.copyOf(pointY, capacity);
+        }
+        blocks[size] = block;
+        balls[size] = ball;
+        pointX[size] = x;
+        pointY[size] = y;
+        size++;
+    }
+
+    /**
+     * Returns the number of hits waiting to be delivered.
+     *
+     * @return the number of hits
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the x-coordinate of the collision point of a waiting hit.
+     *
+     * @param i the index of the hit, in the order the hits happened
+     * @return the x-coordinate
+     */
+    public double pointX(int i) {
+        return pointX[i];
+    }
+
+    /**
+     * Returns the y-coordinate of the collision point of a waiting hit.
+     *
+     * @param i the index of the hit, in the order the hits happened
+     * @return the y-coordinate
+     */
+    public double pointY(int i) {
+        return pointY[i];
+    }
+
+    /**
+     * Delivers the recorded hits to their blocks in the order they happened, then empties the
+     * buffer. A hit whose block or ball was removed from the game by an earlier hit of the same
+     * tick is dropped, so a block that several balls hit in the same tick is only removed and
+     * scored once.
+     *
+     * @return the number of hits that were delivered
+     */
+    public int dispatch() {
+        int delivered = 0;
+        for (int i = 0; i < size; i++) {
+            Block block = blocks[i];
+            Ball ball = balls[i];
+            blocks[i] = null;
+            balls[i] = null;
+            if (game.contains(block) && game.contains(ball)) {
+                block.deliverHit(ball);
+                delivered++;
+            }
+        }
+        size = 0;
+        return delivered;
+    }
+}
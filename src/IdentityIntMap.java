@@ -0,0 +1,167 @@
+/**
+ * A map from objects, compared by identity, to non-negative ints. Unlike an IdentityHashMap of
+ * Integers it boxes nothing, so a level's worth of entries costs two arrays and no objects.
+ * It uses open addressing with linear probing, and removals shift the following entries back
+ * so no deleted markers are left behind.
+ *
+ * @param <K> the type of the keys
+ */
+public class IdentityIntMap<K> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Object[] keys;
+    private int[] values;
+    private int size;
+
+    /**
+     * Constructs an empty map.
+     */
+    public IdentityIntMap() {
+        this.keys = new Object[INITIAL_CAPACITY];
+        this.values = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Makes room for the given number of entries in all, so adding them resizes nothing.
+     *
+     * @param entries the number of entries
+     */
+    public void ensureCapacity(int entries) {
+        int capacity = keys.length;
+        while (capacity < 2 * entries) {
+            capacity *= 2;
+        }
+        if (capacity > keys.length) {
+            resize(capacity);
+        }
+    }
+
+    /**
+     * Returns the value of a key.
+     *
+     * @param key the key
+     * @return the key's value, or -1 if the key is not in the map
+     */
+    public int get(K key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); keys[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks whether a key is in the map.
+     *
+     * @param key the key
+     * @return true if the key is in the map, false otherwise
+     */
+    public boolean containsKey(K key) {
+        return get(key) >= 0;
+    }
+
+    /**
+     * Sets the value of a key, adding the key if it is not in the map.
+     *
+     * @param key   the key, not null
+     * @param value the value, not negative
+     */
+    public void put(K key, int value) {
+        if (2 * (size + 1) > keys.length) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (keys[i] != null) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+    }
+
+    /**
+     * Removes a key from the map.
+     *
+     * @param key the key
+     * @return the key's value, or -1 if the key was not in the map
+     */
+    public int remove(K key) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (keys[i] != key) {
+            if (keys[i] == null) {
+                return -1;
+            }
+            i = (i + 1) & mask;
+        }
+        int value = values[i];
+        // move back every following entry of the run that may no longer be reached from its slot
+        int hole = i;
+        int j = (i + 1) & mask;
+        while (keys[j] != null) {
+            int home = slot(keys[j], mask);
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+            j = (j + 1) & mask;
+        }
+        keys[hole] = null;
+        size--;
+        return value;
+    }
+
+    /**
+     * Returns the slot a key's probing starts from.
+     *
+     * @param key  the key
+     * @param mask the number of slots minus one
+     * @return the slot
+     */
+    private static int slot(Object key, int mask) {
+        // mix the bits, so keys with close hash codes do not end up in runs of neighboring slots
+        int h = System.identityHashCode(key) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Moves every entry into new arrays of the given size.
+     *
+     * @param capacity the new number of slots, a power of two
+     */
+    private void resize(int capacity) {
+        Object[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new Object[capacity];
+        values = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int j = slot(oldKeys[i], mask);
+                while (keys[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+import biuoop.DrawSurface;
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Polygon;
+import java.awt.image.BufferedImage;
+
+/**
+ * A DrawSurface that draws into an off-screen image, the same way the GUI's surface draws on
+ * the screen. Used to draw sprites once and reuse the result over many frames.
+ */
+public class ImageDrawSurface implements DrawSurface {
+
+    private BufferedImage image;
+    private Graphics2D graphics;
+
+    /**
+     * Constructs a surface drawing into a new transparent image of the given size.
+     *
+     * @param width  the width of the surface
+     * @param height the height of the surface
+     */
+    public ImageDrawSurface(int width, int height) {
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        this.graphics = image.createGraphics();
+    }
+
+    /**
+     * Returns the image this surface draws into.
+     *
+     * @return the image
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Restricts the following drawing calls to a rectangle of the surface.
+     *
+     * @param x      the left edge of the rectangle
+     * @param y      the top edge of the rectangle
+     * @param width  the width of the rectangle
+     * @param height the height of the rectangle
+     */
+    public void setClip(int x, int y, int width, int height) {
+        graphics.setClip(x, y, width, height);
+    }
+
+    /**
+     * Lets the following drawing calls draw anywhere on the surface again.
+     */
+    public void clearClip() {
+        graphics.setClip(null);
+    }
+
+    /**
+     * Makes a rectangle of the surface transparent again, erasing what was drawn there.
+     *
+     * @param x      the left edge of the rectangle
+     * @param y      the top edge of the rectangle
+     * @param width  the width of the rectangle
+     * @param height the height of the rectangle
+     */
+    public void clear(int x, int y, int width, int height) {
+        Composite composite = graphics.getComposite();
+        graphics.setComposite(AlphaComposite.Clear);
+        graphics.fillRect(x, y, width, height);
+        graphics.setComposite(composite);
+    }
+
+    /**
+     * Returns the width of the surface.
+     *
+     * @return the width of the surface
+     */
+    @Override
+    public int getWidth() {
+        return image.getWidth();
+    }
+
+    /**
+     * Returns the height of the surface.
+     *
+     * @return the height of the surface
+     */
+    @Override
+    public int getHeight() {
+        return image.getHeight();
+    }
+
+    /**
+     * Sets the color of the following drawing calls.
+     *
+     * @param color the color to draw with
+     */
+    @Override
+    public void setColor(Color color) {
+        graphics.setColor(color);
+    }
+
+    /**
+     * Draws a line between two points.
+     *
+     * @param x1 the x coordinate of the first point
+     * @param y1 the y coordinate of the first point
+     * @param x2 the x coordinate of the second point
+     * @param y2 the y coordinate of the second point
+     */
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        graphics.drawLine(x1, y1, x2, y2);
+    }
+
+    /**
+     * Draws the outline of an oval.
+     *
+     * @param x      the left edge of the oval's bounding box
+     * @param y      the top edge of the oval's bounding box
+     * @param width  the width of the oval
+     * @param height the height of the oval
+     */
+    @Override
+    public void drawOval(int x, int y, int width, int height) {
+        graphics.drawOval(x, y, width, height);
+    }
+
+    /**
+     * Fills an oval.
+     *
+     * @param x      the left edge of the oval's bounding box
+     * @param y      the top edge of the oval's bounding box
+     * @param width  the width of the oval
+     * @param height the height of the oval
+     */
+    @Override
+    public void fillOval(int x, int y, int width, int height) {
+        graphics.fillOval(x, y, width, height);
+    }
+
+    /**
+     * Draws the outline of a rectangle.
+     *
+     * @param x      the left edge of the rectangle
+     * @param y      the top edge of the rectangle
+     * @param width  the width of the rectangle
+     * @param height the height of the rectangle
+     */
+    @Override
+    public void drawRectangle(int x, int y, int width, int height) {
+        graphics.drawRect(x, y, width, height);
+    }
+
+    /**
+     * Fills a rectangle.
+     *
+     * @param x      the left edge of the rectangle
+     * @param y      the top edge of the rectangle
+     * @param width  the width of the rectangle
+     * @param height the height of the rectangle
+     */
+    @Override
+    public void fillRectangle(int x, int y, int width, int height) {
+        graphics.fillRect(x, y, width, height);
+    }
+
+    /**
+     * Draws an image.
+     *
+     * @param x     the left edge of the image
+     * @param y     the top edge of the image
+     * @param image the image to draw
+     */
+    @Override
+    public void drawImage(int x, int y, Image image) {
+        graphics.drawImage(image, x, y, null);
+    }
+
+    /**
+     * Draws the outline of a circle.
+     *
+     * @param x      the x coordinate of the center
+     * @param y      the y coordinate of the center
+     * @param radius the radius of the circle
+     */
+    @Override
+    public void drawCircle(int x, int y, int radius) {
+        graphics.drawOval(x - radius, y - radius, radius * 2, radius * 2);
+    }
+
+    /**
+     * Fills a circle.
+     *
+     * @param x      the x coordinate of the center
+     * @param y      the y coordinate of the center
+     * @param radius the radius of the circle
+     */
+    @Override
+    public void fillCircle(int x, int y, int radius) {
+        graphics.fillOval(x - radius, y - radius, radius * 2, radius * 2);
+    }
+
+    /**
+     * Draws a line of text in the current font, at the given size.
+     *
+     * @param x        the x coordinate of the text's baseline start
+     * @param y        the y coordinate of the text's baseline
+     * @param text     the text to draw
+     * @param fontSize the size of the font
+     */
+    @Override
+    public void drawText(int x, int y, String text, int fontSize) {
+        Font font = graphics.getFont();
+        graphics.setFont(new Font(font.getFontName(), font.getStyle(), fontSize));
+        graphics.drawString(text, x, y);
+        graphics.setFont(font);
+    }
+
+    /**
+     * Draws the outline of a polygon.
+     *
+     * @param polygon the polygon to draw
+     */
+    @Override
+    public void drawPolygon(Polygon polygon) {
+        graphics.drawPolygon(polygon);
+    }
+
+    /**
+     * Fills a polygon.
+     *
+     * @param polygon the polygon to fill
+     */
+    @Override
+    public void fillPolygon(Polygon polygon) {
+        graphics.fillPolygon(polygon);
+    }
+}
@@ -0,0 +1,273 @@
+import biuoop.KeyboardSensor;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The paddle input of a game, one state per simulation step, with the checksum of the world's
+ * state after each step. Playing the same inputs into the same game must give the same checksums,
+ * which makes a log both a reproducible benchmark and a test that the simulation did not change.
+ * <p>
+ * A log also keeps the state of the game's random generator when the recording began (see
+ * Game.getRandomState), since the colors the balls take depend on it and are part of the checksum.
+ * <p>
+ * In a file, little-endian like a LevelFile, the log starts with a header: the magic number, the
+ * format version, the state of the random generator and the number of steps. The inputs follow
+ * as runs, since keys are held for many steps: each run is the number of steps since the previous
+ * change as a varint (7 bits per byte, the high bit set on all bytes but the last), then the new
+ * state as a byte. A zero marks the end of the runs. Then come the steps' checksums as ints.
+ * Files of version 1 have no random generator's state in their header, and are played from the
+ * default seed (see Game.DEFAULT_SEED).
+ */
+public class InputLog {
+
+    /**
+     * The bit of a state in which the left key is pressed.
+     */
+    public static final int LEFT = 1;
+
+    /**
+     * The bit of a state in which the right key is pressed.
+     */
+    public static final int RIGHT = 2;
+
+    private static final int MAGIC = 0x4E494242; // "BBIN" in little-endian order
+    private static final int VERSION = 2;
+    private static final int OLD_VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private byte[] states;
+    private int[] checksums;
+    private int size;
+    private long randomState;
+
+    /**
+     * Constructs an empty log.
+     */
+    public InputLog() {
+        this.states = new byte[INITIAL_CAPACITY];
+        this.checksums = new int[INITIAL_CAPACITY];
+        this.randomState = new SeededRandom(Game.DEFAULT_SEED).getState();
+    }
+
+    /**
+     * Returns the state of the paddle keys of a keyboard.
+     *
+     * @param keyboard the keyboard
+     * @return the state, a combination of LEFT and RIGHT
+     */
+    public static int stateOf(KeyboardSensor keyboard) {
+        int state = 0;
+        if (keyboard.isPressed(KeyboardSensor.LEFT_KEY)) {
+            state |= LEFT;
+        }
+        if (keyboard.isPressed(KeyboardSensor.RIGHT_KEY)) {
+            state |= RIGHT;
+        }
+        return state;
+    }
+
+    /**
+     * Checks whether a key is pressed in a state.
+     *
+     * @param state the state
+     * @param key   the key, as KeyboardSensor names it
+     * @return true if the key is a paddle key and is pressed in the state, false otherwise
+     */
+    public static boolean isPressed(int state, String key) {
+        if (KeyboardSensor.LEFT_KEY.equals(key)) {
+            return (state & LEFT) != 0;
+        }
+        if (KeyboardSensor.RIGHT_KEY.equals(key)) {
+            return (state & RIGHT) != 0;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of steps in the log.
+     *
+     * @return the number of steps
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the input state of a step.
+     *
+     * @param tick the index of the step
+     * @return the state, a combination of LEFT and RIGHT
+     */
+    public int getState(int tick) {
+        return states[tick];
+    }
+
+    /**
+     * Returns the checksum of the world's state after a step.
+     *
+     * @param tick the index of the step
+     * @return the checksum
+     */
+    public int getChecksum(int tick) {
+        return checksums[tick];
+    }
+
+    /**
+     * Returns the state of the game's random generator when the recording began.
+     *
+     * @return the state of the random generator
+     */
+    public long getRandomState() {
+        return randomState;
+    }
+
+    /**
+     * Sets the state of the game's random generator when the recording began.
+     *
+     * @param randomState the state of the random generator
+     */
+    public void setRandomState(long randomState) {
+        this.randomState = randomState;
+    }
+
+    /**
+     * Appends a step to the log.
+     *
+     * @param state    the input state during the step
+     * @param checksum the checksum of the world's state after the step
+     */
+    public void add(int state, int checksum) {
+        if (size == states.length) {
+            states = Arrays.copyOf(states, size * 2);
+            checksums = Arrays.copyOf(checksums, size * 2);
+        }
+        states[size] = (byte) state;
+        checksums[size] = checksum;
+        size++;
+    }
+
+    /**
+     * Writes the log to a file, replacing any existing file.
+     *
+     * @param file the file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        // a run takes at most 6 bytes, and each run starts at a step
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 6 * size + 1 + 4 * size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(randomState).putInt(size);
+        int state = 0;
+        int changed = 0;
+        for (int i = 0; i < size; i++) {
+            if (states[i] != state) {
+                // the first run counts from before the first step, so its length is never zero
+                putVarint(buffer, i - changed + 1);
+                buffer.put(states[i]);
+                state = states[i];
+                changed = i + 1;
+            }
+        }
+        buffer.put((byte) 0);
+        for (int i = 0; i < size; i++) {
+            buffer.putInt(checksums[i]);
+        }
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Reads a log from a file.
+     *
+     * @param file the file
+     * @return the log
+     * @throws IOException if the file cannot be read or is not a valid input log
+     */
+    public static InputLog read(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(file + " is not an input log: bad magic number");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION && version != OLD_VERSION) {
+                throw new IOException(file + " has unsupported input log version " + version);
+            }
+            InputLog log = new InputLog();
+            if (version != OLD_VERSION) {
+                log.randomState = buffer.getLong();
+            }
+            int size = buffer.getInt();
+            if (size < 0 || buffer.remaining() < 4L * size) {
+                throw new IOException(file + " is not an input log: its length does not match its header");
+            }
+            log.states = new byte[Math.max(size, 1)];
+            log.checksums = new int[Math.max(size, 1)];
+            log.size = size;
+            byte state = 0;
+            int changed = 0;
+            for (int run = getVarint(buffer); run != 0; run = getVarint(buffer)) {
+                int tick = changed + run - 1;
+                if (tick >= size) {
+                    throw new IOException(file + " is not an input log: a run ends after the last step");
+                }
+                Arrays.fill(log.states, changed, tick, state);
+                state = buffer.get();
+                log.states[tick] = state;
+                changed = tick + 1;
+            }
+            Arrays.fill(log.states, changed, size, state);
+            for (int i = 0; i < size; i++) {
+                log.checksums[i] = buffer.getInt();
+            }
+            return log;
+        } catch (BufferUnderflowException e) {
+            throw new IOException(file + " is not an input log: it is truncated", e);
+        }
+    }
+
+    /**
+     * Writes a non-negative int as a varint.
+     *
+     * @param buffer the buffer to write to
+     * @param value  the value
+     */
+    private static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) (value | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads a varint.
+     *
+     * @param buffer the buffer to read from
+     * @return the value
+     * @throws IOException if the varint is too long for an int
+     */
+    private static int getVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint in input log");
+    }
+}
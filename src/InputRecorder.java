@@ -0,0 +1,53 @@
+import biuoop.KeyboardSensor;
+
+/**
+ * A keyboard that passes on the paddle keys of another keyboard and records them in an input log.
+ * The keys are read once at the start of every step, so the paddle sees exactly the state that
+ * is recorded, even if a key changes in the middle of the step.
+ */
+public class InputRecorder implements TickInput {
+
+    private KeyboardSensor source;
+    private InputLog log;
+    private int state;
+
+    /**
+     * Constructs a recorder of a keyboard.
+     *
+     * @param source the keyboard to record
+     * @param log    the log the steps are appended to
+     */
+    public InputRecorder(KeyboardSensor source, InputLog log) {
+        this.source = source;
+        this.log = log;
+    }
+
+    /**
+     * Reads the paddle keys of the recorded keyboard for the coming step.
+     */
+    @Override
+    public void beginTick() {
+        state = InputLog.stateOf(source);
+    }
+
+    /**
+     * Appends the step's input and checksum to the log.
+     *
+     * @param checksum the checksum of the world's state after the step
+     */
+    @Override
+    public void endTick(int checksum) {
+        log.add(state, checksum);
+    }
+
+    /**
+     * Checks if a key was pressed at the start of the current step.
+     *
+     * @param key the key to check
+     * @return true if the key is a paddle key and was pressed, false otherwise
+     */
+    @Override
+    public boolean isPressed(String key) {
+        return InputLog.isPressed(state, key);
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * A keyboard that plays back the paddle input of an input log, one recorded step per simulation
+ * step, and compares the world's state after every step with the recorded checksum.
+ */
+public class InputReplay implements TickInput {
+
+    private InputLog log;
+    private int tick = -1;
+    private int state;
+    private int firstMismatch = -1;
+
+    /**
+     * Constructs a replay of a log.
+     *
+     * @param log the log to play back
+     */
+    public InputReplay(InputLog log) {
+        this.log = log;
+    }
+
+    /**
+     * Moves to the next recorded step. After the last one no key is pressed.
+     */
+    @Override
+    public void beginTick() {
+        tick++;
+        state = tick < log.size() ? log.getState(tick) : 0;
+    }
+
+    /**
+     * Compares the world's state after the step with the recorded one.
+     *
+     * @param checksum the checksum of the world's state after the step
+     */
+    @Override
+    public void endTick(int checksum) {
+        if (firstMismatch < 0 && (tick >= log.size() || log.getChecksum(tick) != checksum)) {
+            firstMismatch = tick;
+        }
+    }
+
+    /**
+     * Checks if a key was pressed in the current recorded step.
+     *
+     * @param key the key to check
+     * @return true if the key is a paddle key and was pressed, false otherwise
+     */
+    @Override
+    public boolean isPressed(String key) {
+        return InputLog.isPressed(state, key);
+    }
+
+    /**
+     * Returns the number of steps played so far.
+     *
+     * @return the number of steps
+     */
+    public int getTicks() {
+        return tick + 1;
+    }
+
+    /**
+     * Returns the first step after which the world's state differed from the recorded one.
+     *
+     * @return the index of the step, or -1 if every step so far matched
+     */
+    public int getFirstMismatch() {
+        return firstMismatch;
+    }
+
+    /**
+     * Checks whether the replay was faithful: every recorded step was played, and the world's
+     * state matched the recorded one after each of them.
+     *
+     * @return true if the replay was faithful, false otherwise
+     */
+    public boolean isFaithful() {
+        return firstMismatch < 0 && getTicks() == log.size();
+    }
+}
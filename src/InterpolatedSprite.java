@@ -0,0 +1,17 @@
+import biuoop.DrawSurface;
+
+/**
+ * A sprite that can be drawn between two simulation steps.
+ * When the game simulates at a fixed rate that differs from the display rate, frames fall
+ * between steps; such sprites blend their previous and current positions so motion stays smooth.
+ */
+public interface InterpolatedSprite extends Sprite {
+
+    /**
+     * Draws the sprite at a point between its state before the last step and its current state.
+     *
+     * @param d     the DrawSurface on which the sprite will be drawn
+     * @param alpha how far between the previous state (0) and the current state (1) to draw
+     */
+    void drawOn(DrawSurface d, double alpha);
+}
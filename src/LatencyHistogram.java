@@ -0,0 +1,163 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds with a fixed relative precision.
+ * Every power of two is split into SUB_BUCKETS linear buckets, so a recorded value is known to
+ * within about 3% while the whole range of a long fits in about two thousand counters.
+ * Recording never allocates and costs one array increment. One thread records; any thread
+ * may read percentiles at the same time, seeing a recent but not necessarily final state.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray counts;
+    private volatile long count;
+    private volatile long total;
+    private volatile long max;
+
+    /**
+     * Constructs an empty histogram.
+     *
+     * @param name the name printed with the histogram's summary
+     */
+    public LatencyHistogram(String name) {
+        this.name = name;
+        this.counts = new AtomicLongArray(BUCKETS);
+    }
+
+    /**
+     * Records a duration. Negative durations are recorded as 0.
+     * Only one thread may record into a histogram.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucketOf(value));
+        total += value;
+        if (value > max) {
+            max = value;
+        }
+        count++;
+    }
+
+    /**
+     * Returns the name of the histogram.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Returns the number of recorded durations.
+     *
+     * @return the number of recorded durations
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * Returns the longest recorded duration.
+     *
+     * @return the longest duration in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getMax() {
+        return this.max;
+    }
+
+    /**
+     * Returns the average recorded duration.
+     *
+     * @return the average duration in nanoseconds, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        long n = this.count;
+        return n == 0 ? 0 : (double) this.total / n;
+    }
+
+    /**
+     * Returns the duration below which the given fraction of the recorded durations fall.
+     * The result is the upper end of the bucket holding that duration, and never exceeds the maximum.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the duration in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long n = this.count;
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(n * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), this.max);
+            }
+        }
+        return this.max;
+    }
+
+    /**
+     * Forgets all recorded durations. Must be called by the recording thread.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count = 0;
+        total = 0;
+        max = 0;
+    }
+
+    /**
+     * Returns a one-line summary with the count, mean, p50, p99, p99.9 and max, in milliseconds.
+     *
+     * @return the summary
+     */
+    @Override
+    public String toString() {
+        return String.format("%-10s n=%-8d mean=%8.3f p50=%8.3f p99=%8.3f p99.9=%8.3f max=%8.3f ms",
+                name, getCount(), getMean() / 1e6, getPercentile(50) / 1e6, getPercentile(99) / 1e6,
+                getPercentile(99.9) / 1e6, getMax() / 1e6);
+    }
+
+    /**
+     * Finds the bucket of a value. Values below SUB_BUCKETS get a bucket each; larger values are
+     * bucketed by their highest SUB_BITS + 1 bits.
+     *
+     * @param value a non-negative value
+     * @return the index of the value's bucket
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        int mantissa = (int) (value >>> shift);
+        return (shift + 1) * SUB_BUCKETS + mantissa - SUB_BUCKETS;
+    }
+
+    /**
+     * Returns the largest value that falls in a bucket.
+     *
+     * @param bucket the index of the bucket
+     * @return the largest value of the bucket
+     */
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
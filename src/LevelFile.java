@@ -0,0 +1,404 @@
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A level's blocks stored in a compact binary file, read through a memory-mapped buffer so even
+ * a level of millions of blocks is never copied into memory.
+ * <p>
+ * The file is little-endian. It starts with a header: the magic number, the format version, the
+ * number of blocks and the number of colors, followed by the colors as ARGB ints. Then come the
+ * blocks, one fixed-width record each: the x and y of the upper-left corner (the point a Rectangle
+ * is built from), the width and the height as floats, then the index of the block's color and the
+ * block's flags as unsigned shorts, so a palette holds at most 65536 colors.
+ * <p>
+ * From version 2 on, the header goes on with the lattice the level's bricks are laid out on, if
+ * any: its numbers of columns and rows (both 0 for a level without a lattice), then the smallest
+ * x and y of its collision boxes and the width and height of a cell, as doubles. A block lying
+ * within a cell of the lattice is kept in a BrickGrid instead of one by one (see newBrickGrid).
+ * Files of version 1 have no lattice.
+ */
+public class LevelFile {
+
+    /**
+     * Flag of a block that is removed when a ball of another color hits it, scoring points.
+     * The level is cleared once all these blocks are removed.
+     */
+    public static final int BREAKABLE = 1;
+
+    /**
+     * Flag of a block that removes the balls that hit it.
+     */
+    public static final int DEATH_REGION = 2;
+
+    private static final int MAGIC = 0x564C4242; // "BBLV" in little-endian order
+    private static final int VERSION = 2;
+    private static final int OLD_VERSION = 1;
+    private static final int OLD_HEADER_SIZE = 16;
+    private static final int HEADER_SIZE = 56;
+    private static final int RECORD_SIZE = 20;
+    private static final int MAX_COLORS = 1 << 16;
+
+    private ByteBuffer records;
+    private Color[] palette;
+    private int size;
+    private ByteBuffer lattice;
+
+    /**
+     * Constructs a level over the block records of a buffer.
+     *
+     * @param records the block records, starting at position 0
+     * @param palette the colors the records refer to
+     * @param size    the number of blocks
+     * @param lattice the lattice part of the header, or null if the level has no lattice
+     */
+    private LevelFile(ByteBuffer records, Color[] palette, int size, ByteBuffer lattice) {
+        this.records = records;
+        this.palette = palette;
+        this.size = size;
+        this.lattice = lattice;
+    }
+
+    /**
+     * Opens a level file by mapping it into memory. Only the color index of every record is
+     * checked here; the rest of the records are read when asked for.
+     *
+     * @param file the level file
+     * @return the level
+     * @throws IOException if the file cannot be read or is not a valid level file
+     */
+    public static LevelFile open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_SIZE) {
+                throw new IOException(file + " is not a level file: too short");
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not a level file: bad magic number");
+            }
+            int version = buffer.getInt(4);
+            if (version != VERSION && version != OLD_VERSION) {
+                throw new IOException(file + " has unsupported level format version " + version);
+            }
+            int headerSize = version == OLD_VERSION ? OLD_HEADER_SIZE : HEADER_SIZE;
+            if (length < headerSize) {
+                throw new IOException(file + " is not a level file: too short");
+            }
+            int size = buffer.getInt(8);
+            int colors = buffer.getInt(12);
+            long recordsStart = headerSize + 4L * colors;
+            if (colors > MAX_COLORS) {
+                throw new IOException(file + " is not a level file: it has " + colors + " colors");
+            }
+            if (size < 0 || colors < 0 || recordsStart + (long) size * RECORD_SIZE != length) {
+                throw new IOException(file + " is not a level file: its length does not match its header");
+            }
+            Color[] palette = new Color[colors];
+            for (int i = 0; i < colors; i++) {
+                palette[i] = new Color(buffer.getInt(headerSize + 4 * i), true);
+            }
+            ByteBuffer lattice = null;
+            if (version != OLD_VERSION) {
+                buffer.position(OLD_HEADER_SIZE);
+                lattice = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+                lattice.limit(HEADER_SIZE - OLD_HEADER_SIZE);
+                if (lattice.getInt(0) == 0 && lattice.getInt(4) == 0) {
+                    lattice = null;
+                } else if (!isValidLattice(lattice)) {
+                    throw new IOException(file + " is not a level file: its lattice has no cell or cells of no size");
+                }
+            }
+            buffer.position((int) recordsStart);
+            ByteBuffer records = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < size; i++) {
+                int color = records.getShort(i * RECORD_SIZE + 16) & 0xFFFF;
+                if (color >= colors) {
+                    throw new IOException(file + " is not a level file: block " + i + " has color index " + color
+                            + " but there are " + colors + " colors");
+                }
+            }
+            return new LevelFile(records, palette, size, lattice);
+        }
+    }
+
+    /**
+     * Checks whether the level's bricks are laid out on a lattice.
+     *
+     * @return true if the header holds a lattice, false otherwise
+     */
+    public boolean hasLattice() {
+        return lattice != null;
+    }
+
+    /**
+     * Creates an empty brick grid of the level's lattice, for the blocks lying within its cells.
+     *
+     * @return the brick grid, or null if the level has no lattice
+     */
+    public BrickGrid newBrickGrid() {
+        return lattice == null ? null : newBrickGrid(lattice);
+    }
+
+    /**
+     * Returns the number of blocks in the level.
+     *
+     * @return the number of blocks
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the x-coordinate of a block's upper-left corner.
+     *
+     * @param i the index of the block
+     * @return the x-coordinate
+     */
+    public double getX(int i) {
+        return records.getFloat(i * RECORD_SIZE);
+    }
+
+    /**
+     * Returns the y-coordinate of a block's upper-left corner.
+     *
+     * @param i the index of the block
+     * @return the y-coordinate
+     */
+    public double getY(int i) {
+        return records.getFloat(i * RECORD_SIZE + 4);
+    }
+
+    /**
+     * Returns the width of a block.
+     *
+     * @param i the index of the block
+     * @return the width
+     */
+    public double getWidth(int i) {
+        return records.getFloat(i * RECORD_SIZE + 8);
+    }
+
+    /**
+     * Returns the height of a block.
+     *
+     * @param i the index of the block
+     * @return the height
+     */
+    public double getHeight(int i) {
+        return records.getFloat(i * RECORD_SIZE + 12);
+    }
+
+    /**
+     * Returns the color of a block.
+     *
+     * @param i the index of the block
+     * @return the color
+     */
+    public Color getColor(int i) {
+        return palette[getColorIndex(i)];
+    }
+
+    /**
+     * Returns the index of a block's color in the level's palette.
+     *
+     * @param i the index of the block
+     * @return the index of the color
+     */
+    public int getColorIndex(int i) {
+        return records.getShort(i * RECORD_SIZE + 16) & 0xFFFF;
+    }
+
+    /**
+     * Returns the number of colors in the level's palette.
+     *
+     * @return the number of colors
+     */
+    public int getColorCount() {
+        return palette.length;
+    }
+
+    /**
+     * Returns a color of the level's palette.
+     *
+     * @param c the index of the color
+     * @return the color
+     */
+    public Color getPaletteColor(int c) {
+        return palette[c];
+    }
+
+    /**
+     * Returns the flags of a block (BREAKABLE, DEATH_REGION).
+     *
+     * @param i the index of the block
+     * @return the flags
+     */
+    public int getFlags(int i) {
+        return records.getShort(i * RECORD_SIZE + 18) & 0xFFFF;
+    }
+
+    /**
+     * Creates an empty brick grid from the lattice part of a header.
+     *
+     * @param lattice the lattice part of the header
+     * @return the brick grid
+     */
+    private static BrickGrid newBrickGrid(ByteBuffer lattice) {
+        return new BrickGrid(lattice.getDouble(8), lattice.getDouble(16), lattice.getDouble(24),
+                lattice.getDouble(32), lattice.getInt(0), lattice.getInt(4));
+    }
+
+    /**
+     * Checks that the lattice part of a header makes a brick grid: it has cells, of positive
+     * size, and few enough of them to be indexed by an int.
+     *
+     * @param lattice the lattice part of the header
+     * @return true if the lattice is valid, false otherwise
+     */
+    private static boolean isValidLattice(ByteBuffer lattice) {
+        int columns = lattice.getInt(0);
+        int rows = lattice.getInt(4);
+        return columns > 0 && rows > 0 && (long) columns * rows <= Integer.MAX_VALUE
+                && lattice.getDouble(24) > 0 && lattice.getDouble(32) > 0;
+    }
+
+    /**
+     * Writes a level file block by block, so a generated level never has to be held in memory.
+     * The number of blocks and the lattice are filled into the header when the writer is closed.
+     */
+    public static final class Writer implements AutoCloseable {
+
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        private FileChannel channel;
+        private ByteBuffer buffer;
+        private Color[] palette;
+        private int size;
+        private ByteBuffer lattice;
+
+        /**
+         * Creates a level file, replacing any existing file, and writes its header.
+         *
+         * @param file    the level file
+         * @param palette the colors the blocks may use, at most 65536
+         * @throws IOException if the file cannot be written
+         * @throws IllegalArgumentException if the palette has too many colors
+         */
+        public Writer(Path file, Color[] palette) throws IOException {
+            if (palette.length > MAX_COLORS) {
+                throw new IllegalArgumentException("a level holds at most " + MAX_COLORS + " colors, not "
+                        + palette.length);
+            }
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            this.palette = palette;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + 4 * palette.length).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(0).putInt(palette.length);
+            // no lattice, unless setLattice is called
+            header.position(HEADER_SIZE);
+            for (Color color : palette) {
+                header.putInt(color.getRGB());
+            }
+            header.flip();
+            write(header);
+        }
+
+        /**
+         * Declares the lattice the level's bricks are laid out on. The coordinates are those of the
+         * collision boxes, as in BrickGrid: the first row of cells is the one of the smallest
+         * y-coordinates.
+         *
+         * @param minX       the smallest x-coordinate of the lattice
+         * @param minY       the smallest y-coordinate of the lattice
+         * @param cellWidth  the width of a cell
+         * @param cellHeight the height of a cell
+         * @param columns    the number of columns
+         * @param rows       the number of rows
+         * @throws IllegalArgumentException if a cell is empty or the lattice has no cell, or too many
+         */
+        public void setLattice(double minX, double minY, double cellWidth, double cellHeight, int columns,
+                               int rows) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE - OLD_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(columns).putInt(rows).putDouble(minX).putDouble(minY).putDouble(cellWidth)
+                    .putDouble(cellHeight);
+            if (!isValidLattice(header)) {
+                throw new IllegalArgumentException("a lattice needs cells of positive size, and at most "
+                        + Integer.MAX_VALUE + " of them");
+            }
+            header.flip();
+            this.lattice = header;
+        }
+
+        /**
+         * Appends a block to the level.
+         *
+         * @param x      the x-coordinate of the block's upper-left corner
+         * @param y      the y-coordinate of the block's upper-left corner
+         * @param width  the width of the block
+         * @param height the height of the block
+         * @param color  the index of the block's color in the palette
+         * @param flags  the block's flags (BREAKABLE, DEATH_REGION)
+         * @throws IOException if the file cannot be written
+         */
+        public void add(double x, double y, double width, double height, int color, int flags) throws IOException {
+            if (color < 0 || color >= palette.length) {
+                throw new IllegalArgumentException("color index " + color + " is not in the palette");
+            }
+            if (buffer.remaining() < RECORD_SIZE) {
+                flush();
+            }
+            buffer.putFloat((float) x).putFloat((float) y).putFloat((float) width).putFloat((float) height)
+                    .putShort((short) color).putShort((short) flags);
+            size++;
+        }
+
+        /**
+         * Writes the remaining blocks and the number of blocks, and closes the file.
+         *
+         * @throws IOException if the file cannot be written
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+                ByteBuffer count = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(size);
+                count.flip();
+                channel.write(count, 8);
+                if (lattice != null) {
+                    channel.write(lattice, OLD_HEADER_SIZE);
+                }
+            } finally {
+                channel.close();
+            }
+        }
+
+        /**
+         * Writes the buffered blocks to the file.
+         *
+         * @throws IOException if the file cannot be written
+         */
+        private void flush() throws IOException {
+            buffer.flip();
+            write(buffer);
+            buffer.clear();
+        }
+
+        /**
+         * Writes a whole buffer at the end of the file.
+         *
+         * @param data the bytes to write
+         * @throws IOException if the file cannot be written
+         */
+        private void write(ByteBuffer data) throws IOException {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+    }
+}
@@ -294,7 +294,7 @@ public class Line {
         if (inRange(line.start.getX(), minRangeX, maxRangeX)) {
             double minRangeY = min(line.start.getY(), line.end.getY());
             double maxRangeY = max(line.start.getY(), line.end.getY());
-            if (inRange(line.start.getY(), minRangeY, maxRangeY)) {
+            if (inRange(this.start.getY(), minRangeY, maxRangeY)) {
                 return new Point(line.start.getX(), this.start.getY());
             }
         }
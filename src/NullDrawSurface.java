@@ -0,0 +1,199 @@
+import biuoop.DrawSurface;
+import java.awt.Color;
+import java.awt.Image;
+import java.awt.Polygon;
+
+/**
+ * A DrawSurface that draws nothing and only counts the calls made on it.
+ * Used to run the game without a window while still exercising the drawing code.
+ */
+public class NullDrawSurface implements DrawSurface {
+
+    private int width;
+    private int height;
+    private long calls;
+
+    /**
+     * Constructs a surface with the given size.
+     *
+     * @param width  the width of the surface
+     * @param height the height of the surface
+     */
+    public NullDrawSurface(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Returns the number of drawing calls made on this surface so far.
+     *
+     * @return the number of calls
+     */
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * Returns the width of the surface.
+     *
+     * @return the width of the surface
+     */
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the surface.
+     *
+     * @return the height of the surface
+     */
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Counts the call without drawing anything.
+     *
+     * @param color ignored
+     */
+    @Override
+    public void setColor(Color color) {
+        calls++;
+    }
+
+    /**
+     * Counts the call without drawing anything.
+     *
+     * @param x1 ignored
+     * @param y1 ignored
+     * @param x2 ignored
+     * @param y2 ignored
+     */
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        calls++;
+    }
+
+    /**
+     * Counts the call without drawing anything.
+     *
+     * @param x      ignored
+     * @param y      ignored
+     * @param width  ignored
+     * @param height ignored
+     */
+    @Override
+    public void drawOval(int x, int y, int width, int height) {
+        calls++;
+    }
+
+    /**
+     * Counts the call without drawing anything.
+     *
+     * @param x      ignored
+     * @param y      ignored
+     * @param width  ignored
+     * @param height ignored
+     */
+    @Override
+    public void fillOval(int x, int y, int width, int height) {
+        calls++;
+    }
+
+    /**
+     * Counts the call without drawing anything.
+     *
+     * @param x      ignored
+     * @param y      ignored
+     * @param width  ignored
+     * @param height ignored
+     */
+    @Override
+    public void drawRectangle(int x, int y, int width, int height) {
+        calls++;
+    }
+
+    /**
+     * Counts the call without drawing anything.
+     *
+     * @param x      ignored
+     * @param y      ignored
+     * @param width  ignored
+     * @param height ignored
+     */
+    @Override
+    public void fillRectangle(int x, int y, int width, int height) {
+        calls++;
+    }
+
+    /**
+     * Counts the call without drawing anything.
+     *
+     * @param x     ignored
+     * @param y     ignored
+     * @param image ignored
+     */
+    @Override
+    public void drawImage(int x, int y, Image image) {
+        calls++;
+    }
+
+    /**
+     * Counts the call without drawing anything.
+     *
+     * @param x ignored
+     * @param y ignored
+     * @param r ignored
+     */
+    @Override
+    public void drawCircle(int x, int y, int r) {
+        calls++;
+    }
+
+    /**
+     * Counts the call without drawing anything.
+     *
+     * @param x ignored
+     * @param y ignored
+     * @param r ignored
+     */
+    @Override
+    public void fillCircle(int x, int y, int r) {
+        calls++;
+    }
+
+    /**
+     * Counts the call without drawing anything.
+     *
+     * @param x        ignored
+     * @param y        ignored
+     * @param text     ignored
+     * @param fontSize ignored
+     */
+    @Override
+    public void drawText(int x, int y, String text, int fontSize) {
+        calls++;
+    }
+
+    /**
+     * Counts the call without drawing anything.
+     *
+     * @param polygon ignored
+     */
+    @Override
+    public void drawPolygon(Polygon polygon) {
+        calls++;
+    }
+
+    /**
+     * Counts the call without drawing anything.
+     *
+     * @param polygon ignored
+     */
+    @Override
+    public void fillPolygon(Polygon polygon) {
+        calls++;
+    }
+}
@@ -1,17 +1,20 @@
 import biuoop.DrawSurface;
 import biuoop.KeyboardSensor;
+import java.nio.ByteBuffer;
 
 /**
  * This class represents a paddle in a game, handling its movements and rendering.
  * It implements the Sprite and Collidable interfaces to integrate with the game's engine.
  */
-public class Paddle implements Sprite, Collidable {
+public class Paddle implements InterpolatedSprite, Collidable {
 
     public static final double WIDTH = 800;
     public static final double HEIGHT = 600;
     private biuoop.KeyboardSensor keyboard;
     private Rectangle rectangle;
     private int speed;
+    private double timeScale = 1;
+    private double previousX;
 
     /**
      * Constructs a new Paddle object with specified keyboard sensor, shape, and movement speed.
@@ -24,32 +27,41 @@ public class Paddle implements Sprite, Collidable {
         this.keyboard = keyboard;
         this.rectangle = rectangle;
         this.speed = speed;
+        this.previousX = rectangle.getUpperLeft().getX();
+    }
+
+    /**
+     * Sets the fraction of a 60 FPS frame that one step of the paddle lasts.
+     * The paddle moves speed * timeScale per step, so its real speed doesn't depend on the step rate.
+     *
+     * @param timeScale the length of a step, in 60 FPS frames
+     */
+    public void setTimeScale(double timeScale) {
+        this.timeScale = timeScale;
     }
 
     /**
      * Moves the paddle to the left by its speed. If it moves beyond the left boundary, it wraps around to the right.
      */
     public void moveLeft() {
-        double newX = this.getCollisionRectangle().getUpperLeft().getX() - speed;
+        double newX = this.getCollisionRectangle().getUpperLeft().getX() - speed * timeScale;
         if (newX < 0) {
             double excess = 0 - newX;
             newX = WIDTH - excess;
         }
-        this.rectangle = new Rectangle(new Point(newX, this.getCollisionRectangle().getUpperLeft().getY()),
-                this.getCollisionRectangle().getWidth(), this.getCollisionRectangle().getHeight());
+        this.rectangle.moveTo(newX, this.rectangle.getUpperLeft().getY());
     }
 
     /**
      * Moves the paddle to the right by its speed. If it moves beyond the right boundary, it wraps around to the left.
      */
     public void moveRight() {
-        double newX = this.getCollisionRectangle().getUpperLeft().getX() + speed;
+        double newX = this.getCollisionRectangle().getUpperLeft().getX() + speed * timeScale;
         if (newX + this.getCollisionRectangle().getWidth() > WIDTH) {
             double excess = newX + this.getCollisionRectangle().getWidth() - WIDTH;
             newX = 0 - this.getCollisionRectangle().getWidth() + excess;
         }
-        this.rectangle = new Rectangle(new Point(newX, this.getCollisionRectangle().getUpperLeft().getY()),
-                this.getCollisionRectangle().getWidth(), this.getCollisionRectangle().getHeight());
+        this.rectangle.moveTo(newX, this.rectangle.getUpperLeft().getY());
     }
 
     /**
@@ -64,11 +76,30 @@ public class Paddle implements Sprite, Collidable {
                 (int) rectangle.getWidth(), (int) rectangle.getHeight());
     }
 
+    /**
+     * Draws the paddle between its position before the last step and its current position.
+     * A step that wrapped the paddle around the screen is not blended.
+     *
+     * @param d     the draw surface on which the paddle is rendered
+     * @param alpha how far between the previous position (0) and the current position (1) to draw
+     */
+    @Override
+    public void drawOn(DrawSurface d, double alpha) {
+        double x = rectangle.getUpperLeft().getX();
+        if (Math.abs(x - previousX) <= speed * timeScale) {
+            x = previousX + (x - previousX) * alpha;
+        }
+        d.setColor(java.awt.Color.YELLOW);
+        d.fillRectangle((int) x, (int) rectangle.getUpperLeft().getY(),
+                (int) rectangle.getWidth(), (int) rectangle.getHeight());
+    }
+
     /**
      * Updates the paddle's position based on the current key presses.
      */
     @Override
     public void timePassed() {
+        previousX = rectangle.getUpperLeft().getX();
         if (keyboard.isPressed(KeyboardSensor.LEFT_KEY)) {
             moveLeft();
         }
@@ -77,6 +108,26 @@ public class Paddle implements Sprite, Collidable {
         }
     }
 
+    /**
+     * Writes the paddle's position and its position before the last step to a snapshot.
+     *
+     * @param out the buffer to write to
+     */
+    public void writeTo(ByteBuffer out) {
+        out.putDouble(rectangle.getUpperLeft().getX());
+        out.putDouble(previousX);
+    }
+
+    /**
+     * Restores the positions written by writeTo.
+     *
+     * @param in the buffer to read from
+     */
+    public void readFrom(ByteBuffer in) {
+        this.rectangle.moveTo(in.getDouble(), this.rectangle.getUpperLeft().getY());
+        this.previousX = in.getDouble();
+    }
+
     /**
      * Provides the collision rectangle of the paddle.
      *
@@ -93,7 +144,7 @@ public class Paddle implements Sprite, Collidable {
      * @param hitter the ball that hits the paddle
      * @param collisionPoint the point at which the collision occurred
      * @param currentVelocity the current velocity of the object hitting the paddle
-     * @return the new velocity after the hit
+     * @return currentVelocity, updated to the velocity after the hit
      */
     @Override
     public Velocity hit(Ball hitter, Point collisionPoint, Velocity currentVelocity) {
@@ -103,16 +154,22 @@ public class Paddle implements Sprite, Collidable {
 
         switch (area) {
             case 1:
-                return Velocity.fromAngleAndSpeed(210, currentVelocity.getSpeed());
+                currentVelocity.setFromAngleAndSpeed(210, currentVelocity.getSpeed());
+                break;
             case 2:
-                return Velocity.fromAngleAndSpeed(240, currentVelocity.getSpeed());
+                currentVelocity.setFromAngleAndSpeed(240, currentVelocity.getSpeed());
+                break;
             case 4:
-                return Velocity.fromAngleAndSpeed(-60, currentVelocity.getSpeed());
+                currentVelocity.setFromAngleAndSpeed(-60, currentVelocity.getSpeed());
+                break;
             case 5:
-                return Velocity.fromAngleAndSpeed(-30, currentVelocity.getSpeed());
+                currentVelocity.setFromAngleAndSpeed(-30, currentVelocity.getSpeed());
+                break;
             default:
-                return new Velocity(currentVelocity.getX(), -currentVelocity.getY());
+                currentVelocity.set(currentVelocity.getX(), -currentVelocity.getY());
+                break;
         }
+        return currentVelocity;
     }
 
     /**
@@ -122,6 +179,6 @@ public class Paddle implements Sprite, Collidable {
      */
     public void addToGame(Game g) {
         g.addSprite(this);
-        g.addCollidable(this);
+        g.addDynamicCollidable(this);
     }
 }
@@ -51,6 +51,18 @@ public class Point {
         this.y = y;
     }
 
+    /**
+     * Moves the point to the given coordinates.
+     * Points are mutable so the game loop can reuse them instead of allocating new ones.
+     *
+     * @param newX the new x-coordinate of the point.
+     * @param newY the new y-coordinate of the point.
+     */
+    public void set(double newX, double newY) {
+        this.x = newX;
+        this.y = newY;
+    }
+
     /**
      * Calculates the distance between this point and another point.
      *
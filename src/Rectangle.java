@@ -70,6 +70,18 @@ public class Rectangle {
         return upperLeft;
     }
 
+    /**
+     * Moves the rectangle so its upper-left corner is at the given coordinates, in place.
+     * Must not be used on a rectangle of a collidable added with addCollidable, since those are
+     * indexed by their position.
+     *
+     * @param x the new x-coordinate of the upper-left corner
+     * @param y the new y-coordinate of the upper-left corner
+     */
+    public void moveTo(double x, double y) {
+        this.upperLeft.set(x, y);
+    }
+
     /**
      * Draws the rectangle on the given DrawSurface with the specified color.
      *
@@ -77,15 +89,29 @@ public class Rectangle {
      * @param color   the color to draw the rectangle
      */
     public void drawOn(DrawSurface surface, Color color) {
+        drawOn(surface, this.upperLeft.getX(), this.upperLeft.getY(), width, height, color);
+    }
+
+    /**
+     * Draws a rectangle given by its coordinates on the given DrawSurface, like drawOn, for
+     * shapes that are not kept as Rectangle objects.
+     *
+     * @param surface    the DrawSurface to draw the rectangle on
+     * @param upperLeftX the x-coordinate of the rectangle's upper-left corner
+     * @param upperLeftY the y-coordinate of the rectangle's upper-left corner
+     * @param width      the width of the rectangle
+     * @param height     the height of the rectangle
+     * @param color      the color to draw the rectangle
+     */
+    public static void drawOn(DrawSurface surface, double upperLeftX, double upperLeftY, double width,
+                              double height, Color color) {
         surface.setColor(color);
-        surface.fillRectangle((int) this.upperLeft.getX(), (int) this.upperLeft.getY() - (int) height,
-                (int) width, (int) height);
+        surface.fillRectangle((int) upperLeftX, (int) upperLeftY - (int) height, (int) width, (int) height);
 
 
         //new part
         surface.setColor(Color.black);
-        surface.drawRectangle((int) this.upperLeft.getX(), (int) this.upperLeft.getY() - (int) height,
-                (int) width, (int) height);
+        surface.drawRectangle((int) upperLeftX, (int) upperLeftY - (int) height, (int) width, (int) height);
     }
 
     /**
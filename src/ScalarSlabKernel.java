@@ -0,0 +1,93 @@
+/**
+ * The slab kernel that tests the boxes one at a time. It is always available, and gives the
+ * times the vector kernel is checked against.
+ */
+public class ScalarSlabKernel implements SlabKernel {
+
+    /**
+     * Computes the times of the boxes of a batch one box after the other (see SlabKernel).
+     *
+     * @param boxes the batch
+     * @param x     the x-coordinate of the start of the segment
+     * @param y     the y-coordinate of the start of the segment
+     * @param dx    the x-component of the segment
+     * @param dy    the y-component of the segment
+     * @param grow  the distance the boxes are grown by, 0 to test the boxes themselves
+     * @return the smallest time of all the boxes, or positive infinity if the segment misses them all
+     */
+    @Override
+    public double computeTimes(BoxBatch boxes, double x, double y, double dx, double dy, double grow) {
+        double[] minX = boxes.minX();
+        double[] minY = boxes.minY();
+        double[] maxX = boxes.maxX();
+        double[] maxY = boxes.maxY();
+        double[] times = boxes.times();
+        double invDx = 1 / dx;
+        double invDy = 1 / dy;
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < boxes.size(); i++) {
+            double t = time(minX[i], minY[i], maxX[i], maxY[i], x, y, dx, dy, invDx, invDy, grow);
+            times[i] = t;
+            best = Math.min(best, t);
+        }
+        return best;
+    }
+
+    /**
+     * Computes the time of a single box, with the very operations the vector kernel applies to
+     * each of its lanes, so both kernels round alike.
+     *
+     * @param x0    the smallest x-coordinate of the box
+     * @param y0    the smallest y-coordinate of the box
+     * @param x1    the largest x-coordinate of the box
+     * @param y1    the largest y-coordinate of the box
+     * @param x     the x-coordinate of the start of the segment
+     * @param y     the y-coordinate of the start of the segment
+     * @param dx    the x-component of the segment
+     * @param dy    the y-component of the segment
+     * @param invDx 1 divided by dx
+     * @param invDy 1 divided by dy
+     * @param grow  the distance the box is grown by
+     * @return the time, or positive infinity if the segment never meets the box's boundary
+     */
+    static double time(double x0, double y0, double x1, double y1, double x, double y, double dx, double dy,
+                       double invDx, double invDy, double grow) {
+        double left = x0 - grow;
+        double right = x1 + grow;
+        double bottom = y0 - grow;
+        double top = y1 + grow;
+        double nearX;
+        double farX;
+        if (dx != 0) {
+            double a = (left - x) * invDx;
+            double b = (right - x) * invDx;
+            nearX = Math.min(a, b);
+            farX = Math.max(a, b);
+        } else if (left <= x && x <= right) {
+            // a segment that doesn't move along x is inside the slab all the time, or never
+            nearX = Double.NEGATIVE_INFINITY;
+            farX = Double.POSITIVE_INFINITY;
+        } else {
+            nearX = Double.POSITIVE_INFINITY;
+            farX = Double.NEGATIVE_INFINITY;
+        }
+        double nearY;
+        double farY;
+        if (dy != 0) {
+            double a = (bottom - y) * invDy;
+            double b = (top - y) * invDy;
+            nearY = Math.min(a, b);
+            farY = Math.max(a, b);
+        } else if (bottom <= y && y <= top) {
+            nearY = Double.NEGATIVE_INFINITY;
+            farY = Double.POSITIVE_INFINITY;
+        } else {
+            nearY = Double.POSITIVE_INFINITY;
+            farY = Double.NEGATIVE_INFINITY;
+        }
+        double enter = Math.max(nearX, nearY);
+        double exit = Math.min(farX, farY);
+        double t = enter >= 0 ? enter : exit;
+        return enter <= exit && t >= 0 && t <= 1 ? t : Double.POSITIVE_INFINITY;
+    }
+}
@@ -7,14 +7,17 @@ import java.awt.Color;
 public class ScoreTrackingListener implements HitListener {
 
     private Counter currentScore;
+    private SeededRandom random;
 
     /**
      * Constructs a ScoreTrackingListener object with the given score counter.
      *
      * @param scoreCounter the counter that keeps track of the score
+     * @param random       the game's generator, which picks the hitting ball's new color
      */
-    public ScoreTrackingListener(Counter scoreCounter) {
+    public ScoreTrackingListener(Counter scoreCounter, SeededRandom random) {
         this.currentScore = scoreCounter;
+        this.random = random;
     }
 
     /**
@@ -27,7 +30,7 @@ public class ScoreTrackingListener implements HitListener {
     @Override
     public void hitEvent(Block beingHit, Ball hitter) {
         currentScore.increase(5);
-        Color c = hitter.randColor();
+        Color c = hitter.randColor(random);
         hitter.setColor(c);
     }
 }
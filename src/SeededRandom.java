@@ -0,0 +1,84 @@
+/**
+ * A random number generator whose whole state is a single long that can be read and set, so a
+ * game can save it in a snapshot or an input log and play on with exactly the same numbers.
+ * It is the 48-bit linear congruential generator of java.util.Random, whose state is hidden.
+ * <p>
+ * Every game has its own generator, so games played at the same time don't change each other's
+ * numbers, and a generator is only used by its game's thread.
+ */
+public class SeededRandom {
+
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    private long state;
+
+    /**
+     * Constructs a generator with the given seed.
+     *
+     * @param seed the seed
+     */
+    public SeededRandom(long seed) {
+        setSeed(seed);
+    }
+
+    /**
+     * Restarts the generator from a seed, as java.util.Random does.
+     *
+     * @param seed the seed
+     */
+    public void setSeed(long seed) {
+        this.state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    /**
+     * Returns the state of the generator, from which setState continues the same numbers.
+     *
+     * @return the state
+     */
+    public long getState() {
+        return this.state;
+    }
+
+    /**
+     * Sets the state of the generator to one returned by getState.
+     *
+     * @param state the state
+     */
+    public void setState(long state) {
+        this.state = state & MASK;
+    }
+
+    /**
+     * Returns a random int between 0 (inclusive) and the bound (exclusive).
+     *
+     * @param bound the bound, which must be positive
+     * @return the random int
+     * @throws IllegalArgumentException if the bound is not positive
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        // the high bits of the state are the most random, as java.util.Random uses them
+        int bits;
+        int value;
+        do {
+            bits = next(31);
+            value = bits % bound;
+        } while (bits - value + (bound - 1) < 0);
+        return value;
+    }
+
+    /**
+     * Advances the generator and returns the given number of its high bits.
+     *
+     * @param bits the number of bits, at most 32
+     * @return the bits
+     */
+    private int next(int bits) {
+        this.state = (this.state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (this.state >>> (48 - bits));
+    }
+}
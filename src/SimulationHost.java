@@ -0,0 +1,128 @@
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+/**
+ * Plays many independent games at the same time, without a window, for batch simulations such as
+ * evaluating bots or tuning a level's balance. Each game is a world of its own, driven by a
+ * virtual clock and played from start to end as one task, so games share nothing and need no
+ * locking; one host keeps every core busy with as many games as there are.
+ * <p>
+ * The tasks run on virtual threads when the Java runtime has them, and on a work-stealing
+ * fork-join pool with a thread per core otherwise. Virtual threads are looked up by reflection,
+ * so the game still builds and runs on runtimes that predate them.
+ */
+public class SimulationHost implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+
+    /**
+     * Constructs a host that runs games on virtual threads if the runtime has them, and on a
+     * fork-join pool with one thread per core otherwise.
+     */
+    public SimulationHost() {
+        this(true, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a host.
+     *
+     * @param preferVirtualThreads true to run games on virtual threads if the runtime has them,
+     *                             false to always use a fork-join pool
+     * @param parallelism          the number of threads of the fork-join pool, when it is used
+     */
+    public SimulationHost(boolean preferVirtualThreads, int parallelism) {
+        ExecutorService virtual = preferVirtualThreads ? newVirtualThreadExecutor() : null;
+        this.virtualThreads = virtual != null;
+        this.executor = virtual != null ? virtual : new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Checks whether the games run on virtual threads.
+     *
+     * @return true if the games run on virtual threads, false if they run on a fork-join pool
+     */
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Plays a number of games to their end, or until they reach a number of ticks, and returns
+     * their outcomes. The games are created by the given function, which receives the index of
+     * the game (so it can vary the seed of each game) and must return an initialized game; the
+     * function is called on the game's own thread. The paddle is created with a keyboard that
+     * never presses a key.
+     *
+     * @param games    the number of games
+     * @param setup    the function creating the game of each index
+     * @param maxTicks the maximal number of ticks of each game
+     * @return the outcomes of the games, in the order of their indexes
+     * @throws IllegalStateException if a game fails, with the failure as its cause
+     */
+    public List<GameResult> play(int games, IntFunction<Game> setup, long maxTicks) {
+        List<Future<GameResult>> futures = new ArrayList<>(games);
+        for (int i = 0; i < games; i++) {
+            int index = i;
+            futures.add(executor.submit(() -> play(setup.apply(index), maxTicks)));
+        }
+        List<GameResult> results = new ArrayList<>(games);
+        try {
+            for (Future<GameResult> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the games", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("a game failed", e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Shuts the host down, letting the games already submitted finish.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * Plays a single game on the calling thread, and closes it.
+     *
+     * @param game     an initialized game
+     * @param maxTicks the maximal number of ticks
+     * @return the game's outcome
+     */
+    private static GameResult play(Game game, long maxTicks) {
+        try (game) {
+            game.setClock(new VirtualClock());
+            int balls = game.getRemainingBalls();
+            long ticks = game.runHeadless(new HeadlessKeyboard(), null, maxTicks);
+            return new GameResult(game.getScore(), ticks, game.getRemainingBlocks(),
+                    balls - game.getRemainingBalls());
+        }
+    }
+
+    /**
+     * Creates an executor that starts a virtual thread per task, if the runtime supports it.
+     *
+     * @return the executor, or null if the runtime has no virtual threads
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            // before Java 21 the method is missing, or is a preview feature that is not enabled
+            return null;
+        }
+    }
+}
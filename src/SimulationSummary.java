@@ -0,0 +1,102 @@
+import java.util.List;
+
+/**
+ * Aggregate statistics of the outcomes of a batch of games.
+ */
+public class SimulationSummary {
+
+    private int games;
+    private int cleared;
+    private long totalScore;
+    private int minScore = Integer.MAX_VALUE;
+    private int maxScore = Integer.MIN_VALUE;
+    private long totalTicks;
+    private long ticksToClear;
+    private long ballsLost;
+
+    /**
+     * Constructs the summary of a batch of games.
+     *
+     * @param results the outcomes of the games
+     */
+    public SimulationSummary(List<GameResult> results) {
+        for (GameResult result : results) {
+            games++;
+            totalScore += result.getScore();
+            minScore = Math.min(minScore, result.getScore());
+            maxScore = Math.max(maxScore, result.getScore());
+            totalTicks += result.getTicks();
+            ballsLost += result.getBallsLost();
+            if (result.isCleared()) {
+                cleared++;
+                ticksToClear += result.getTicks();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of games.
+     *
+     * @return the number of games
+     */
+    public int getGames() {
+        return games;
+    }
+
+    /**
+     * Returns the number of games whose blocks were all cleared.
+     *
+     * @return the number of cleared games
+     */
+    public int getCleared() {
+        return cleared;
+    }
+
+    /**
+     * Returns the mean score.
+     *
+     * @return the mean score, or 0 if there were no games
+     */
+    public double getMeanScore() {
+        return games == 0 ? 0 : (double) totalScore / games;
+    }
+
+    /**
+     * Returns the total number of ticks played by all the games.
+     *
+     * @return the total number of ticks
+     */
+    public long getTotalTicks() {
+        return totalTicks;
+    }
+
+    /**
+     * Returns the mean number of ticks the cleared games took to clear.
+     *
+     * @return the mean number of ticks to clear, or 0 if no game was cleared
+     */
+    public double getMeanTicksToClear() {
+        return cleared == 0 ? 0 : (double) ticksToClear / cleared;
+    }
+
+    /**
+     * Returns the mean number of balls lost per game.
+     *
+     * @return the mean number of balls lost, or 0 if there were no games
+     */
+    public double getMeanBallsLost() {
+        return games == 0 ? 0 : (double) ballsLost / games;
+    }
+
+    /**
+     * Returns the summary as a single line.
+     *
+     * @return the summary
+     */
+    @Override
+    public String toString() {
+        return String.format("games: %d, cleared: %d, score: mean %.1f min %d max %d, ticks to clear: mean %.1f, "
+                        + "balls lost: mean %.2f", games, cleared, getMeanScore(), games == 0 ? 0 : minScore,
+                games == 0 ? 0 : maxScore, getMeanTicksToClear(), getMeanBallsLost());
+    }
+}
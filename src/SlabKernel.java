@@ -0,0 +1,26 @@
+/**
+ * Tests a segment against a batch of boxes with the slab method: the segment is clipped by the
+ * pair of lines bounding each box along x and along y, and it meets the box if the two clipped
+ * ranges overlap. The boxes can be grown on every side first, which turns the test of a moving
+ * circle's center into a quick check of whether the circle may reach a box at all.
+ * Implementations must give bit-for-bit the same times, so the backend can be chosen by speed
+ * alone (see SlabKernels).
+ */
+public interface SlabKernel {
+
+    /**
+     * Computes, for every box of a batch grown by the given distance on every side, the first time
+     * the segment from (x, y) to (x + dx, y + dy) is on the box's boundary, as a fraction of the
+     * segment: the time it enters the box, or the time it leaves it if it starts inside. Each box's
+     * time, or positive infinity if the segment never meets the boundary, is stored in the batch.
+     *
+     * @param boxes the batch
+     * @param x     the x-coordinate of the start of the segment
+     * @param y     the y-coordinate of the start of the segment
+     * @param dx    the x-component of the segment
+     * @param dy    the y-component of the segment
+     * @param grow  the distance the boxes are grown by, 0 to test the boxes themselves
+     * @return the smallest time of all the boxes, or positive infinity if the segment misses them all
+     */
+    double computeTimes(BoxBatch boxes, double x, double y, double dx, double dy, double grow);
+}
@@ -0,0 +1,48 @@
+import java.util.Optional;
+
+/**
+ * Chooses the slab kernel to use. The vector kernel is used when the Java runtime has the
+ * incubating Vector API module loaded (it is left out unless the JVM is started with
+ * --add-modules jdk.incubator.vector); it is looked up by reflection, so the game still builds
+ * and runs where the module is missing, with the scalar kernel.
+ */
+public final class SlabKernels {
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    /**
+     * Utility class, not meant to be instantiated.
+     */
+    private SlabKernels() {
+    }
+
+    /**
+     * Returns the fastest kernel the runtime supports.
+     *
+     * @return the vector kernel if the Vector API is available, the scalar kernel otherwise
+     */
+    public static SlabKernel fastest() {
+        SlabKernel vector = vector();
+        return vector != null ? vector : new ScalarSlabKernel();
+    }
+
+    /**
+     * Returns the vector kernel, if the runtime supports it.
+     *
+     * @return the vector kernel, or null if the Vector API is not available or the kernel was not built
+     */
+    public static SlabKernel vector() {
+        Optional<Module> module = ModuleLayer.boot().findModule(VECTOR_MODULE);
+        if (module.isEmpty()) {
+            return null;
+        }
+        String pkg = SlabKernels.class.getPackageName();
+        String name = pkg.isEmpty() ? "VectorSlabKernel" : pkg + ".VectorSlabKernel";
+        try {
+            return (SlabKernel) Class.forName(name).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // the kernel is only compiled where the module exists
+            return null;
+        }
+    }
+}
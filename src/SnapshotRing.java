@@ -0,0 +1,88 @@
+import java.util.NoSuchElementException;
+
+/**
+ * A fixed number of the most recent world snapshots, for rewinding a game step by step.
+ * The snapshots are allocated once and reused: capturing into the ring overwrites the oldest one.
+ */
+public class SnapshotRing {
+
+    private WorldSnapshot[] slots;
+    private int newest = -1;
+    private int size;
+
+    /**
+     * Constructs an empty ring.
+     *
+     * @param capacity the number of snapshots kept
+     */
+    public SnapshotRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.slots = new WorldSnapshot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new WorldSnapshot();
+        }
+    }
+
+    /**
+     * Returns the number of snapshots kept.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Returns the number of snapshots in the ring.
+     *
+     * @return the number of snapshots
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Makes room for a new snapshot, dropping the oldest one if the ring is full.
+     *
+     * @return the snapshot to capture into, which becomes the newest
+     */
+    public WorldSnapshot push() {
+        newest = (newest + 1) % slots.length;
+        if (size < slots.length) {
+            size++;
+        }
+        return slots[newest];
+    }
+
+    /**
+     * Removes the newest snapshot. It stays valid until the next push.
+     *
+     * @return the newest snapshot
+     * @throws NoSuchElementException if the ring is empty
+     */
+    public WorldSnapshot pop() {
+        if (size == 0) {
+            throw new NoSuchElementException("no snapshot to rewind to");
+        }
+        WorldSnapshot snapshot = slots[newest];
+        newest = (newest + slots.length - 1) % slots.length;
+        size--;
+        return snapshot;
+    }
+
+    /**
+     * Returns a snapshot without removing it.
+     *
+     * @param back how many snapshots back to go, 0 for the newest
+     * @return the snapshot
+     * @throws IndexOutOfBoundsException if the ring holds no snapshot that far back
+     */
+    public WorldSnapshot get(int back) {
+        if (back < 0 || back >= size) {
+            throw new IndexOutOfBoundsException("no snapshot " + back + " back, the ring holds " + size);
+        }
+        return slots[(newest - back + slots.length) % slots.length];
+    }
+}
@@ -1,37 +1,68 @@
 import biuoop.DrawSurface;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  * The SpriteCollection class manages a collection of Sprite objects.
  * It supports adding sprites, notifying all sprites to perform a time step, and drawing all sprites onto a DrawSurface.
+ * Unless batching is turned off, the sprites draw into a DrawCommandBuffer, which replays the frame
+ * on the real surface grouped by color.
+ * <p>
+ * Adding a sprite returns a handle which removes it in constant time (see HandleList). Sprites
+ * may be removed and added while the collection is notifying or drawing its sprites: a removed
+ * sprite is skipped from then on, and an added one is visited in the same pass.
  */
 public class SpriteCollection {
 
-    private List<Sprite> sprites;
+    private HandleList<Sprite> sprites;
+    private DrawCommandBuffer buffer = new DrawCommandBuffer();
+    private boolean batched = true;
 
     /**
      * Constructs an empty collection of sprites.
      */
     public SpriteCollection() {
-        this.sprites = new ArrayList<>();
+        this.sprites = new HandleList<>();
     }
 
     /**
      * Adds a sprite to the collection.
      *
      * @param s the sprite to be added
+     * @return the sprite's handle, for removing it
      */
-    public void addSprite(Sprite s) {
-        sprites.add(s);
+    public long addSprite(Sprite s) {
+        return sprites.add(s);
+    }
+
+    /**
+     * Sets whether the sprites are drawn through a command buffer that groups the drawing calls by
+     * color (the default), or straight on the surface in the order the sprites make them.
+     *
+     * @param batched true to batch the drawing calls, false to draw them straight away
+     */
+    public void setBatched(boolean batched) {
+        this.batched = batched;
+    }
+
+    /**
+     * Returns the command buffer the sprites are drawn through when batching is on.
+     *
+     * @return the command buffer
+     */
+    public DrawCommandBuffer getBuffer() {
+        return this.buffer;
     }
 
     /**
      * Calls timePassed() on all sprites in the collection to simulate a time step.
      */
     public void notifyAllTimePassed() {
-        for (int i = 0; i < sprites.size(); i++) {
-            sprites.get(i).timePassed();
+        sprites.compact();
+        for (int i = 0; i < sprites.slotCount(); i++) {
+            Sprite s = sprites.atSlot(i);
+            if (s != null) {
+                s.timePassed();
+            }
         }
     }
 
@@ -41,26 +72,74 @@ public class SpriteCollection {
      * @param d the DrawSurface onto which the sprites are drawn
      */
     public void drawAllOn(DrawSurface d) {
-        for (Sprite s : sprites) {
-            s.drawOn(d);
+        DrawSurface surface = d;
+        if (batched) {
+            buffer.begin(d);
+            surface = buffer;
+        }
+        sprites.compact();
+        for (int i = 0; i < sprites.slotCount(); i++) {
+            Sprite s = sprites.atSlot(i);
+            if (s != null) {
+                s.drawOn(surface);
+            }
+        }
+        if (batched) {
+            buffer.flush();
+        }
+    }
+
+    /**
+     * Draws all the sprites in the collection, blending the sprites that support it between their
+     * previous and current states.
+     *
+     * @param d     the DrawSurface onto which the sprites are drawn
+     * @param alpha how far between the previous state (0) and the current state (1) to draw
+     */
+    public void drawAllOn(DrawSurface d, double alpha) {
+        DrawSurface surface = d;
+        if (batched) {
+            buffer.begin(d);
+            surface = buffer;
+        }
+        sprites.compact();
+        for (int i = 0; i < sprites.slotCount(); i++) {
+            Sprite s = sprites.atSlot(i);
+            if (s instanceof InterpolatedSprite) {
+                ((InterpolatedSprite) s).drawOn(surface, alpha);
+            } else if (s != null) {
+                s.drawOn(surface);
+            }
+        }
+        if (batched) {
+            buffer.flush();
         }
     }
 
     /**
      * Removes a sprite from the collection.
      *
+     * @param handle the handle addSprite returned for the sprite
+     */
+    public void removeSprite(long handle) {
+        sprites.remove(handle);
+    }
+
+    /**
+     * Removes a sprite from the collection, searching for it. Removing it by its handle is faster.
+     *
      * @param s the sprite to be removed
      */
     public void removeSprite(Sprite s) {
-        sprites.remove(s);
+        sprites.remove(sprites.find(s));
     }
 
     /**
-     * Retrieves the list of sprites.
+     * Retrieves the sprites, in the order they are drawn.
      *
-     * @return the list of sprites
+     * @return a new list of the sprites
      */
     public List<Sprite> getSprites() {
-        return this.sprites;
+        return sprites.toList();
     }
 }
@@ -0,0 +1,532 @@
+import biuoop.DrawSurface;
+import java.util.Arrays;
+
+/**
+ * A sprite that draws the sprites that never move or change, such as the walls and the blocks.
+ * They are drawn once into an off-screen image, which is then copied to the screen every frame.
+ * Removing a sprite only redraws the part of the image the sprite covered, with the other
+ * sprites of the layer that overlap it.
+ * <p>
+ * The regions of the sprites are kept as whole pixels in parallel arrays indexed by the sprites'
+ * ids (see HandleList), so the layer holds no object per sprite besides the sprite itself.
+ * Adding a sprite returns a handle which removes it in constant time.
+ * <p>
+ * The blocks a brick grid keeps by their index in a store (see BrickGrid.addBlock) are not
+ * sprites of the layer: they are drawn straight from the store, below the other sprites, and a
+ * region is redrawn with the blocks of the cells it overlaps (see setBrickGrid and addBlock).
+ * <p>
+ * The out-of-date parts of the image are kept as a few rectangles rather than one box around
+ * all of them, and the other sprites overlapping a rectangle are found through an index of
+ * square tiles over the image, each listing the ids of the sprites whose regions touch it.
+ */
+public class StaticLayer implements Sprite {
+
+    // Rectangle.drawOn truncates the corners to whole pixels and its outline reaches one pixel past
+    // the far edges, so the region redrawn around a removed sprite is widened a little
+    private static final int DIRTY_MARGIN = 2;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // past this many out-of-date rectangles a new one is merged into the one it grows the least
+    private static final int MAX_DIRTY_REGIONS = 8;
+
+    private static final int TILE_SIZE = 16;
+    private static final int INITIAL_TILE_CAPACITY = 4;
+
+    private HandleList<Sprite> sprites;
+    private BrickGrid bricks;
+    private BlockStore store;
+    private int[] boundsMinX;
+    private int[] boundsMinY;
+    private int[] boundsMaxX;
+    private int[] boundsMaxY;
+    private boolean cached = true;
+    private ImageDrawSurface cache;
+    private int dirtyCount;
+    private final int[] dirtyMinX = new int[MAX_DIRTY_REGIONS];
+    private final int[] dirtyMinY = new int[MAX_DIRTY_REGIONS];
+    private final int[] dirtyMaxX = new int[MAX_DIRTY_REGIONS];
+    private final int[] dirtyMaxY = new int[MAX_DIRTY_REGIONS];
+    private int tileColumns;
+    private int tileRows;
+    private int[][] tileIds;
+    private int[] tileSizes;
+    // the last redraw that found each sprite, so a sprite in several tiles is drawn once
+    private int[] visited;
+    private int visit;
+    private int[] foundSlots = new int[INITIAL_CAPACITY];
+
+    /**
+     * Constructs an empty layer.
+     */
+    public StaticLayer() {
+        this.sprites = new HandleList<>();
+        this.boundsMinX = new int[INITIAL_CAPACITY];
+        this.boundsMinY = new int[INITIAL_CAPACITY];
+        this.boundsMaxX = new int[INITIAL_CAPACITY];
+        this.boundsMaxY = new int[INITIAL_CAPACITY];
+        this.visited = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Sets whether the layer is drawn from its cached image. Without the cache every sprite of the
+     * layer is drawn every frame, like the other sprites.
+     *
+     * @param cached true to draw from the cached image, false to draw every sprite every frame
+     */
+    public void setCached(boolean cached) {
+        this.cached = cached;
+        this.cache = null;
+    }
+
+    /**
+     * Sets the brick grid whose blocks, kept by their index in the given store, the layer draws.
+     *
+     * @param grid       the brick grid, or null for none
+     * @param blockStore the store of the grid's blocks
+     */
+    public void setBrickGrid(BrickGrid grid, BlockStore blockStore) {
+        this.bricks = grid;
+        this.store = blockStore;
+        this.cache = null;
+    }
+
+    /**
+     * Adds blocks of a store in bulk, like addBlock, once they were added to the game's
+     * collidables.
+     *
+     * @param s     the store of the blocks
+     * @param first the index of the first block in the store
+     * @param count the number of blocks
+     */
+    public void addBlocks(BlockStore s, int first, int count) {
+        for (int i = first; i < first + count; i++) {
+            addBlock(s, i);
+        }
+    }
+
+    /**
+     * Adds a block of a store, once it was added to the game's collidables. A block the brick
+     * grid keeps by its index is drawn from the grid, and only its region is redrawn; any other
+     * block is added as a sprite, and its handle is recorded in the store.
+     *
+     * @param s the store of the block
+     * @param i the index of the block in the store
+     */
+    public void addBlock(BlockStore s, int i) {
+        double minX = s.getX(i);
+        double maxY = s.getY(i);
+        double maxX = minX + s.getWidth(i);
+        double minY = maxY - s.getHeight(i);
+        if (bricks != null && bricks.cellOfBlock(s, i) >= 0) {
+            invalidate((int) Math.floor(minX), (int) Math.floor(minY), (int) Math.ceil(maxX), (int) Math.ceil(maxY));
+        } else {
+            s.setSpriteHandle(i, addSprite(s.get(i), minX, minY, maxX, maxY));
+        }
+    }
+
+    /**
+     * Removes a block of a store, before it is removed from the game's collidables: the sprite
+     * of its recorded handle, or the block the brick grid draws.
+     *
+     * @param s the store of the block
+     * @param i the index of the block in the store
+     */
+    public void removeBlock(BlockStore s, int i) {
+        long handle = s.getSpriteHandle(i);
+        if (handle != HandleList.NONE) {
+            removeSprite(handle);
+            s.setSpriteHandle(i, HandleList.NONE);
+        } else if (bricks != null && bricks.cellOfBlock(s, i) >= 0) {
+            double minX = s.getX(i);
+            double maxY = s.getY(i);
+            invalidate((int) Math.floor(minX), (int) Math.floor(maxY - s.getHeight(i)),
+                    (int) Math.ceil(minX + s.getWidth(i)), (int) Math.ceil(maxY));
+        }
+    }
+
+    /**
+     * Adds a sprite to the layer. The sprite must only draw inside the given bounds.
+     *
+     * @param s      the sprite to add
+     * @param region the region the sprite draws in
+     * @return the sprite's handle, for removing it
+     */
+    public long addSprite(Sprite s, Rectangle region) {
+        double x = region.getUpperLeft().getX();
+        double y = region.getUpperLeft().getY();
+        return addSprite(s, x, y - region.getHeight(), x + region.getWidth(), y);
+    }
+
+    /**
+     * Adds a sprite to the layer. The sprite must only draw inside the given bounds.
+     *
+     * @param s    the sprite to add
+     * @param minX the smallest x-coordinate of the region the sprite draws in
+     * @param minY the smallest y-coordinate of the region
+     * @param maxX the largest x-coordinate of the region
+     * @param maxY the largest y-coordinate of the region
+     * @return the sprite's handle, for removing it
+     */
+    public long addSprite(Sprite s, double minX, double minY, double maxX, double maxY) {
+        long handle = sprites.add(s);
+        int id = HandleList.id(handle);
+        if (id >= boundsMinX.length) {
+            growBounds(Math.max(2 * boundsMinX.length, id + 1));
+        }
+        boundsMinX[id] = (int) Math.floor(minX);
+        boundsMinY[id] = (int) Math.floor(minY);
+        boundsMaxX[id] = (int) Math.ceil(maxX);
+        boundsMaxY[id] = (int) Math.ceil(maxY);
+        if (cache != null) {
+            addToTiles(id);
+        }
+        invalidate(id);
+        return handle;
+    }
+
+    /**
+     * Makes room for the given number of sprites in all, so adding them grows nothing.
+     *
+     * @param count the number of sprites
+     */
+    public void ensureCapacity(int count) {
+        sprites.ensureCapacity(count);
+        if (count > boundsMinX.length) {
+            growBounds(count);
+        }
+    }
+
+    /**
+     * Removes a sprite from the layer. The region it covered is redrawn before the next frame.
+     *
+     * @param handle the handle addSprite returned for the sprite
+     */
+    public void removeSprite(long handle) {
+        if (sprites.remove(handle) != null) {
+            int id = HandleList.id(handle);
+            if (cache != null) {
+                removeFromTiles(id);
+            }
+            invalidate(id);
+        }
+    }
+
+    /**
+     * Removes a sprite from the layer, searching for it. Removing it by its handle is faster.
+     *
+     * @param s the sprite to remove
+     */
+    public void removeSprite(Sprite s) {
+        removeSprite(sprites.find(s));
+    }
+
+    /**
+     * Returns the number of sprites in the layer.
+     *
+     * @return the number of sprites
+     */
+    public int size() {
+        return sprites.size();
+    }
+
+    /**
+     * Draws the layer, first bringing the cached image up to date if sprites were added or
+     * removed since the last frame.
+     *
+     * @param d the surface to draw on
+     */
+    @Override
+    public void drawOn(DrawSurface d) {
+        sprites.compact();
+        if (!cached) {
+            drawAll(d);
+            return;
+        }
+        if (cache == null || cache.getWidth() != d.getWidth() || cache.getHeight() != d.getHeight()) {
+            cache = new ImageDrawSurface(d.getWidth(), d.getHeight());
+            buildTiles();
+            drawAll(cache);
+            dirtyCount = 0;
+        } else if (dirtyCount > 0) {
+            redrawDirtyRegions();
+        }
+        d.drawImage(0, 0, cache.getImage());
+    }
+
+    /**
+     * The layer's sprites do not change over time.
+     */
+    @Override
+    public void timePassed() {
+    }
+
+    /**
+     * Draws the blocks of the brick grid, then every sprite of the layer, in the order they were
+     * added.
+     *
+     * @param d the surface to draw on
+     */
+    private void drawAll(DrawSurface d) {
+        if (bricks != null) {
+            for (int cell = 0; cell < bricks.getCellCount(); cell++) {
+                int block = bricks.blockAt(cell);
+                if (block >= 0) {
+                    store.drawOn(d, block);
+                }
+            }
+        }
+        for (int i = 0; i < sprites.slotCount(); i++) {
+            Sprite s = sprites.atSlot(i);
+            if (s != null) {
+                s.drawOn(d);
+            }
+        }
+    }
+
+    /**
+     * Grows the arrays of the sprites' regions.
+     *
+     * @param capacity the new number of ids the arrays cover
+     */
+    private void growBounds(int capacity) {
+        boundsMinX = Arrays.copyOf(boundsMinX, capacity);
+        boundsMinY = Arrays.copyOf(boundsMinY, capacity);
+        boundsMaxX = Arrays.copyOf(boundsMaxX, capacity);
+        boundsMaxY = Arrays.copyOf(boundsMaxY, capacity);
+        visited = Arrays.copyOf(visited, capacity);
+    }
+
+    /**
+     * Lays the tiles of the index over the cached image and lists every sprite of the layer in
+     * the tiles its region touches.
+     */
+    private void buildTiles() {
+        tileColumns = Math.max(1, (cache.getWidth() + TILE_SIZE - 1) / TILE_SIZE);
+        tileRows = Math.max(1, (cache.getHeight() + TILE_SIZE - 1) / TILE_SIZE);
+        tileIds = new int[tileColumns * tileRows][];
+        tileSizes = new int[tileColumns * tileRows];
+        for (int i = 0; i < sprites.slotCount(); i++) {
+            int id = sprites.idAtSlot(i);
+            if (id >= 0) {
+                addToTiles(id);
+            }
+        }
+    }
+
+    /**
+     * Lists a sprite in the tiles its region touches. A region reaching past the image is listed
+     * in the tiles at the image's edges.
+     *
+     * @param id the id of the sprite
+     */
+    private void addToTiles(int id) {
+        int col1 = tileColumn(boundsMaxX[id]);
+        int row1 = tileRow(boundsMaxY[id]);
+        for (int row = tileRow(boundsMinY[id]); row <= row1; row++) {
+            for (int col = tileColumn(boundsMinX[id]); col <= col1; col++) {
+                int tile = row * tileColumns + col;
+                int[] ids = tileIds[tile];
+                if (ids == null) {
+                    ids = new int[INITIAL_TILE_CAPACITY];
+                    tileIds[tile] = ids;
+                } else if (tileSizes[tile] == ids.length) {
+                    ids = Arrays.copyOf(ids, 2 * ids.length);
+                    tileIds[tile] = ids;
+                }
+                ids[tileSizes[tile]++] = id;
+            }
+        }
+    }
+
+    /**
+     * Removes a sprite from the tiles its region touches, moving the last id of each tile into
+     * its place.
+     *
+     * @param id the id of the sprite
+     */
+    private void removeFromTiles(int id) {
+        int col1 = tileColumn(boundsMaxX[id]);
+        int row1 = tileRow(boundsMaxY[id]);
+        for (int row = tileRow(boundsMinY[id]); row <= row1; row++) {
+            for (int col = tileColumn(boundsMinX[id]); col <= col1; col++) {
+                int tile = row * tileColumns + col;
+                int[] ids = tileIds[tile];
+                for (int k = 0; k < tileSizes[tile]; k++) {
+                    if (ids[k] == id) {
+                        ids[k] = ids[--tileSizes[tile]];
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the column of the tiles containing an x-coordinate, clamped to the image.
+     *
+     * @param x the x-coordinate, in whole pixels
+     * @return the column
+     */
+    private int tileColumn(int x) {
+        return Math.min(Math.max(Math.floorDiv(x, TILE_SIZE), 0), tileColumns - 1);
+    }
+
+    /**
+     * Returns the row of the tiles containing a y-coordinate, clamped to the image.
+     *
+     * @param y the y-coordinate, in whole pixels
+     * @return the row
+     */
+    private int tileRow(int y) {
+        return Math.min(Math.max(Math.floorDiv(y, TILE_SIZE), 0), tileRows - 1);
+    }
+
+    /**
+     * Marks the region of a sprite of the layer as out of date in the cached image.
+     *
+     * @param id the id of the sprite
+     */
+    private void invalidate(int id) {
+        invalidate(boundsMinX[id], boundsMinY[id], boundsMaxX[id], boundsMaxY[id]);
+    }
+
+    /**
+     * Marks a region drawn in by a sprite or a block as out of date in the cached image. It is
+     * merged into an out-of-date rectangle it overlaps or touches, or else kept as a rectangle
+     * of its own; when there are too many, into the one whose area it grows the least.
+     *
+     * @param boundsMinX the smallest x-coordinate of the region, in whole pixels
+     * @param boundsMinY the smallest y-coordinate of the region
+     * @param boundsMaxX the largest x-coordinate of the region
+     * @param boundsMaxY the largest y-coordinate of the region
+     */
+    private void invalidate(int boundsMinX, int boundsMinY, int boundsMaxX, int boundsMaxY) {
+        int minX = boundsMinX - DIRTY_MARGIN;
+        int minY = boundsMinY - DIRTY_MARGIN;
+        int maxX = boundsMaxX + DIRTY_MARGIN;
+        int maxY = boundsMaxY + DIRTY_MARGIN;
+        int merged = -1;
+        for (int r = 0; r < dirtyCount && merged < 0; r++) {
+            if (minX <= dirtyMaxX[r] && maxX >= dirtyMinX[r] && minY <= dirtyMaxY[r] && maxY >= dirtyMinY[r]) {
+                merged = r;
+            }
+        }
+        if (merged < 0 && dirtyCount < MAX_DIRTY_REGIONS) {
+            dirtyMinX[dirtyCount] = minX;
+            dirtyMinY[dirtyCount] = minY;
+            dirtyMaxX[dirtyCount] = maxX;
+            dirtyMaxY[dirtyCount] = maxY;
+            dirtyCount++;
+            return;
+        }
+        if (merged < 0) {
+            long leastGrowth = Long.MAX_VALUE;
+            for (int r = 0; r < dirtyCount; r++) {
+                long growth = (long) (Math.max(dirtyMaxX[r], maxX) - Math.min(dirtyMinX[r], minX))
+                        * (Math.max(dirtyMaxY[r], maxY) - Math.min(dirtyMinY[r], minY))
+                        - (long) (dirtyMaxX[r] - dirtyMinX[r]) * (dirtyMaxY[r] - dirtyMinY[r]);
+                if (growth < leastGrowth) {
+                    leastGrowth = growth;
+                    merged = r;
+                }
+            }
+        }
+        dirtyMinX[merged] = Math.min(dirtyMinX[merged], minX);
+        dirtyMinY[merged] = Math.min(dirtyMinY[merged], minY);
+        dirtyMaxX[merged] = Math.max(dirtyMaxX[merged], maxX);
+        dirtyMaxY[merged] = Math.max(dirtyMaxY[merged], maxY);
+    }
+
+    /**
+     * Erases each out-of-date rectangle of the cached image and redraws the blocks and sprites
+     * overlapping it, clipped to the rectangle so the rest of the image is left as it is.
+     */
+    private void redrawDirtyRegions() {
+        for (int r = 0; r < dirtyCount; r++) {
+            int width = dirtyMaxX[r] - dirtyMinX[r];
+            int height = dirtyMaxY[r] - dirtyMinY[r];
+            cache.clear(dirtyMinX[r], dirtyMinY[r], width, height);
+            cache.setClip(dirtyMinX[r], dirtyMinY[r], width, height);
+            if (bricks != null) {
+                redrawBlocks(dirtyMinX[r], dirtyMinY[r], dirtyMaxX[r], dirtyMaxY[r]);
+            }
+            redrawSprites(dirtyMinX[r], dirtyMinY[r], dirtyMaxX[r], dirtyMaxY[r]);
+            cache.clearClip();
+        }
+        dirtyCount = 0;
+    }
+
+    /**
+     * Redraws the blocks of the brick grid whose cells are near an out-of-date rectangle, and
+     * whose regions, widened like an invalidated region, overlap it.
+     *
+     * @param minX the smallest x-coordinate of the rectangle
+     * @param minY the smallest y-coordinate of the rectangle
+     * @param maxX the largest x-coordinate of the rectangle
+     * @param maxY the largest y-coordinate of the rectangle
+     */
+    private void redrawBlocks(int minX, int minY, int maxX, int maxY) {
+        int col0 = bricks.columnOf(minX - DIRTY_MARGIN);
+        int col1 = bricks.columnOf(maxX + DIRTY_MARGIN);
+        int row0 = bricks.rowOf(minY - DIRTY_MARGIN);
+        int row1 = bricks.rowOf(maxY + DIRTY_MARGIN);
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                int block = bricks.blockAt(row * bricks.getColumns() + col);
+                if (block < 0) {
+                    continue;
+                }
+                double x = store.getX(block);
+                double y = store.getY(block);
+                if (x - DIRTY_MARGIN < maxX && x + store.getWidth(block) + DIRTY_MARGIN > minX
+                        && y - store.getHeight(block) - DIRTY_MARGIN < maxY && y + DIRTY_MARGIN > minY) {
+                    store.drawOn(cache, block);
+                }
+            }
+        }
+    }
+
+    /**
+     * Redraws, in the order they were added, the sprites listed in the tiles near an out-of-date
+     * rectangle whose regions, widened like an invalidated region, overlap it.
+     *
+     * @param minX the smallest x-coordinate of the rectangle
+     * @param minY the smallest y-coordinate of the rectangle
+     * @param maxX the largest x-coordinate of the rectangle
+     * @param maxY the largest y-coordinate of the rectangle
+     */
+    private void redrawSprites(int minX, int minY, int maxX, int maxY) {
+        if (++visit == 0) {
+            Arrays.fill(visited, 0);
+            visit = 1;
+        }
+        int found = 0;
+        int col1 = tileColumn(maxX + DIRTY_MARGIN);
+        int row1 = tileRow(maxY + DIRTY_MARGIN);
+        for (int row = tileRow(minY - DIRTY_MARGIN); row <= row1; row++) {
+            for (int col = tileColumn(minX - DIRTY_MARGIN); col <= col1; col++) {
+                int tile = row * tileColumns + col;
+                int[] ids = tileIds[tile];
+                for (int k = 0; k < tileSizes[tile]; k++) {
+                    int id = ids[k];
+                    if (visited[id] == visit) {
+                        continue;
+                    }
+                    visited[id] = visit;
+                    if (boundsMinX[id] - DIRTY_MARGIN < maxX && boundsMaxX[id] + DIRTY_MARGIN > minX
+                            && boundsMinY[id] - DIRTY_MARGIN < maxY && boundsMaxY[id] + DIRTY_MARGIN > minY) {
+                        if (found == foundSlots.length) {
+                            foundSlots = Arrays.copyOf(foundSlots, 2 * found);
+                        }
+                        foundSlots[found++] = sprites.slotWithId(id);
+                    }
+                }
+            }
+        }
+        Arrays.sort(foundSlots, 0, found);
+        for (int k = 0; k < found; k++) {
+            sprites.atSlot(foundSlots[k]).drawOn(cache);
+        }
+    }
+}
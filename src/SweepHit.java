@@ -0,0 +1,132 @@
+/**
+ * Holds the result of sweeping a circle against a rectangle: the time of impact, the contact
+ * normal, the contact point and the collidable that was hit.
+ * Instances are mutable so a single one can be reused for every query without allocating.
+ */
+public class SweepHit {
+
+    private double time;
+    private double normalX;
+    private double normalY;
+    private double pointX;
+    private double pointY;
+    private Collidable collidable;
+
+    /**
+     * Constructs an empty result.
+     */
+    public SweepHit() {
+        clear();
+    }
+
+    /**
+     * Resets the result to "no hit".
+     */
+    public void clear() {
+        this.time = Double.POSITIVE_INFINITY;
+        this.normalX = 0;
+        this.normalY = 0;
+        this.pointX = 0;
+        this.pointY = 0;
+        this.collidable = null;
+    }
+
+    /**
+     * Stores a hit.
+     *
+     * @param t  the time of impact, as a fraction of the swept motion
+     * @param nx the x-component of the contact normal
+     * @param ny the y-component of the contact normal
+     * @param px the x-coordinate of the contact point
+     * @param py the y-coordinate of the contact point
+     */
+    void set(double t, double nx, double ny, double px, double py) {
+        this.time = t;
+        this.normalX = nx;
+        this.normalY = ny;
+        this.pointX = px;
+        this.pointY = py;
+    }
+
+    /**
+     * Copies another result into this one.
+     *
+     * @param other the result to copy
+     */
+    void set(SweepHit other) {
+        set(other.time, other.normalX, other.normalY, other.pointX, other.pointY);
+        this.collidable = other.collidable;
+    }
+
+    /**
+     * Sets the collidable that was hit.
+     *
+     * @param c the collidable
+     */
+    void setCollidable(Collidable c) {
+        this.collidable = c;
+    }
+
+    /**
+     * Checks if the result holds a hit.
+     *
+     * @return true if something was hit, false otherwise
+     */
+    public boolean isHit() {
+        return this.time != Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns the time of impact as a fraction of the swept motion, between 0 and 1.
+     *
+     * @return the time of impact, or positive infinity if nothing was hit
+     */
+    public double time() {
+        return this.time;
+    }
+
+    /**
+     * Returns the x-component of the unit contact normal, pointing away from the rectangle.
+     *
+     * @return the x-component of the normal
+     */
+    public double normalX() {
+        return this.normalX;
+    }
+
+    /**
+     * Returns the y-component of the unit contact normal, pointing away from the rectangle.
+     *
+     * @return the y-component of the normal
+     */
+    public double normalY() {
+        return this.normalY;
+    }
+
+    /**
+     * Returns the x-coordinate of the contact point on the rectangle's boundary.
+     *
+     * @return the x-coordinate of the contact point
+     */
+    public double pointX() {
+        return this.pointX;
+    }
+
+    /**
+     * Returns the y-coordinate of the contact point on the rectangle's boundary.
+     *
+     * @return the y-coordinate of the contact point
+     */
+    public double pointY() {
+        return this.pointY;
+    }
+
+    /**
+     * Returns the collidable that was hit.
+     *
+     * @return the collidable, or null if nothing was hit
+     */
+    public Collidable collidable() {
+        return this.collidable;
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * Continuous collision test between a moving circle and an axis-aligned rectangle.
+ * The rectangle is expanded by the circle's radius (a Minkowski sum), so the moving circle
+ * becomes a ray. The ray is clipped against the expanded rectangle with a slab test, and
+ * hits in the rounded corner regions are refined against a circle around the corner.
+ * Works only on primitive doubles and never allocates.
+ */
+public final class SweptCircle {
+
+    /**
+     * Utility class, not meant to be instantiated.
+     */
+    private SweptCircle() {
+    }
+
+    /**
+     * Sweeps a circle from (cx, cy) by (dx, dy) against the rectangle [minX, maxX] x [minY, maxY].
+     * If the circle touches the rectangle during the motion, the time of impact (between 0 and 1),
+     * the unit normal pointing out of the rectangle and the contact point are written to the result.
+     * A circle that already overlaps the rectangle is reported as a hit at time 0 only if it is
+     * moving further into it, so an overlapping circle is always allowed to move out.
+     *
+     * @param cx   the x-coordinate of the circle's center at the start of the motion
+     * @param cy   the y-coordinate of the circle's center at the start of the motion
+     * @param dx   the x-component of the motion
+     * @param dy   the y-component of the motion
+     * @param r    the radius of the circle
+     * @param minX the smallest x-coordinate of the rectangle
+     * @param minY the smallest y-coordinate of the rectangle
+     * @param maxX the largest x-coordinate of the rectangle
+     * @param maxY the largest y-coordinate of the rectangle
+     * @param out  the result to fill in when there is a hit, left untouched otherwise
+     * @return true if the circle hits the rectangle during the motion, false otherwise
+     */
+    public static boolean sweep(double cx, double cy, double dx, double dy, double r,
+                                double minX, double minY, double maxX, double maxY, SweepHit out) {
+        // closest point of the rectangle to the start position
+        double qx = clamp(cx, minX, maxX);
+        double qy = clamp(cy, minY, maxY);
+        double ox = cx - qx;
+        double oy = cy - qy;
+        double distSq = ox * ox + oy * oy;
+        if (distSq <= r * r) {
+            return overlapping(cx, cy, dx, dy, qx, qy, ox, oy, distSq, minX, minY, maxX, maxY, out);
+        }
+
+        double tEnter = Double.NEGATIVE_INFINITY;
+        double tExit = Double.POSITIVE_INFINITY;
+        double nx = 0;
+        double ny = 0;
+
+        if (dx == 0) {
+            if (cx < minX - r || cx > maxX + r) {
+                return false;
+            }
+        } else {
+            double t1 = (minX - r - cx) / dx;
+            double t2 = (maxX + r - cx) / dx;
+            double near = dx > 0 ? t1 : t2;
+            double far = dx > 0 ? t2 : t1;
+            if (near > tEnter) {
+                tEnter = near;
+                nx = dx > 0 ? -1 : 1;
+                ny = 0;
+            }
+            tExit = Math.min(tExit, far);
+        }
+
+        if (dy == 0) {
+            if (cy < minY - r || cy > maxY + r) {
+                return false;
+            }
+        } else {
+            double t1 = (minY - r - cy) / dy;
+            double t2 = (maxY + r - cy) / dy;
+            double near = dy > 0 ? t1 : t2;
+            double far = dy > 0 ? t2 : t1;
+            if (near > tEnter) {
+                tEnter = near;
+                nx = 0;
+                ny = dy > 0 ? -1 : 1;
+            }
+            tExit = Math.min(tExit, far);
+        }
+
+        if (tEnter > tExit || tExit < 0 || tEnter > 1) {
+            return false;
+        }
+        if (tEnter < 0) {
+            // the start lies inside the expanded rectangle but outside the rounded one,
+            // so it is in a corner region and only the corner circle can be hit
+            tEnter = 0;
+        }
+
+        double hx = cx + tEnter * dx;
+        double hy = cy + tEnter * dy;
+        boolean outsideX = hx < minX || hx > maxX;
+        boolean outsideY = hy < minY || hy > maxY;
+        if (outsideX && outsideY) {
+            double kx = hx < minX ? minX : maxX;
+            double ky = hy < minY ? minY : maxY;
+            return corner(cx, cy, dx, dy, r, kx, ky, out);
+        }
+
+        out.set(tEnter, nx, ny, clamp(hx, minX, maxX), clamp(hy, minY, maxY));
+        return true;
+    }
+
+    /**
+     * Handles a circle that overlaps the rectangle at the start of the motion.
+     *
+     * @param cx     the x-coordinate of the circle's center
+     * @param cy     the y-coordinate of the circle's center
+     * @param dx     the x-component of the motion
+     * @param dy     the y-component of the motion
+     * @param qx     the x-coordinate of the closest point of the rectangle to the center
+     * @param qy     the y-coordinate of the closest point of the rectangle to the center
+     * @param ox     the x-offset of the center from the closest point
+     * @param oy     the y-offset of the center from the closest point
+     * @param distSq the squared distance between the center and the closest point
+     * @param minX   the smallest x-coordinate of the rectangle
+     * @param minY   the smallest y-coordinate of the rectangle
+     * @param maxX   the largest x-coordinate of the rectangle
+     * @param maxY   the largest y-coordinate of the rectangle
+     * @param out    the result to fill in
+     * @return true if the circle moves further into the rectangle, false otherwise
+     */
+    private static boolean overlapping(double cx, double cy, double dx, double dy, double qx, double qy,
+                                       double ox, double oy, double distSq,
+                                       double minX, double minY, double maxX, double maxY, SweepHit out) {
+        double nx;
+        double ny;
+        double px = qx;
+        double py = qy;
+        if (distSq > 0) {
+            double dist = Math.sqrt(distSq);
+            nx = ox / dist;
+            ny = oy / dist;
+        } else {
+            // the center is inside the rectangle, push it out through the nearest side
+            double left = cx - minX;
+            double right = maxX - cx;
+            double top = cy - minY;
+            double bottom = maxY - cy;
+            double best = Math.min(Math.min(left, right), Math.min(top, bottom));
+            nx = 0;
+            ny = 0;
+            if (best == left) {
+                nx = -1;
+                px = minX;
+            } else if (best == right) {
+                nx = 1;
+                px = maxX;
+            } else if (best == top) {
+                ny = -1;
+                py = minY;
+            } else {
+                ny = 1;
+                py = maxY;
+            }
+        }
+        if (dx * nx + dy * ny >= 0) {
+            return false;
+        }
+        out.set(0, nx, ny, px, py);
+        return true;
+    }
+
+    /**
+     * Sweeps a circle against a single corner point of the rectangle.
+     *
+     * @param cx  the x-coordinate of the circle's center at the start of the motion
+     * @param cy  the y-coordinate of the circle's center at the start of the motion
+     * @param dx  the x-component of the motion
+     * @param dy  the y-component of the motion
+     * @param r   the radius of the circle
+     * @param kx  the x-coordinate of the corner
+     * @param ky  the y-coordinate of the corner
+     * @param out the result to fill in when there is a hit
+     * @return true if the circle touches the corner during the motion, false otherwise
+     */
+    private static boolean corner(double cx, double cy, double dx, double dy, double r,
+                                  double kx, double ky, SweepHit out) {
+        // solve |c + t*d - k|^2 = r^2 for the smallest t
+        double mx = cx - kx;
+        double my = cy - ky;
+        double a = dx * dx + dy * dy;
+        double b = mx * dx + my * dy;
+        double c = mx * mx + my * my - r * r;
+        if (a == 0 || b >= 0) {
+            return false;
+        }
+        double discriminant = b * b - a * c;
+        if (discriminant < 0) {
+            return false;
+        }
+        double t = (-b - Math.sqrt(discriminant)) / a;
+        if (t > 1) {
+            return false;
+        }
+        if (t < 0) {
+            t = 0;
+        }
+        double nx = (mx + t * dx) / r;
+        double ny = (my + t * dy) / r;
+        out.set(t, nx, ny, kx, ky);
+        return true;
+    }
+
+    /**
+     * Clamps a value to a range.
+     *
+     * @param v   the value
+     * @param min the lower end of the range
+     * @param max the upper end of the range
+     * @return the value clamped to [min, max]
+     */
+    private static double clamp(double v, double min, double max) {
+        return v < min ? min : (v > max ? max : v);
+    }
+}
@@ -0,0 +1,50 @@
+import biuoop.Sleeper;
+
+/**
+ * A clock backed by the system timer, which really sleeps.
+ */
+public class SystemClock implements Clock {
+
+    private Sleeper sleeper;
+
+    /**
+     * Constructs a system clock.
+     */
+    public SystemClock() {
+        this.sleeper = new Sleeper();
+    }
+
+    /**
+     * Returns the current value of the system's high-resolution timer.
+     *
+     * @return the current time in nanoseconds
+     */
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Sleeps for the given amount of time.
+     *
+     * @param milliseconds the time to sleep, in milliseconds
+     */
+    @Override
+    public void sleepFor(long milliseconds) {
+        sleeper.sleepFor(milliseconds);
+    }
+
+    /**
+     * Sleeps for the given amount of time, as precisely as the system's timer allows.
+     *
+     * @param nanoseconds the time to sleep, in nanoseconds
+     */
+    @Override
+    public void sleepForNanos(long nanoseconds) {
+        try {
+            Thread.sleep(nanoseconds / 1000000L, (int) (nanoseconds % 1000000L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+import biuoop.KeyboardSensor;
+
+/**
+ * A keyboard whose state only changes between simulation steps. The game tells it when a step
+ * begins, so it can read its keys once for the whole step, and when the step ends, with a
+ * checksum of the world's state after the step.
+ */
+public interface TickInput extends KeyboardSensor {
+
+    /**
+     * Called before every simulation step. The keys report the same state until the next call.
+     */
+    void beginTick();
+
+    /**
+     * Called after every simulation step, once its hits were delivered.
+     *
+     * @param checksum the checksum of the world's state after the step (see Game.checksum)
+     */
+    void endTick(int checksum);
+}
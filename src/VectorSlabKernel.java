@@ -0,0 +1,84 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The slab kernel that tests as many boxes at once as the CPU's widest vectors hold, with the
+ * incubating Vector API. Every lane goes through the same operations as ScalarSlabKernel.time,
+ * and the boxes left over after the last full vector go through that method itself, so the
+ * times are exactly those of the scalar kernel.
+ * <p>
+ * The class needs the jdk.incubator.vector module at compile time and at run time
+ * (--add-modules jdk.incubator.vector), so it is only ever loaded through SlabKernels, which
+ * falls back to the scalar kernel without the module.
+ */
+public class VectorSlabKernel implements SlabKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final DoubleVector NEGATIVE_INFINITY = DoubleVector.broadcast(SPECIES, Double.NEGATIVE_INFINITY);
+    private static final DoubleVector POSITIVE_INFINITY = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+
+    /**
+     * Computes the times of the boxes of a batch a whole vector of boxes at a time (see SlabKernel).
+     *
+     * @param boxes the batch
+     * @param x     the x-coordinate of the start of the segment
+     * @param y     the y-coordinate of the start of the segment
+     * @param dx    the x-component of the segment
+     * @param dy    the y-component of the segment
+     * @param grow  the distance the boxes are grown by, 0 to test the boxes themselves
+     * @return the smallest time of all the boxes, or positive infinity if the segment misses them all
+     */
+    @Override
+    public double computeTimes(BoxBatch boxes, double x, double y, double dx, double dy, double grow) {
+        double[] minX = boxes.minX();
+        double[] minY = boxes.minY();
+        double[] maxX = boxes.maxX();
+        double[] maxY = boxes.maxY();
+        double[] times = boxes.times();
+        int n = boxes.size();
+        double invDx = 1 / dx;
+        double invDy = 1 / dy;
+        // whether an axis has no motion is the same for every lane; choosing with masks instead of
+        // branches keeps the vectors in registers, since C2 boxes vectors merged from two branches
+        VectorMask<Double> stillX = SPECIES.maskAll(dx == 0);
+        VectorMask<Double> stillY = SPECIES.maskAll(dy == 0);
+        // a vector carried from one iteration to the next is boxed as well, so the smallest time is
+        // carried as a double
+        double min = Double.POSITIVE_INFINITY;
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            DoubleVector x0 = DoubleVector.fromArray(SPECIES, minX, i).sub(grow);
+            DoubleVector x1 = DoubleVector.fromArray(SPECIES, maxX, i).add(grow);
+            DoubleVector y0 = DoubleVector.fromArray(SPECIES, minY, i).sub(grow);
+            DoubleVector y1 = DoubleVector.fromArray(SPECIES, maxY, i).add(grow);
+            DoubleVector ax = x0.sub(x).mul(invDx);
+            DoubleVector bx = x1.sub(x).mul(invDx);
+            VectorMask<Double> insideX = x0.compare(VectorOperators.LE, x).and(x1.compare(VectorOperators.GE, x));
+            DoubleVector nearX = ax.min(bx).blend(POSITIVE_INFINITY.blend(NEGATIVE_INFINITY, insideX), stillX);
+            DoubleVector farX = ax.max(bx).blend(NEGATIVE_INFINITY.blend(POSITIVE_INFINITY, insideX), stillX);
+            DoubleVector ay = y0.sub(y).mul(invDy);
+            DoubleVector by = y1.sub(y).mul(invDy);
+            VectorMask<Double> insideY = y0.compare(VectorOperators.LE, y).and(y1.compare(VectorOperators.GE, y));
+            DoubleVector nearY = ay.min(by).blend(POSITIVE_INFINITY.blend(NEGATIVE_INFINITY, insideY), stillY);
+            DoubleVector farY = ay.max(by).blend(NEGATIVE_INFINITY.blend(POSITIVE_INFINITY, insideY), stillY);
+            DoubleVector enter = nearX.max(nearY);
+            DoubleVector exit = farX.min(farY);
+            DoubleVector t = exit.blend(enter, enter.compare(VectorOperators.GE, 0.0));
+            VectorMask<Double> hit = enter.compare(VectorOperators.LE, exit)
+                    .and(t.compare(VectorOperators.GE, 0.0))
+                    .and(t.compare(VectorOperators.LE, 1.0));
+            t = POSITIVE_INFINITY.blend(t, hit);
+            t.intoArray(times, i);
+            min = Math.min(min, t.reduceLanes(VectorOperators.MIN));
+        }
+        for (; i < n; i++) {
+            double t = ScalarSlabKernel.time(minX[i], minY[i], maxX[i], maxY[i], x, y, dx, dy, invDx, invDy,
+                    grow);
+            times[i] = t;
+            min = Math.min(min, t);
+        }
+        return min;
+    }
+}
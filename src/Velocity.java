@@ -42,6 +42,29 @@ public class Velocity {
         return new Point(p.getX() + this.dx, p.getY() + this.dy);
     }
 
+    /**
+     * Changes the velocity.
+     * Velocities are mutable so the game loop can reuse them instead of allocating new ones.
+     *
+     * @param newDx The new change in the x-coordinate.
+     * @param newDy The new change in the y-coordinate.
+     */
+    public void set(double newDx, double newDy) {
+        this.dx = newDx;
+        this.dy = newDy;
+    }
+
+    /**
+     * Changes the velocity to the given angle and speed, like fromAngleAndSpeed but in place.
+     *
+     * @param angle The angle in degrees.
+     * @param speed The speed.
+     */
+    public void setFromAngleAndSpeed(double angle, double speed) {
+        double radians = Math.toRadians(angle);
+        set(speed * Math.cos(radians), speed * Math.sin(radians));
+    }
+
     /**
      * Returns the change in the x-coordinate.
      *
@@ -0,0 +1,55 @@
+/**
+ * A clock whose time only moves when it is told to.
+ * Sleeping returns immediately and just advances the time, so a game driven by this clock
+ * runs as fast as the CPU allows while still seeing consistent time readings.
+ */
+public class VirtualClock implements Clock {
+
+    private long now;
+
+    /**
+     * Constructs a virtual clock starting at time 0.
+     */
+    public VirtualClock() {
+        this.now = 0;
+    }
+
+    /**
+     * Returns the current virtual time.
+     *
+     * @return the current time in nanoseconds
+     */
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    /**
+     * Advances the virtual time instead of sleeping.
+     *
+     * @param milliseconds the time to advance, in milliseconds
+     */
+    @Override
+    public void sleepFor(long milliseconds) {
+        advance(milliseconds * 1000000L);
+    }
+
+    /**
+     * Advances the virtual time instead of sleeping.
+     *
+     * @param nanoseconds the time to advance, in nanoseconds
+     */
+    @Override
+    public void sleepForNanos(long nanoseconds) {
+        advance(nanoseconds);
+    }
+
+    /**
+     * Advances the virtual time.
+     *
+     * @param nanoseconds the time to advance, in nanoseconds
+     */
+    public void advance(long nanoseconds) {
+        now += nanoseconds;
+    }
+}
@@ -0,0 +1,134 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The full state of a game's world at the end of a step, in a byte buffer that is reused from
+ * one capture to the next (see Game.capture and Game.restore). Each part of the world writes its
+ * own fields straight into the buffer, so a capture allocates nothing once the buffer is big
+ * enough, and a snapshot can be kept in memory or saved to a file as it is.
+ * <p>
+ * The bytes are little-endian, like a LevelFile. They start with the magic number and the format
+ * version, followed by the game's fields. From version 2 on, the fields include the state of the
+ * game's random generator; a game restored from a file of version 1 restarts it from the default
+ * seed (see hasRandomState).
+ */
+public class WorldSnapshot {
+
+    private static final int MAGIC = 0x53574242; // "BBWS" in little-endian order
+    private static final int VERSION = 2;
+    private static final int OLD_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private ByteBuffer data;
+
+    /**
+     * Constructs an empty snapshot.
+     */
+    public WorldSnapshot() {
+        this.data = ByteBuffer.allocate(INITIAL_CAPACITY).order(ByteOrder.LITTLE_ENDIAN);
+        this.data.limit(0);
+    }
+
+    /**
+     * Checks whether anything was captured in the snapshot.
+     *
+     * @return true if the snapshot is empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return data.limit() == 0;
+    }
+
+    /**
+     * Returns the size of the snapshot.
+     *
+     * @return the number of bytes captured, header included
+     */
+    public int size() {
+        return data.limit();
+    }
+
+    /**
+     * Checks whether the snapshot holds the state of the game's random generator, which files of
+     * version 1 do not.
+     *
+     * @return true if the random generator's state was captured, false otherwise
+     */
+    public boolean hasRandomState() {
+        return data.getInt(4) != OLD_VERSION;
+    }
+
+    /**
+     * Starts a new capture, discarding the previous one. The caller writes its fields into the
+     * returned buffer and flips it when done.
+     *
+     * @param size the number of bytes that will be written
+     * @return the buffer to write to, positioned after the header
+     */
+    public ByteBuffer prepare(int size) {
+        if (data.capacity() < HEADER_SIZE + size) {
+            data = ByteBuffer.allocate(Math.max(HEADER_SIZE + size, 2 * data.capacity()))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        data.clear();
+        data.putInt(MAGIC).putInt(VERSION);
+        return data;
+    }
+
+    /**
+     * Returns the captured bytes, for restoring them. The caller reads the fields in the order
+     * they were written.
+     *
+     * @return the buffer to read from, positioned after the header
+     * @throws IllegalStateException if the snapshot is empty
+     */
+    public ByteBuffer contents() {
+        if (isEmpty()) {
+            throw new IllegalStateException("nothing was captured in the snapshot");
+        }
+        data.position(HEADER_SIZE);
+        return data;
+    }
+
+    /**
+     * Writes the snapshot to a file, replacing any existing file.
+     *
+     * @param file the file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        ByteBuffer bytes = data.duplicate();
+        bytes.position(0);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Reads a snapshot from a file.
+     *
+     * @param file the file
+     * @return the snapshot
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static WorldSnapshot read(Path file) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        if (bytes.limit() < HEADER_SIZE || bytes.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a world snapshot: bad magic number");
+        }
+        if (bytes.getInt(4) != VERSION && bytes.getInt(4) != OLD_VERSION) {
+            throw new IOException(file + " has unsupported world snapshot version " + bytes.getInt(4));
+        }
+        WorldSnapshot snapshot = new WorldSnapshot();
+        snapshot.data = bytes;
+        return snapshot;
+    }
+}